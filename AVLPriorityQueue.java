@@ -1,34 +1,181 @@
-public class AVLPriorityQueue<E> implements SimplePriorityQueue<E> {
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A priority queue stored in a balanced search tree. By default the
+ * entries are kept in a <code>LongAVLTree</code> keyed directly by
+ * priority, so an insertion allocates a single tree node and every
+ * comparison is a primitive comparison. Alternatively, the queue can
+ * be backed by any <code>SimpleSSet</code> of <code>Pair</code>s
+ * (such as an <code>AVLTree</code> or a <code>BPlusTree</code>).
+ */
+
+public class AVLPriorityQueue<E> implements SimplePriorityQueue<E>, QueueCounters {
     
-    SimpleSSet<Pair<E>> set = new AVLTree<Pair<E>>();
+    /**
+     * The tree storing the entries, or null if the queue is backed
+     * by set.
+     */
+    LongAVLTree<E> tree;
+
+    /**
+     * The set storing the entries, or null if the queue is backed by
+     * tree.
+     */
+    SimpleSSet<Pair<E>> set;
+
+    /**
+     * The number of comparisons of Pairs in set (only counted if
+     * <code>QueueCounters.ENABLED</code>).
+     */
+    private long pairComparisons = 0;
+
+    public AVLPriorityQueue() {
+	this.tree = new LongAVLTree<E>();
+    }
+
+    /**
+     * Create a priority queue backed by the given (empty) ordered
+     * set, e.g., a <code>BPlusTree</code>, instead of a
+     * <code>LongAVLTree</code>.
+     *
+     * @param set the empty set used to store the queue's entries
+     */
+    public AVLPriorityQueue(SimpleSSet<Pair<E>> set) {
+	this.set = set;
+    }
 
     @Override
     public int size() {
+	if (tree != null) {
+	    return tree.size();
+	}
+	
 	return set.size();
     }
 
     @Override
     public boolean isEmpty() {
+	if (tree != null) {
+	    return tree.isEmpty();
+	}
+	
 	return set.isEmpty();
     }
 
     @Override
     public E min() {
-	return set.findMin().val;
+	if (tree != null) {
+	    return tree.minValue();
+	}
+
+	Pair<E> p = set.findMin();
+	return (p == null) ? null : p.val;
     }
 
     @Override
     public void insert(long k, E x) {
+	if (tree != null) {
+	    tree.insert(k, x);
+	    return;
+	}
+	
 	set.add(new Pair<E>(k, x));
     }
 
     @Override
     public E removeMin() {
+	if (tree != null) {
+	    return tree.removeMin();
+	}
+
 	Pair<E> p = set.findMin();
+	if (p == null) {
+	    return null;
+	}
+	
 	set.remove(p);
 	return p.val;
     }
 
+    @Override
+    public long getComparisons() {
+	if (tree != null) {
+	    return tree.getComparisons();
+	}
+
+	return pairComparisons;
+    }
+
+    @Override
+    public long getRotations() {
+	if (tree != null) {
+	    return tree.getRotations();
+	}
+
+	return (set instanceof AVLTree) ? ((AVLTree<?>) set).getRotations() : 0;
+    }
+
+    @Override
+    public long getGrowths() {
+	return 0;
+    }
+
+    /**
+     * Copy the entries of the queue, in increasing order of
+     * priority, into keys and vals. The array keys must have length
+     * at least <code>size()</code>.
+     */
+    @SuppressWarnings("unchecked")
+    void exportSorted(long[] keys, List<E> vals) {
+	if (tree != null) {
+	    int[] i = {0};
+	    tree.forEachInOrder((val, k) -> {
+		keys[i[0]++] = k;
+		vals.add(val);
+	    });
+	    return;
+	}
+	
+	if (!(set instanceof Iterable)) {
+	    throw new UnsupportedOperationException("backing set " + set.getClass().getName() + " cannot be iterated");
+	}
+
+	int i = 0;
+	for (Pair<E> p : (Iterable<Pair<E>>) set) {
+	    keys[i++] = p.k;
+	    vals.add(p.val);
+	}
+    }
+
+    /**
+     * Add the given entries, which must be listed in strictly
+     * increasing order of priority, to the (empty) queue. A
+     * <code>LongAVLTree</code> or <code>AVLTree</code> is built
+     * directly in O(n) time.
+     */
+    @SuppressWarnings("unchecked")
+    void loadSorted(long[] keys, List<E> vals) {
+	if (tree != null) {
+	    tree.loadSorted(keys, vals);
+	    return;
+	}
+	
+	List<Pair<E>> pairs = new ArrayList<Pair<E>>(keys.length);
+
+	for (int i = 0; i < keys.length; ++i) {
+	    pairs.add(new Pair<E>(keys[i], vals.get(i)));
+	}
+
+	if (set instanceof AVLTree && set.isEmpty()) {
+	    ((AVLTree<Pair<E>>) set).loadSorted(pairs);
+	} else {
+	    for (Pair<E> p : pairs) {
+		set.add(p);
+	    }
+	}
+    }
+
     protected class Pair<E> implements Comparable<Pair<E>> {
 	long k;
 	E val;
@@ -40,6 +187,10 @@ public class AVLPriorityQueue<E> implements SimplePriorityQueue<E> {
 
 	@Override
 	public int compareTo(Pair p) {
+	    if (QueueCounters.ENABLED) {
+		++pairComparisons;
+	    }
+
 	    if (k < p.k) {
 		return -1;
 	    } else if (k > p.k) {
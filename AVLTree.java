@@ -1,3 +1,5 @@
+import java.util.List;
+
 /**
  * A height-balanced binary search tree (BST) implementation. An AVL
  * tree is a BST which additionally maintains a "height-balance"
@@ -6,12 +8,160 @@
  * has height O(log n). The operations add, remove, and find are all
  * implemented to require O(log n) comparisons and elementary operations.
  *
+ * <p>The tree keeps a <em>finger</em> at the most recently inserted or
+ * accessed node, and searches start from the finger rather than from
+ * the root. A search first walks up from the finger only as far as
+ * needed to reach a subtree whose key range contains the target, and
+ * then descends as usual. For sequential or clustered keys, a search
+ * thus uses O(log d) comparisons, where d is the number of elements
+ * between the target and the finger.</p>
+ *
  * @see BinarySearchTree
  */
 
 
 public class AVLTree<E extends Comparable<E>> extends BinarySearchTree<E> {
 
+    /**
+     * The most recently inserted or accessed node, from which
+     * searches start, or null if there is no such node.
+     */
+    private Node<E> finger = null;
+
+    /**
+     * The number of searches that started their descent strictly
+     * below the root (fingerHits) or from the root (fingerMisses).
+     */
+    private long fingerHits = 0;
+    private long fingerMisses = 0;
+
+    /**
+     * The number of single rotations performed by restructure (only
+     * counted if <code>QueueCounters.ENABLED</code>).
+     */
+    private long rotations = 0;
+
+    /**
+     * <p>Return the number of searches for which the finger allowed
+     * the descent to start strictly below the root.</p>
+     *
+     * @return the number of searches that took the fast path
+     */
+    public long getFingerHits() {
+	return fingerHits;
+    }
+
+    /**
+     * <p>Return the number of searches that had to start their
+     * descent at the root.</p>
+     *
+     * @return the number of searches that did not take the fast path
+     */
+    public long getFingerMisses() {
+	return fingerMisses;
+    }
+
+    /**
+     * <p>Return the number of single rotations performed to rebalance
+     * the tree, counting a double rotation as two. This is always
+     * <code>0</code> unless <code>QueueCounters.ENABLED</code>.</p>
+     *
+     * @return the number of rotations
+     */
+    public long getRotations() {
+	return rotations;
+    }
+
+    /**
+     * <p>Find a node storing an element equal to x, or the last
+     * non-null node visited if there is no such node, starting the
+     * search from the finger. The node found becomes the new
+     * finger.</p>
+     *
+     * <p>While walking up from the finger, a comparison is needed
+     * only at ancestors that bound the current subtree on the side of
+     * x; ancestors on the other side are passed without comparing.</p>
+     */
+    @Override
+    protected Node<E> findNode(E x) {
+	if (finger == null) {
+	    ++fingerMisses;
+	    finger = descend(root, x);
+	    return finger;
+	}
+
+	Node<E> nd = finger;
+
+	if (x.equals(nd.value)) {
+	    ++fingerHits;
+	    return nd;
+	}
+
+	boolean larger = x.compareTo(nd.value) > 0;
+
+	// start is the lowest node on the path to the root known to
+	// have x in its key range. Ancestors reached through a child on
+	// the side away from x share the same bound on that side, so
+	// they are passed without a comparison; the first ancestor
+	// reached through a child on the side of x is compared with x.
+	Node<E> start = nd;
+
+	while (nd.parent != null) {
+	    Node<E> p = nd.parent;
+
+	    if ((larger && nd == p.right) || (!larger && nd == p.left)) {
+		nd = p;
+		continue;
+	    }
+
+	    if (x.equals(p.value)) {
+		start = p;
+		break;
+	    }
+
+	    // p bounds start's key range on the side of x
+	    int c = x.compareTo(p.value);
+	    if ((larger && c < 0) || (!larger && c > 0)) {
+		break;
+	    }
+
+	    start = p;
+	    nd = p;
+	}
+
+	if (start == root) {
+	    ++fingerMisses;
+	} else {
+	    ++fingerHits;
+	}
+
+	finger = descend(start, x);
+	return finger;
+    }
+
+    /**
+     * Binary search for x in the subtree rooted at nd, returning the
+     * node storing x or the last non-null node visited.
+     */
+    private Node<E> descend(Node<E> nd, E x) {
+	Node<E> prev = nd;
+
+	while (nd != null) {
+	    if (x.equals(nd.value)) {
+		return nd;
+	    }
+
+	    prev = nd;
+
+	    if (x.compareTo(nd.value) < 0) {
+		nd = nd.left;
+	    } else {
+		nd = nd.right;
+	    }
+	}
+
+	return prev;
+    }
     
     /**
      * <p>Restructure an unbalanced node z in the AVLTree. If z's
@@ -105,6 +255,11 @@ public class AVLTree<E extends Comparable<E>> extends BinarySearchTree<E> {
 	    return;
 	}
 
+	// b is y for a single rotation, and x for a double rotation
+	if (QueueCounters.ENABLED) {
+	    rotations += (b == y) ? 1 : 2;
+	}
+
 	// make node b the new root of the subtree, previously rooted at z
 	b.parent = p;	
 	if (p != null) {
@@ -190,6 +345,7 @@ public class AVLTree<E extends Comparable<E>> extends BinarySearchTree<E> {
 	}
 		
 	++size;
+	finger = newNode;
 
 	// iterate over newNode's ancestors, updating their height and
 	// checking for and fixing imbalance
@@ -217,10 +373,18 @@ public class AVLTree<E extends Comparable<E>> extends BinarySearchTree<E> {
 	}
 
 	Node<E> child = (nd.left != null) ? nd.left : nd.right;
+
+	// the finger must not be left on a detached node
+	if (nd == finger) {
+	    finger = (nd.parent != null) ? nd.parent : child;
+	}
 	
 	// check if nd is root
 	if (nd == root) {
 	    root = child;
+	    if (child != null) {
+		child.parent = null;
+	    }
 	    return;
 	}
 
@@ -248,6 +412,60 @@ public class AVLTree<E extends Comparable<E>> extends BinarySearchTree<E> {
 	}	
     }
 
+    /**
+     * <p>Replace the contents of the tree with the given elements,
+     * which must be listed in strictly increasing order. The tree is
+     * built directly in perfectly balanced form, using O(n) time and
+     * no comparisons other than the check of the order.</p>
+     *
+     * @param sorted the elements of the new tree, in increasing order
+     * @throws IllegalArgumentException if the elements are not in
+     * strictly increasing order
+     */
+    public void loadSorted(List<E> sorted) {
+	for (int i = 1; i < sorted.size(); ++i) {
+	    if (sorted.get(i - 1).compareTo(sorted.get(i)) >= 0) {
+		throw new IllegalArgumentException("elements are not in strictly increasing order at index " + i);
+	    }
+	}
+
+	root = build(sorted, 0, sorted.size(), null);
+	size = sorted.size();
+	finger = null;
+    }
+
+    /**
+     * <p>Return an immutable copy of the tree, laid out for fast
+     * searching (see <code>EytzingerSet</code>). This takes O(n)
+     * time; later changes to the tree do not affect the copy.</p>
+     *
+     * @return a read-only set with the elements of the tree
+     */
+    public EytzingerSet<E> freeze() {
+	return new EytzingerSet<E>(this, size);
+    }
+
+    /**
+     * Build a perfectly balanced subtree storing sorted[lo..hi-1],
+     * returning its root.
+     */
+    private Node<E> build(List<E> sorted, int lo, int hi, Node<E> parent) {
+	if (lo >= hi) {
+	    return null;
+	}
+
+	int mid = (lo + hi) >>> 1;
+	Node<E> nd = new Node<E>();
+
+	nd.value = sorted.get(mid);
+	nd.parent = parent;
+	nd.left = build(sorted, lo, mid, nd);
+	nd.right = build(sorted, mid + 1, hi, nd);
+	nd.updateHeight(false);
+
+	return nd;
+    }
+
     /**
      * Determine if a node is height-unbalanced, i.e., if its
      * childrens' heights differ by at least 2.
@@ -0,0 +1,364 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A priority queue that watches its own workload and moves its
+ * contents to whichever backing implementation suits it best:</p>
+ * <ul>
+ * <li><code>HEAP</code>, a <code>HeapPriorityQueue</code>, the
+ * general-purpose default;</li>
+ * <li><code>RADIX</code>, a <code>RadixHeap</code>, when the workload
+ * is monotone (no insertion is smaller than the last minimum removed
+ * or returned by <code>min()</code>)
+ * and removals make up a real share of the operations;</li>
+ * <li><code>BUCKET</code>, a <code>BucketPriorityQueue</code>, when
+ * many inserted priorities are duplicates.</li>
+ * </ul>
+ * <p>(An <code>AVLPriorityQueue</code> is never chosen, since it keeps
+ * only one element per priority.)</p>
+ *
+ * <p>The queue counts, over windows of <code>WINDOW</code> insertions
+ * and removals, the insertions that kept the workload monotone, the
+ * insertions of a priority already inserted in the same window, and
+ * the share of removals. At the end of each window it picks a target
+ * implementation from these statistics; it switches only once the
+ * same target has been picked for <code>CONFIRM_WINDOWS</code>
+ * consecutive windows, not within <code>COOLDOWN_WINDOWS</code>
+ * windows of the previous switch, and not while the queue holds fewer
+ * than <code>MIN_SIZE</code> entries. The duplicate threshold is lower
+ * for staying with <code>BUCKET</code> than for choosing it. Together
+ * these keep the queue from oscillating between implementations.</p>
+ *
+ * <p>The one exception is a non-monotone insertion while the queue is
+ * a <code>RADIX</code> heap, which cannot store it: the queue then
+ * switches immediately.</p>
+ *
+ * <p>A switch moves every entry in one pass (O(n) time for
+ * <code>RADIX</code> and typically for <code>HEAP</code>, and O(n log
+ * d) for <code>BUCKET</code> with d distinct priorities). Each switch
+ * is recorded in a log of the most recent <code>LOG_SIZE</code>
+ * switches, with the statistics that triggered it.</p>
+ */
+
+public class AdaptivePriorityQueue<E> implements SimplePriorityQueue<E> {
+
+    /**
+     * The implementations that can back the queue.
+     */
+    public enum Backing { HEAP, RADIX, BUCKET }
+
+    public static final int WINDOW = 4096;
+    public static final int CONFIRM_WINDOWS = 3;
+    public static final int COOLDOWN_WINDOWS = 8;
+    public static final int MIN_SIZE = 256;
+    public static final int LOG_SIZE = 100;
+
+    /**
+     * The minimum share of removals among the operations of a window
+     * for the radix heap to be chosen.
+     */
+    public static final double RADIX_MIN_REMOVE_SHARE = 0.1;
+
+    /**
+     * The share of duplicate insertions in a window above which the
+     * bucket queue is chosen, and the lower share above which it is
+     * kept.
+     */
+    public static final double BUCKET_ENTER_DUPLICATES = 0.5;
+    public static final double BUCKET_STAY_DUPLICATES = 0.25;
+
+    private Backing backing;
+    private HeapPriorityQueue<E> heap;
+    private RadixHeap<E> radix;
+    private BucketPriorityQueue<E> bucket;
+
+    /**
+     * The priority of the most recently removed element, or of the
+     * minimum most recently returned by <code>min()</code> if that is
+     * larger; an insertion below it makes the workload non-monotone.
+     */
+    private long floor = Long.MIN_VALUE;
+
+    // statistics of the current window
+    private int inserts = 0;
+    private int removes = 0;
+    private int monotoneInserts = 0;
+    private int duplicateInserts = 0;
+    private final LongHashSet windowKeys = new LongHashSet(WINDOW);
+
+    private Backing pending = null;
+    private int pendingWindows = 0;
+    private int cooldown = 0;
+    private long operations = 0;
+
+    private final ArrayDeque<Switch> log = new ArrayDeque<Switch>();
+
+    /**
+     * Create an empty queue backed by a <code>HeapPriorityQueue</code>.
+     */
+    public AdaptivePriorityQueue() {
+        this(Backing.HEAP);
+    }
+
+    /**
+     * Create an empty queue with the given initial backing.
+     *
+     * @param initial the initial backing implementation
+     */
+    public AdaptivePriorityQueue(Backing initial) {
+        backing = initial;
+        create(initial);
+    }
+
+    /**
+     * A switch from one backing implementation to another.
+     */
+    public static final class Switch {
+
+        /**
+         * The number of insertions and removals before the switch.
+         */
+        public final long operation;
+        public final Backing from;
+        public final Backing to;
+        public final String reason;
+
+        /**
+         * The number of entries moved, and the time it took.
+         */
+        public final int size;
+        public final long nanos;
+
+        Switch(long operation, Backing from, Backing to, String reason, int size, long nanos) {
+            this.operation = operation;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+            this.size = size;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("op %d: %s -> %s (%s), moved %d entries in %.3f ms",
+                                 operation, from, to, reason, size, nanos / 1e6);
+        }
+    }
+
+    /**
+     * @return the current backing implementation
+     */
+    public Backing getBacking() {
+        return backing;
+    }
+
+    /**
+     * @return the most recent switches, oldest first
+     */
+    public List<Switch> getSwitchLog() {
+        return Collections.unmodifiableList(new ArrayList<Switch>(log));
+    }
+
+    @Override
+    public int size() {
+        return current().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current().isEmpty();
+    }
+
+    @Override
+    public E min() {
+        if (current().isEmpty()) {
+            return null;
+        }
+
+        floor = Math.max(floor, minKey());
+        return current().min();
+    }
+
+    @Override
+    public void insert(long k, E x) {
+        boolean monotone = k >= floor;
+
+        if (backing == Backing.RADIX && k < radix.lastRemoved()) {
+            Backing target = (inserts > 0 && duplicateShare() >= BUCKET_ENTER_DUPLICATES)
+                ? Backing.BUCKET : Backing.HEAP;
+            migrate(target, "insertion of " + k + " below last minimum " + radix.lastRemoved());
+        }
+
+        current().insert(k, x);
+
+        ++inserts;
+        if (monotone) {
+            ++monotoneInserts;
+        }
+        if (!windowKeys.add(k)) {
+            ++duplicateInserts;
+        }
+
+        endOperation();
+    }
+
+    @Override
+    public E removeMin() {
+        if (current().isEmpty()) {
+            return null;
+        }
+
+        floor = minKey();
+        E x = current().removeMin();
+
+        ++removes;
+        endOperation();
+
+        return x;
+    }
+
+    private SimplePriorityQueue<E> current() {
+        switch (backing) {
+        case RADIX: return radix;
+        case BUCKET: return bucket;
+        default: return heap;
+        }
+    }
+
+    private long minKey() {
+        switch (backing) {
+        case RADIX: return radix.minKey();
+        case BUCKET: return bucket.minKey();
+        default: return heap.minKey();
+        }
+    }
+
+    private double duplicateShare() {
+        return (double) duplicateInserts / inserts;
+    }
+
+    /**
+     * Count an insertion or removal, and evaluate the window if it is
+     * complete.
+     */
+    private void endOperation() {
+        ++operations;
+
+        if (inserts + removes < WINDOW) {
+            return;
+        }
+
+        Backing target = choose();
+        String reason = String.format("monotone %d/%d, duplicates %.2f, removals %.2f, size %d",
+                                      monotoneInserts, inserts, (inserts == 0) ? 0 : duplicateShare(),
+                                      (double) removes / (inserts + removes), size());
+
+        inserts = 0;
+        removes = 0;
+        monotoneInserts = 0;
+        duplicateInserts = 0;
+        windowKeys.clear();
+
+        if (cooldown > 0) {
+            --cooldown;
+        }
+
+        if (target == backing) {
+            pending = null;
+            pendingWindows = 0;
+            return;
+        }
+
+        if (target == pending) {
+            ++pendingWindows;
+        } else {
+            pending = target;
+            pendingWindows = 1;
+        }
+
+        if (pendingWindows >= CONFIRM_WINDOWS && cooldown == 0 && size() >= MIN_SIZE) {
+            migrate(target, reason);
+        }
+    }
+
+    /**
+     * Pick the best backing for the statistics of the window just
+     * completed.
+     */
+    private Backing choose() {
+        // a window of removals only says nothing about the insertions
+        if (inserts == 0) {
+            return backing;
+        }
+
+        double removeShare = (double) removes / (inserts + removes);
+
+        if (monotoneInserts == inserts && removeShare >= RADIX_MIN_REMOVE_SHARE) {
+            return Backing.RADIX;
+        }
+
+        double threshold = (backing == Backing.BUCKET) ? BUCKET_STAY_DUPLICATES : BUCKET_ENTER_DUPLICATES;
+        if (duplicateShare() >= threshold) {
+            return Backing.BUCKET;
+        }
+
+        return Backing.HEAP;
+    }
+
+    /**
+     * Move every entry to a new backing of the given kind, and log
+     * the switch.
+     */
+    private void migrate(Backing target, String reason) {
+        long start = System.nanoTime();
+        int n = size();
+        long[] keys = new long[n];
+        List<E> vals = new ArrayList<E>(n);
+
+        switch (backing) {
+        case RADIX:
+            radix.export(keys, vals);
+            break;
+        case BUCKET:
+            bucket.export(keys, vals);
+            break;
+        default:
+            for (int i = 0; i < n; ++i) {
+                keys[i] = heap.keyAt(i);
+                vals.add(heap.valueAt(i));
+            }
+            break;
+        }
+
+        Backing from = backing;
+        heap = null;
+        radix = null;
+        bucket = null;
+        backing = target;
+        create(target);
+
+        SimplePriorityQueue<E> q = current();
+        for (int i = 0; i < n; ++i) {
+            q.insert(keys[i], vals.get(i));
+        }
+
+        pending = null;
+        pendingWindows = 0;
+        cooldown = COOLDOWN_WINDOWS;
+
+        if (log.size() == LOG_SIZE) {
+            log.removeFirst();
+        }
+        log.addLast(new Switch(operations, from, target, reason, n, System.nanoTime() - start));
+    }
+
+    private void create(Backing b) {
+        switch (b) {
+        case RADIX: radix = new RadixHeap<E>(); break;
+        case BUCKET: bucket = new BucketPriorityQueue<E>(); break;
+        default: heap = new HeapPriorityQueue<E>(); break;
+        }
+    }
+}
@@ -1,19 +1,83 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 public class ArrayBinaryHeap<E extends Comparable<E>>
 {
     //Let the default size of the array storing the heap be 16
     public static final int DEFAULT_SIZE = 16;
+
+    //Let the array grow by a factor of 2 (double) by default when it is full
+    public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+
+    //the largest array size the JVM can reliably allocate
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
     
     //Create the instance variable that will point to the array that will store the heap
     private Object[] contents;
 
     //Create and initialize the instance variables for the size and the maximum size of the heap
     private int size = 0;
-    private int maxSize = 16;
+    private int maxSize;
+
+    //the capacity policy of the heap: the array starts with initialCapacity slots, grows by growthFactor
+    //when it is full, and shrinks (but never below initialCapacity) when it becomes sparse
+    private final int initialCapacity;
+    private final double growthFactor;
+
+    //the number of times the array has been grown (only counted if QueueCounters.ENABLED)
+    private long growths = 0;
+
+    //in buffered mode, insert only appends to the array; the values in positions 'heapSize' to 'size - 1'
+    //form an unsorted insertion buffer that is merged into the heap (the positions 0 to 'heapSize - 1')
+    //on the next removeMin, and 'bufferMin' is the position of the smallest value in the buffer
+    private final boolean buffered;
+    private int heapSize = 0;
+    private int bufferMin = -1;
+
+    //the number of changes to the order of the values in the array, so that sorted iterators can detect
+    //that the heap has been modified while they are in use
+    private int modCount = 0;
 
     //Define the class's constructor, where the contents variable is made to point to a new array object of size 16
     public ArrayBinaryHeap()
     {
-        contents = new Object[DEFAULT_SIZE];
+        this(DEFAULT_SIZE, DEFAULT_GROWTH_FACTOR);
+    }
+
+    //this constructor creates a heap whose array initially has the argument number of slots
+    public ArrayBinaryHeap(int initialCapacity)
+    {
+        this(initialCapacity, DEFAULT_GROWTH_FACTOR);
+    }
+
+    //this constructor creates a heap whose array initially has 'initialCapacity' slots and is multiplied
+    //in size by 'growthFactor' (which must be greater than 1) whenever it is full
+    public ArrayBinaryHeap(int initialCapacity, double growthFactor)
+    {
+        this(initialCapacity, growthFactor, false);
+    }
+
+    //this constructor also selects buffered mode, in which insert takes O(1) time by appending the value
+    //to an insertion buffer, and the buffer is merged into the heap on the next removeMin; this suits
+    //producers that insert in bursts and remove only now and then
+    public ArrayBinaryHeap(int initialCapacity, double growthFactor, boolean buffered)
+    {
+        if (initialCapacity < 1 || initialCapacity > MAX_ARRAY_SIZE)
+        {
+            throw new IllegalArgumentException("initial capacity must be positive: " + initialCapacity);
+        }
+        if (!(growthFactor > 1.0))
+        {
+            throw new IllegalArgumentException("growth factor must be greater than 1: " + growthFactor);
+        }
+
+        this.initialCapacity = initialCapacity;
+        this.growthFactor = growthFactor;
+        this.buffered = buffered;
+        this.maxSize = initialCapacity;
+        contents = new Object[initialCapacity];
     }
 
     //this method returns the size of the heap
@@ -63,35 +127,34 @@ public class ArrayBinaryHeap<E extends Comparable<E>>
     }
 
     //this is a helper method that restructures the heap so that all the elements in the heap are in the correct position
+    @SuppressWarnings("unchecked")
     private void restructureHeap(int position)
     {
         //this method doesn't do anything if the argument node is a leaf
         if (!isLeaf(position))
         {
-            //if the argument node is greater than either of its children
-            if ((((E) contents[position]).compareTo(((E) contents[leftChild(position)])) > 0) || ((((E) contents[position]).compareTo(((E) contents[rightChild(position)])) > 0)))
+            //find the smaller child; the right child only counts if it is within the heap, since the slots
+            //from 'size' onwards are empty
+            int smaller = leftChild(position);
+
+            if (rightChild(position) < size && ((E) contents[rightChild(position)]).compareTo(((E) contents[smaller])) < 0)
             {
-                //if the left child is lesser than the right child
-                if (((E) contents[leftChild(position)]).compareTo(((E) contents[rightChild(position)])) < 0)
-                {
-                    //swap the left child with the argument node
-                    swap(position, leftChild(position));
-                    //recursively call the same method
-                    restructureHeap(leftChild(position));
-                }
-                //if the right child is lesser than the left child
-                else
-                {
-                    //swap the right child with the argument node
-                    swap(position, rightChild(position));
-                    //recursively call the same method
-                    restructureHeap(rightChild(position));
-                }
+                smaller = rightChild(position);
+            }
+
+            //if the argument node is greater than its smaller child
+            if (((E) contents[position]).compareTo(((E) contents[smaller])) > 0)
+            {
+                //swap the smaller child with the argument node
+                swap(position, smaller);
+                //recursively call the same method
+                restructureHeap(smaller);
             }
         }
     }
 
     //this method returns the minimum value (topmost node) in the heap
+    @SuppressWarnings("unchecked")
     public E min()
     {
         //check if the heap is empty and return null if it is
@@ -100,13 +163,25 @@ public class ArrayBinaryHeap<E extends Comparable<E>>
             return null;
         }
 
-        //the minimum value will be at the start of the array
-        E popped = (E)contents[0];
+        //with an empty buffer, the minimum value will be at the start of the array
+        if (heapSize == size)
+        {
+            return (E)contents[0];
+        }
 
-        return popped;
+        //otherwise it is the smaller of the heap's minimum and the buffer's cached minimum
+        E bufferMinimum = (E)contents[bufferMin];
+
+        if (heapSize == 0 || bufferMinimum.compareTo((E)contents[0]) < 0)
+        {
+            return bufferMinimum;
+        }
+
+        return (E)contents[0];
     }
 
     //this method inserts the value x into the heap at the correct position based on the min heap rules
+    @SuppressWarnings("unchecked")
     public void insert(E x)
     {
         //increase the size of the array if the heap's size is greater than or equal to the size of the array
@@ -116,9 +191,32 @@ public class ArrayBinaryHeap<E extends Comparable<E>>
         }
 
         contents[size] = x;
+        modCount++;
+
+        if (buffered)
+        {
+            //append x to the buffer, keeping track of the buffer's smallest value
+            if (heapSize == size || x.compareTo((E)contents[bufferMin]) < 0)
+            {
+                bufferMin = size;
+            }
 
-        //store the position of value x in the variable current
-        int current = size;
+            size++;
+            return;
+        }
+
+        siftUp(size);
+
+        size++;
+        heapSize = size;
+    }
+
+    //this method moves the node at the argument position up the heap until it is not smaller than its parent
+    @SuppressWarnings("unchecked")
+    private void siftUp(int position)
+    {
+        //store the position of the value in the variable current
+        int current = position;
 
         //while the parent of the current node is not null and while current node is smaller than its parent node,
         //swap the current and parent nodes and make the current node point to its parent node
@@ -127,8 +225,40 @@ public class ArrayBinaryHeap<E extends Comparable<E>>
             swap(current, parent(current));
             current = parent(current);
         }
+    }
 
-        size++;
+    //this method merges the insertion buffer into the heap: when the buffer is large relative to the heap,
+    //the whole array is rebuilt bottom-up (Floyd's method, about 2 * size comparisons), and otherwise each
+    //buffered value is sifted up on its own (up to log2(size) comparisons each)
+    private void mergeBuffer()
+    {
+        int buffer = size - heapSize;
+
+        if (buffer == 0)
+        {
+            return;
+        }
+
+        int log = 32 - Integer.numberOfLeadingZeros(size);
+
+        if ((long) buffer * log > 2L * size)
+        {
+            for (int position = size / 2 - 1; position >= 0; position--)
+            {
+                restructureHeap(position);
+            }
+        }
+        else
+        {
+            for (int position = heapSize; position < size; position++)
+            {
+                siftUp(position);
+            }
+        }
+
+        heapSize = size;
+        bufferMin = -1;
+        modCount++;
     }
 
     //this method removes and returns the minimum value (topmost node) of the heap
@@ -140,37 +270,258 @@ public class ArrayBinaryHeap<E extends Comparable<E>>
             return null;
         }
 
+        //merge the insertion buffer (if any) into the heap first
+        mergeBuffer();
+        modCount++;
+
         //store the minimum value in a variable
         E popped = (E)contents[0];
 
-        //bring the last non-null value of the array to the front of the array
+        //bring the last non-null value of the array to the front of the array, and clear the slot it
+        //leaves so that the array does not keep the removed element reachable
         contents[0] = contents[size - 1];
         size--;
+        heapSize = size;
+        contents[size] = null;
 
         //call the restructureHeap method to restructure the heap
         restructureHeap(0);
 
+        //shrink the array if it has become sparse
+        shrinkIfSparse();
+
         return popped;
     }
 
-    //this method doubles the size of the array pointed to by the variable 'contents'
-    private int increaseCapacity(int maxSize)
+    //this method returns an iterator over the values of the heap in increasing order, which neither copies
+    //nor changes the array: it walks the implicit tree, keeping the positions of the values that may come
+    //next (the children of the values already returned, and the unsorted insertion buffer) in a small
+    //heap of its own, so that the first k values take O(k log k) time to reach (plus O(b) for a buffer of
+    //b values); the iterator throws a ConcurrentModificationException if the heap is modified while it is
+    //in use
+    public Iterator<E> sortedIterator()
+    {
+        return new SortedIterator();
+    }
+
+    //this class is the iterator returned by sortedIterator; 'frontier' is a binary min heap of positions in
+    //the array storing the heap, ordered by the values at those positions
+    private class SortedIterator implements Iterator<E>
+    {
+        private int[] frontier;
+        private int frontierSize = 0;
+        private final int expectedModCount = modCount;
+
+        SortedIterator()
+        {
+            frontier = new int[Math.max(16, size - heapSize + 1)];
+
+            //start from the root of the heap and every value in the buffer
+            if (heapSize > 0)
+            {
+                frontier[frontierSize++] = 0;
+            }
+            for (int position = heapSize; position < size; position++)
+            {
+                frontier[frontierSize++] = position;
+            }
+
+            for (int i = frontierSize / 2 - 1; i >= 0; i--)
+            {
+                siftDown(i);
+            }
+        }
+
+        public boolean hasNext()
+        {
+            return frontierSize > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next()
+        {
+            if (modCount != expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            if (frontierSize == 0)
+            {
+                throw new NoSuchElementException();
+            }
+
+            //the smallest position in the frontier holds the next value; its children in the heap (but not
+            //in the buffer) may come next
+            int position = frontier[0];
+            frontier[0] = frontier[--frontierSize];
+            siftDown(0);
+
+            if (position < heapSize)
+            {
+                if (leftChild(position) < heapSize)
+                {
+                    push(leftChild(position));
+                }
+                if (rightChild(position) < heapSize)
+                {
+                    push(rightChild(position));
+                }
+            }
+
+            return (E) contents[position];
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean less(int i, int j)
+        {
+            return ((E) contents[frontier[i]]).compareTo((E) contents[frontier[j]]) < 0;
+        }
+
+        private void push(int position)
+        {
+            if (frontierSize == frontier.length)
+            {
+                frontier = Arrays.copyOf(frontier, 2 * frontierSize);
+            }
+
+            int i = frontierSize++;
+            frontier[i] = position;
+
+            while (i > 0 && less(i, (i - 1) / 2))
+            {
+                int parent = (i - 1) / 2;
+                int temp = frontier[i];
+                frontier[i] = frontier[parent];
+                frontier[parent] = temp;
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i)
+        {
+            while (2 * i + 1 < frontierSize)
+            {
+                int smaller = 2 * i + 1;
+
+                if (smaller + 1 < frontierSize && less(smaller + 1, smaller))
+                {
+                    smaller++;
+                }
+                if (!less(smaller, i))
+                {
+                    break;
+                }
+
+                int temp = frontier[i];
+                frontier[i] = frontier[smaller];
+                frontier[smaller] = temp;
+                i = smaller;
+            }
+        }
+    }
+
+    //this method returns the element stored at the argument position of the array storing the heap
+    //(used to save the heap in array order, see QueueSnapshot); the insertion buffer is merged first, so
+    //that the array is in heap order
+    @SuppressWarnings("unchecked")
+    E get(int position)
     {
-        // create a new array with larger (double) capacity
-        Object[] bigContents = new Object[2 * maxSize];
+        mergeBuffer();
+
+        return (E)contents[position];
+    }
 
-        // copy the values from contents to bigContents
-        for (int i = 0; i < maxSize; ++i)
+    //this method replaces the contents of the heap with the first 'size' values of the argument array,
+    //which must already satisfy the min heap rules, so that no restructuring is needed
+    void load(Object[] values, int size)
+    {
+        maxSize = Math.max(initialCapacity, size);
+        contents = new Object[maxSize];
+
+        for (int i = 0; i < size; ++i)
         {
-            bigContents[i] = contents[i];
+            contents[i] = values[i];
         }
 
-        // set contents to point to the new bigger array
-        contents = bigContents;
+        this.size = size;
+        this.heapSize = size;
+        this.bufferMin = -1;
+        modCount++;
+    }
 
-        // update the maximum size of the heap (size of the array) accordingly
-        maxSize = 2 * maxSize;
+    //this method returns the number of times the array storing the heap has been grown
+    //(always 0 unless QueueCounters.ENABLED)
+    long growths()
+    {
+        return growths;
+    }
 
+    //this method returns the number of slots in the array storing the heap
+    public int capacity()
+    {
         return maxSize;
     }
+
+    //this method shrinks the array storing the heap to the size of the heap, releasing the unused slots
+    //(the array grows again as usual on the next insert)
+    public void trimToSize()
+    {
+        if (maxSize > size)
+        {
+            resize(Math.max(size, 1));
+        }
+    }
+
+    //this method returns an estimate of the number of bytes retained by the array storing the heap,
+    //not counting the elements themselves
+    public long retainedBytes()
+    {
+        return Footprint.referenceArray(maxSize);
+    }
+
+    //this method multiplies the size of the array pointed to by the variable 'contents' by the growth factor
+    private int increaseCapacity(int maxSize)
+    {
+        if (QueueCounters.ENABLED)
+        {
+            ++growths;
+        }
+
+        if (maxSize >= MAX_ARRAY_SIZE)
+        {
+            throw new OutOfMemoryError("heap cannot hold more than " + MAX_ARRAY_SIZE + " elements");
+        }
+
+        // the new capacity is larger by the growth factor, and by at least one slot
+        long grown = (long) Math.ceil(maxSize * growthFactor);
+        resize((int) Math.min(MAX_ARRAY_SIZE, Math.max(maxSize + 1L, grown)));
+
+        return this.maxSize;
+    }
+
+    //this method shrinks the array when at most 1/g^2 of it is in use (g being the growth factor), to 1/g
+    //of its size but not below the initial capacity; afterwards the heap has to grow or shrink by about
+    //a factor of g before the array is resized again, so that a heap whose size hovers around a
+    //threshold does not keep copying its array
+    private void shrinkIfSparse()
+    {
+        if (maxSize > initialCapacity && size <= maxSize / (growthFactor * growthFactor))
+        {
+            resize(Math.max(initialCapacity, (int) (maxSize / growthFactor)));
+        }
+    }
+
+    //this method replaces the array storing the heap by an array of the argument size, which must be
+    //at least the size of the heap
+    private void resize(int capacity)
+    {
+        // create a new array with the new capacity
+        Object[] newContents = new Object[capacity];
+
+        // copy the values of the heap from contents to newContents
+        System.arraycopy(contents, 0, newContents, 0, size);
+
+        // set contents to point to the new array, and update the maximum size of the heap accordingly
+        contents = newContents;
+        maxSize = capacity;
+    }
 }
@@ -0,0 +1,566 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A B+tree implementation of <code>SimpleSSet</code>. Every node
+ * stores up to <code>fanout</code> keys contiguously in an array, so
+ * a search performs a binary search within each node and touches only
+ * O(log_fanout n) nodes, rather than one small node per comparison as
+ * in <code>AVLTree</code>. All elements are stored in the leaves,
+ * which are linked in increasing order; internal nodes store only
+ * separator keys.
+ *
+ * <p>Because the leaves are linked, iteration visits each element in
+ * O(1) amortized time, and <code>findMin</code> and
+ * <code>findMax</code> take O(1) time (they read the first key of the
+ * leftmost leaf and the last key of the rightmost leaf). The
+ * operations <code>add</code>, <code>remove</code> and
+ * <code>find</code> use O(log n) comparisons.</p>
+ *
+ * <p>The ordering on <code>E</code> is assumed to be consistent with
+ * <code>equals</code>; two elements are considered equal if
+ * <code>compareTo</code> returns 0. With this assumption a
+ * <code>BPlusTree</code> can be used in place of an
+ * <code>AVLTree</code> as the set backing an
+ * <code>AVLPriorityQueue</code>.</p>
+ *
+ * @see AVLTree
+ * @see AVLPriorityQueue
+ */
+
+public class BPlusTree<E extends Comparable<E>> implements SimpleSSet<E>, Iterable<E> {
+
+    /**
+     * The default maximum number of keys stored in a node.
+     */
+    public static final int DEFAULT_FANOUT = 64;
+
+    /**
+     * The maximum number of keys in a node.
+     */
+    private final int fanout;
+
+    /**
+     * The minimum number of keys in a node other than the root.
+     */
+    private final int minKeys;
+
+    private Node root;
+
+    /**
+     * The leftmost and rightmost leaves.
+     */
+    private Leaf head;
+    private Leaf tail;
+
+    private int size = 0;
+
+    /**
+     * Separator key produced by the most recent node split during
+     * <code>add</code>.
+     */
+    private Object splitKey;
+
+    /**
+     * Create an empty B+tree with fan-out <code>DEFAULT_FANOUT</code>.
+     */
+    public BPlusTree() {
+        this(DEFAULT_FANOUT);
+    }
+
+    /**
+     * Create an empty B+tree whose nodes store at most
+     * <code>fanout</code> keys.
+     *
+     * @param fanout the maximum number of keys per node; must be at
+     * least 3
+     */
+    public BPlusTree(int fanout) {
+        if (fanout < 3) {
+            throw new IllegalArgumentException("fanout must be at least 3: " + fanout);
+        }
+
+        this.fanout = fanout;
+        this.minKeys = fanout / 2;
+
+        Leaf leaf = new Leaf(fanout);
+        root = leaf;
+        head = leaf;
+        tail = leaf;
+    }
+
+    /**
+     * Return the maximum number of keys stored in a node.
+     *
+     * @return the fan-out of this tree
+     */
+    public int fanout() {
+        return fanout;
+    }
+
+    /**
+     * Return the current height of the tree, i.e., the number of
+     * internal nodes on any path from the root to a leaf.
+     *
+     * @return the height of the tree
+     */
+    public int height() {
+        int h = 0;
+
+        for (Node nd = root; nd instanceof Inner; nd = ((Inner) nd).children[0]) {
+            ++h;
+        }
+
+        return h;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public E find(E x) {
+        Leaf leaf = findLeaf(x);
+        int i = lowerBound(leaf.keys, leaf.n, x);
+
+        // the smallest key >= x may be the first key of the next leaf
+        if (i == leaf.n) {
+            leaf = leaf.next;
+            i = 0;
+
+            if (leaf == null) {
+                return null;
+            }
+        }
+
+        return key(leaf.keys, i);
+    }
+
+    @Override
+    public E findMin() {
+        if (size == 0) {
+            return null;
+        }
+
+        return key(head.keys, 0);
+    }
+
+    @Override
+    public E findMax() {
+        if (size == 0) {
+            return null;
+        }
+
+        return key(tail.keys, tail.n - 1);
+    }
+
+    @Override
+    public boolean add(E x) {
+        int oldSize = size;
+        Node sibling = insert(root, x);
+
+        // if the root was split, grow the tree by one level
+        if (sibling != null) {
+            Inner newRoot = new Inner(fanout);
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = sibling;
+            newRoot.n = 1;
+            root = newRoot;
+        }
+
+        splitKey = null;
+
+        return size != oldSize;
+    }
+
+    @Override
+    public E remove(E x) {
+        E removed = delete(root, x);
+
+        // if the root has a single child, shrink the tree by one level
+        if (root instanceof Inner && root.n == 0) {
+            root = ((Inner) root).children[0];
+        }
+
+        return removed;
+    }
+
+    /**
+     * Return an iterator over the elements of the tree in increasing
+     * order, following the links between leaves.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Leaf leaf = head;
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (leaf != null && i == leaf.n) {
+                    leaf = leaf.next;
+                    i = 0;
+                }
+
+                return leaf != null;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return key(leaf.keys, i++);
+            }
+        };
+    }
+
+    /**
+     * Return a string listing the contents of the tree in-order.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+
+        for (Leaf leaf = head; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.n; ++i) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(leaf.keys[i]);
+            }
+        }
+
+        sb.append("]");
+
+        return sb.toString();
+    }
+
+    /**
+     * A node of the tree. Each node stores its <code>n</code> keys in
+     * increasing order in <code>keys[0..n-1]</code>. The key arrays
+     * have room for one extra key, so that a node may overflow
+     * briefly before it is split.
+     */
+    private abstract static class Node {
+        final Object[] keys;
+        int n = 0;
+
+        Node(int fanout) {
+            keys = new Object[fanout + 1];
+        }
+    }
+
+    /**
+     * A leaf, storing elements of the set. Leaves form a doubly
+     * linked list in increasing order.
+     */
+    private static final class Leaf extends Node {
+        Leaf next;
+        Leaf prev;
+
+        Leaf(int fanout) {
+            super(fanout);
+        }
+    }
+
+    /**
+     * An internal node with <code>n</code> keys and <code>n +
+     * 1</code> children. All keys in <code>children[i]</code> are
+     * smaller than <code>keys[i]</code>, and all keys in
+     * <code>children[i + 1]</code> are at least <code>keys[i]</code>.
+     */
+    private static final class Inner extends Node {
+        final Node[] children;
+
+        Inner(int fanout) {
+            super(fanout);
+            children = new Node[fanout + 2];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E key(Object[] keys, int i) {
+        return (E) keys[i];
+    }
+
+    /**
+     * Return the smallest index i in keys[0..n-1] such that keys[i]
+     * is at least x, or n if there is no such index.
+     */
+    private int lowerBound(Object[] keys, int n, E x) {
+        int lo = 0;
+        int hi = n;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (BPlusTree.<E>key(keys, mid).compareTo(x) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Return the index of the child of an internal node whose
+     * subtree may contain x, i.e., the smallest index i such that
+     * keys[i] is greater than x, or n if there is no such index.
+     */
+    private int childIndex(Inner nd, E x) {
+        int lo = 0;
+        int hi = nd.n;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (BPlusTree.<E>key(nd.keys, mid).compareTo(x) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    private Leaf findLeaf(E x) {
+        Node nd = root;
+
+        while (nd instanceof Inner) {
+            Inner inner = (Inner) nd;
+            nd = inner.children[childIndex(inner, x)];
+        }
+
+        return (Leaf) nd;
+    }
+
+    /**
+     * Add x to the subtree rooted at nd. If nd had to be split, the
+     * new right sibling of nd is returned and the separator key is
+     * stored in <code>splitKey</code>; otherwise null is returned.
+     */
+    private Node insert(Node nd, E x) {
+        if (nd instanceof Leaf) {
+            Leaf leaf = (Leaf) nd;
+            int i = lowerBound(leaf.keys, leaf.n, x);
+
+            // check if x is already present
+            if (i < leaf.n && BPlusTree.<E>key(leaf.keys, i).compareTo(x) == 0) {
+                return null;
+            }
+
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.n - i);
+            leaf.keys[i] = x;
+            ++leaf.n;
+            ++size;
+
+            return (leaf.n > fanout) ? splitLeaf(leaf) : null;
+        }
+
+        Inner inner = (Inner) nd;
+        int c = childIndex(inner, x);
+        Node sibling = insert(inner.children[c], x);
+
+        if (sibling == null) {
+            return null;
+        }
+
+        // make room for the new separator and child
+        System.arraycopy(inner.keys, c, inner.keys, c + 1, inner.n - c);
+        System.arraycopy(inner.children, c + 1, inner.children, c + 2, inner.n - c);
+        inner.keys[c] = splitKey;
+        inner.children[c + 1] = sibling;
+        ++inner.n;
+
+        return (inner.n > fanout) ? splitInner(inner) : null;
+    }
+
+    private Leaf splitLeaf(Leaf leaf) {
+        int mid = leaf.n / 2;
+        Leaf right = new Leaf(fanout);
+
+        right.n = leaf.n - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.n);
+        clear(leaf.keys, mid, leaf.n);
+        leaf.n = mid;
+
+        // link right into the list of leaves after leaf
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        } else {
+            tail = right;
+        }
+        leaf.next = right;
+
+        splitKey = right.keys[0];
+
+        return right;
+    }
+
+    private Inner splitInner(Inner inner) {
+        int mid = inner.n / 2;
+        Inner right = new Inner(fanout);
+
+        // keys[mid] moves up to the parent
+        splitKey = inner.keys[mid];
+
+        right.n = inner.n - mid - 1;
+        System.arraycopy(inner.keys, mid + 1, right.keys, 0, right.n);
+        System.arraycopy(inner.children, mid + 1, right.children, 0, right.n + 1);
+        clear(inner.keys, mid, inner.n);
+        clear(inner.children, mid + 1, inner.n + 1);
+        inner.n = mid;
+
+        return right;
+    }
+
+    /**
+     * Remove x from the subtree rooted at nd, returning the removed
+     * element, or null if x was not found.
+     */
+    private E delete(Node nd, E x) {
+        if (nd instanceof Leaf) {
+            Leaf leaf = (Leaf) nd;
+            int i = lowerBound(leaf.keys, leaf.n, x);
+
+            if (i == leaf.n || BPlusTree.<E>key(leaf.keys, i).compareTo(x) != 0) {
+                return null;
+            }
+
+            E removed = key(leaf.keys, i);
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.n - i - 1);
+            leaf.keys[--leaf.n] = null;
+            --size;
+
+            return removed;
+        }
+
+        Inner inner = (Inner) nd;
+        int c = childIndex(inner, x);
+        E removed = delete(inner.children[c], x);
+
+        if (removed != null && inner.children[c].n < minKeys) {
+            rebalance(inner, c);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Fix the underflowing child c of parent, either by borrowing a
+     * key from an adjacent sibling or by merging with one.
+     */
+    private void rebalance(Inner parent, int c) {
+        Node child = parent.children[c];
+        Node left = (c > 0) ? parent.children[c - 1] : null;
+        Node right = (c < parent.n) ? parent.children[c + 1] : null;
+
+        if (left != null && left.n > minKeys) {
+            borrowFromLeft(parent, c, left, child);
+        } else if (right != null && right.n > minKeys) {
+            borrowFromRight(parent, c, child, right);
+        } else if (left != null) {
+            merge(parent, c - 1, left, child);
+        } else {
+            merge(parent, c, child, right);
+        }
+    }
+
+    private void borrowFromLeft(Inner parent, int c, Node left, Node child) {
+        System.arraycopy(child.keys, 0, child.keys, 1, child.n);
+
+        if (child instanceof Leaf) {
+            child.keys[0] = left.keys[left.n - 1];
+            parent.keys[c - 1] = child.keys[0];
+        } else {
+            Inner l = (Inner) left;
+            Inner ch = (Inner) child;
+
+            System.arraycopy(ch.children, 0, ch.children, 1, ch.n + 1);
+            ch.keys[0] = parent.keys[c - 1];
+            ch.children[0] = l.children[l.n];
+            l.children[l.n] = null;
+            parent.keys[c - 1] = l.keys[l.n - 1];
+        }
+
+        ++child.n;
+        left.keys[--left.n] = null;
+    }
+
+    private void borrowFromRight(Inner parent, int c, Node child, Node right) {
+        if (child instanceof Leaf) {
+            child.keys[child.n] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+            parent.keys[c] = right.keys[0];
+        } else {
+            Inner ch = (Inner) child;
+            Inner r = (Inner) right;
+
+            ch.keys[ch.n] = parent.keys[c];
+            ch.children[ch.n + 1] = r.children[0];
+            parent.keys[c] = r.keys[0];
+            System.arraycopy(r.keys, 1, r.keys, 0, r.n - 1);
+            System.arraycopy(r.children, 1, r.children, 0, r.n);
+            r.children[r.n] = null;
+        }
+
+        ++child.n;
+        right.keys[--right.n] = null;
+    }
+
+    /**
+     * Merge the child at index i + 1 of parent (right) into the child
+     * at index i (left), removing the separator keys[i] from parent.
+     */
+    private void merge(Inner parent, int i, Node left, Node right) {
+        if (left instanceof Leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.n, right.n);
+            left.n += right.n;
+
+            // unlink right from the list of leaves
+            Leaf l = (Leaf) left;
+            Leaf r = (Leaf) right;
+            l.next = r.next;
+            if (r.next != null) {
+                r.next.prev = l;
+            } else {
+                tail = l;
+            }
+        } else {
+            Inner l = (Inner) left;
+            Inner r = (Inner) right;
+
+            // the separator moves down between the two key ranges
+            l.keys[l.n] = parent.keys[i];
+            System.arraycopy(r.keys, 0, l.keys, l.n + 1, r.n);
+            System.arraycopy(r.children, 0, l.children, l.n + 1, r.n + 1);
+            l.n += 1 + r.n;
+        }
+
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, parent.n - i - 1);
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, parent.n - i - 1);
+        --parent.n;
+        parent.keys[parent.n] = null;
+        parent.children[parent.n + 1] = null;
+    }
+
+    private static void clear(Object[] a, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            a[i] = null;
+        }
+    }
+}
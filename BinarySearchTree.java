@@ -1,3 +1,6 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 /**
  * An implementation of a binary search tree. Comparable elements are
  * stored in a binary tree of nodes, where each node stores a single
@@ -11,7 +14,7 @@
  */
 
 
-public class BinarySearchTree<E extends Comparable<E>> implements SimpleSSet<E>
+public class BinarySearchTree<E extends Comparable<E>> implements SimpleSSet<E>, Iterable<E>
 {
 
     /**
@@ -72,6 +75,45 @@ public class BinarySearchTree<E extends Comparable<E>> implements SimpleSSet<E>
 
     }
 
+    /**
+     * Return an iterator over the elements of the tree in increasing
+     * order. The tree must not be modified while the iterator is in
+     * use.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        Node<E> first = root;
+
+        if (first != null) {
+            while (first.left != null) {
+                first = first.left;
+            }
+        }
+
+        final Node<E> start = first;
+
+        return new Iterator<E>() {
+            private Node<E> nd = start;
+
+            @Override
+            public boolean hasNext() {
+                return nd != null;
+            }
+
+            @Override
+            public E next() {
+                if (nd == null) {
+                    throw new NoSuchElementException();
+                }
+
+                E value = nd.value;
+                nd = nd.nextNode();
+
+                return value;
+            }
+        };
+    }
+
     @Override
     public E find(E x) {
         Node<E> nd = findNode(x);
@@ -241,6 +283,9 @@ public class BinarySearchTree<E extends Comparable<E>> implements SimpleSSet<E>
         // check if nd is root
         if (nd == root) {
             root = child;
+            if (child != null) {
+                child.parent = null;
+            }
             return;
         }
 
@@ -432,8 +477,8 @@ public class BinarySearchTree<E extends Comparable<E>> implements SimpleSSet<E>
                 return null;
             }
 
-            // nd is left child of parent
-            return nd.parent.nextNode();
+            // nd is left child of parent, so parent is the next node
+            return nd.parent;
         }
     }
 }
\ No newline at end of file
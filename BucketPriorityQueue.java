@@ -0,0 +1,217 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A priority queue for workloads with many duplicate priorities.
+ * The elements with the same priority are kept together in a FIFO
+ * bucket, and only the distinct priorities are kept in a binary
+ * min-heap (of primitive <code>long</code>s). A
+ * <code>LongObjectMap</code>, which hashes the priorities without
+ * boxing them, finds the bucket of a priority, and the bucket of the
+ * smallest priority is cached, so that:</p>
+ * <ul>
+ * <li>inserting an element with a priority already in the queue takes
+ * O(1) expected time;</li>
+ * <li>removing an element that is not the last of its priority takes
+ * O(1) time;</li>
+ * <li>all other insertions and removals take O(log d) time, where d
+ * is the number of distinct priorities.</li>
+ * </ul>
+ *
+ * <p>Unlike <code>AVLPriorityQueue</code>, the queue keeps every
+ * element inserted with an existing priority; elements with equal
+ * priorities are removed in the order they were inserted.</p>
+ *
+ * @see AdaptivePriorityQueue
+ */
+
+public class BucketPriorityQueue<E> implements SimplePriorityQueue<E> {
+    private final LongObjectMap<Bucket> buckets = new LongObjectMap<Bucket>();
+
+    /**
+     * The distinct priorities, in a binary min-heap.
+     */
+    private long[] heap = new long[16];
+    private int distinct = 0;
+
+    /**
+     * The bucket of the smallest priority, or null if the queue is
+     * empty.
+     */
+    private Bucket front = null;
+
+    private int size = 0;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of distinct priorities in the queue
+     */
+    public int distinctPriorities() {
+        return distinct;
+    }
+
+    @Override
+    public void insert(long k, E x) {
+        Bucket b = (front != null && front.key == k) ? front : buckets.get(k);
+
+        if (b == null) {
+            b = new Bucket(k);
+            buckets.put(k, b);
+            push(k);
+
+            if (front == null || k < front.key) {
+                front = b;
+            }
+        }
+
+        b.add(x);
+        ++size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E min() {
+        return (front == null) ? null : (E) front.vals[front.head];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E removeMin() {
+        if (front == null) {
+            return null;
+        }
+
+        E x = (E) front.poll();
+        --size;
+
+        if (front.isEmpty()) {
+            buckets.remove(front.key);
+            pop();
+            front = (distinct == 0) ? null : buckets.get(heap[0]);
+        }
+
+        return x;
+    }
+
+    /**
+     * Return the smallest priority in the queue.
+     *
+     * @return the smallest priority
+     * @throws NoSuchElementException if the queue is empty
+     */
+    long minKey() {
+        if (front == null) {
+            throw new NoSuchElementException("queue is empty");
+        }
+
+        return front.key;
+    }
+
+    /**
+     * Copy every entry, in no particular order, to outKeys (which
+     * must have length at least <code>size()</code>) and outVals.
+     */
+    @SuppressWarnings("unchecked")
+    void export(long[] outKeys, List<E> outVals) {
+        int n = 0;
+
+        for (int i = 0; i < distinct; ++i) {
+            Bucket b = buckets.get(heap[i]);
+            for (int j = b.head; j < b.tail; ++j) {
+                outKeys[n++] = b.key;
+                outVals.add((E) b.vals[j]);
+            }
+        }
+    }
+
+    private void push(long k) {
+        if (distinct == heap.length) {
+            heap = Arrays.copyOf(heap, 2 * distinct);
+        }
+
+        int i = distinct++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= k) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = k;
+    }
+
+    private void pop() {
+        long k = heap[--distinct];
+        int i = 0;
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= distinct) {
+                break;
+            }
+            if (child + 1 < distinct && heap[child + 1] < heap[child]) {
+                ++child;
+            }
+            if (heap[child] >= k) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = k;
+    }
+
+    /**
+     * The elements with one priority, in insertion order, in the
+     * array slots <code>head</code> to <code>tail - 1</code>.
+     */
+    private static final class Bucket {
+        final long key;
+        Object[] vals = new Object[4];
+        int head = 0;
+        int tail = 0;
+
+        Bucket(long key) {
+            this.key = key;
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        void add(Object x) {
+            if (tail == vals.length) {
+                int n = tail - head;
+
+                // compact if at most half the array is in use, and grow otherwise
+                Object[] a = (2 * n <= vals.length) ? vals : new Object[2 * vals.length];
+                System.arraycopy(vals, head, a, 0, n);
+                if (a == vals) {
+                    Arrays.fill(vals, n, tail, null);
+                }
+                vals = a;
+                head = 0;
+                tail = n;
+            }
+
+            vals[tail++] = x;
+        }
+
+        Object poll() {
+            Object x = vals[head];
+            vals[head++] = null;
+            return x;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe <code>SimpleSSet</code> backed by an
+ * <code>AVLTree</code>, tuned for read-mostly workloads. Queries
+ * (<code>find</code>, <code>findMin</code>, <code>findMax</code>,
+ * <code>size</code>) traverse the tree optimistically without
+ * acquiring any lock, and then validate a <code>StampedLock</code>
+ * stamp. A query is retried only if a writer (and hence possibly a
+ * rotation in <code>AVLTree.restructure</code>) overlapped the
+ * traversal; after a few failed attempts the query falls back to the
+ * shared read lock so that readers cannot starve.
+ *
+ * <p>Writers hold the exclusive write lock only for the duration of
+ * the underlying <code>AVLTree</code> update. Since every update
+ * already walks from the modified leaf back to the root to fix
+ * heights, per-node writer locks would still contend at the root, so
+ * writers are serialized with each other.</p>
+ *
+ * <p>An optimistic traversal may observe the tree in an inconsistent
+ * state. Such a traversal is bounded by <code>MAX_DEPTH</code> steps
+ * and any exception it throws (including the one thrown when the
+ * bound is exceeded) is discarded; the traversal is then retried.</p>
+ *
+ * @see AVLTree
+ */
+
+public class ConcurrentAVLTree<E extends Comparable<E>> implements SimpleSSet<E> {
+
+    /**
+     * Number of optimistic attempts made by a query before falling
+     * back to the read lock.
+     */
+    public static final int OPTIMISTIC_ATTEMPTS = 4;
+
+    /**
+     * Upper bound on the number of nodes visited by one optimistic
+     * traversal. An AVL tree with at most 2^31 nodes has height less
+     * than 45, so longer paths can only be seen while a writer is
+     * restructuring the tree.
+     */
+    private static final int MAX_DEPTH = 64;
+
+    private final AVLTree<E> tree = new AVLTree<E>();
+    private final StampedLock lock = new StampedLock();
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder lockedReads = new LongAdder();
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size;
+
+        if (stamp != 0 && lock.validate(stamp)) {
+            return size;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return tree.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public E find(E x) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; ++attempt) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp != 0) {
+                try {
+                    E result = ceiling(x);
+
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    // torn read of a node being restructured; the
+                    // stamp can no longer be valid, so retry
+                }
+            }
+
+            retries.increment();
+        }
+
+        long stamp = lock.readLock();
+        try {
+            lockedReads.increment();
+
+            // not tree.find, which moves the tree's search finger and
+            // so must not run in several reader threads at once
+            return ceiling(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public E findMin() {
+        return findExtreme(true);
+    }
+
+    @Override
+    public E findMax() {
+        return findExtreme(false);
+    }
+
+    @Override
+    public boolean add(E x) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.add(x);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public E remove(E x) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.remove(x);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Return the number of optimistic traversals that had to be
+     * retried because a writer overlapped them. Successful optimistic
+     * reads are not counted, to keep the common path free of shared
+     * writes.
+     *
+     * @return the number of failed optimistic attempts
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Return the number of queries that fell back to the read lock.
+     *
+     * @return the number of queries answered under the read lock
+     */
+    public long getLockedReads() {
+        return lockedReads.sum();
+    }
+
+    @Override
+    public String toString() {
+        long stamp = lock.readLock();
+        try {
+            return tree.toString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Optimistically find the smallest element greater than or equal
+     * to x. This is the lock-free counterpart of
+     * <code>BinarySearchTree.find</code>: instead of locating the
+     * last node on the search path and then calling
+     * <code>nextNode</code>, the candidate successor is tracked while
+     * descending, so parent pointers are never followed.
+     */
+    private E ceiling(E x) {
+        BinarySearchTree<E>.Node<E> nd = tree.root;
+        E best = null;
+
+        for (int depth = 0; nd != null; ++depth) {
+            if (depth == MAX_DEPTH) {
+                throw new IllegalStateException("optimistic traversal exceeded MAX_DEPTH");
+            }
+
+            E value = nd.value;
+
+            if (x.equals(value)) {
+                return value;
+            }
+
+            if (x.compareTo(value) < 0) {
+                best = value;
+                nd = nd.left;
+            } else {
+                nd = nd.right;
+            }
+        }
+
+        return best;
+    }
+
+    private E findExtreme(boolean min) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; ++attempt) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp != 0) {
+                try {
+                    E result = extreme(min);
+
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    // torn read of a node being restructured, retry
+                }
+            }
+
+            retries.increment();
+        }
+
+        long stamp = lock.readLock();
+        try {
+            lockedReads.increment();
+            return min ? tree.findMin() : tree.findMax();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private E extreme(boolean min) {
+        BinarySearchTree<E>.Node<E> nd = tree.root;
+
+        if (nd == null) {
+            return null;
+        }
+
+        for (int depth = 0; depth < MAX_DEPTH; ++depth) {
+            BinarySearchTree<E>.Node<E> next = min ? nd.left : nd.right;
+
+            if (next == null) {
+                return nd.value;
+            }
+
+            nd = next;
+        }
+
+        throw new IllegalStateException("optimistic traversal exceeded MAX_DEPTH");
+    }
+}
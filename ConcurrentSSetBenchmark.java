@@ -0,0 +1,120 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measure how read throughput on an ordered set scales with the
+ * number of threads, comparing an <code>AVLTree</code> guarded by a
+ * single monitor against <code>ConcurrentAVLTree</code>. Each thread
+ * performs one write (alternately an <code>add</code> and a
+ * <code>remove</code> of a random key) for every
+ * <code>READS_PER_WRITE</code> <code>find</code> calls.
+ *
+ * <p>Usage: <code>java ConcurrentSSetBenchmark [size] [millis]</code></p>
+ */
+
+public class ConcurrentSSetBenchmark {
+    static final int READS_PER_WRITE = 50;
+    static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws InterruptedException {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        long millis = (args.length > 1) ? Long.parseLong(args[1]) : 1000;
+
+        System.out.println("threads  locked AVLTree (ops/ms)  ConcurrentAVLTree (ops/ms)");
+
+        for (int threads : THREAD_COUNTS) {
+            AVLTree<Integer> plain = new AVLTree<Integer>();
+            SimpleSSet<Integer> locked = new SynchronizedSSet<Integer>(plain);
+            ConcurrentAVLTree<Integer> concurrent = new ConcurrentAVLTree<Integer>();
+
+            fill(locked, size);
+            fill(concurrent, size);
+
+            double lockedRate = run(locked, size, threads, millis);
+            double concurrentRate = run(concurrent, size, threads, millis);
+
+            System.out.printf("%7d  %24.1f  %26.1f%n", threads, lockedRate, concurrentRate);
+        }
+    }
+
+    static void fill(SimpleSSet<Integer> set, int size) {
+        for (int i = 0; i < size; ++i) {
+            set.add(2 * i);
+        }
+    }
+
+    /**
+     * Run the mixed workload on the given set with the given number
+     * of threads for (approximately) the given duration, returning
+     * the total number of operations completed per millisecond.
+     */
+    static double run(SimpleSSet<Integer> set, int size, int threads, long millis)
+        throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + (millis + 100) * 1_000_000;
+
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                long count = 0;
+
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < READS_PER_WRITE; ++i) {
+                        set.find(rand.nextInt(2 * size));
+                    }
+
+                    int key = rand.nextInt(2 * size);
+                    if (set.remove(key) == null) {
+                        set.add(key);
+                    }
+
+                    count += READS_PER_WRITE + 1;
+                }
+
+                ops.add(count);
+            });
+            workers[t].start();
+        }
+
+        RunTimer timer = new RunTimer();
+        timer.start();
+        start.countDown();
+
+        for (Thread w : workers) {
+            w.join();
+        }
+
+        timer.stop();
+
+        return (double) ops.sum() / timer.getElapsedMillis();
+    }
+
+    /**
+     * The baseline: every operation on the wrapped set holds the
+     * same monitor.
+     */
+    static class SynchronizedSSet<E extends Comparable<E>> implements SimpleSSet<E> {
+        private final SimpleSSet<E> set;
+
+        SynchronizedSSet(SimpleSSet<E> set) {
+            this.set = set;
+        }
+
+        public synchronized int size() { return set.size(); }
+        public synchronized boolean isEmpty() { return set.isEmpty(); }
+        public synchronized boolean add(E x) { return set.add(x); }
+        public synchronized E remove(E x) { return set.remove(x); }
+        public synchronized E find(E x) { return set.find(x); }
+        public synchronized E findMin() { return set.findMin(); }
+        public synchronized E findMax() { return set.findMax(); }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * <p>A directed graph with <code>long</code> edge weights, stored in
+ * compressed sparse row (CSR) form. The vertices are the integers
+ * <code>0, 1, ..., n-1</code>. The edges leaving vertex
+ * <code>v</code> are the edges <code>e</code> with <code>offset(v)
+ * &lt;= e &lt; offset(v + 1)</code>; edge <code>e</code> leads to
+ * <code>target(e)</code> and has weight <code>weight(e)</code>. All
+ * of this is stored in three primitive arrays, so iterating over a
+ * vertex's neighbours reads consecutive memory and allocates
+ * nothing.</p>
+ *
+ * <p>Graphs are immutable and are built from parallel arrays of edge
+ * sources, targets and weights with <code>fromEdges</code>.</p>
+ *
+ * @see GraphAlgorithms
+ */
+
+public final class CsrGraph {
+    private final int n;
+    private final int[] offsets;
+    private final int[] targets;
+    private final long[] weights;
+
+    private CsrGraph(int n, int[] offsets, int[] targets, long[] weights) {
+        this.n = n;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * <p>Build a graph with <code>n</code> vertices and the edges
+     * <code>src[i] -&gt; dst[i]</code> of weight <code>w[i]</code>.
+     * If <code>undirected</code> is true, the reverse of every edge
+     * is added as well. Building takes O(n + m) time (a counting
+     * sort of the edges by source).</p>
+     *
+     * @param n the number of vertices
+     * @param src the sources of the edges
+     * @param dst the targets of the edges
+     * @param w the weights of the edges, which must be non-negative
+     * @param undirected whether to add the reverse of each edge
+     * @return the graph
+     * @throws IllegalArgumentException if the arrays differ in
+     * length, or an edge has an invalid endpoint or negative weight
+     */
+    public static CsrGraph fromEdges(int n, int[] src, int[] dst, long[] w, boolean undirected) {
+        if (src.length != dst.length || src.length != w.length) {
+            throw new IllegalArgumentException("edge arrays must have the same length");
+        }
+
+        int m = undirected ? 2 * src.length : src.length;
+        int[] offsets = new int[n + 1];
+
+        for (int i = 0; i < src.length; ++i) {
+            if (src[i] < 0 || src[i] >= n || dst[i] < 0 || dst[i] >= n) {
+                throw new IllegalArgumentException("edge " + i + " has an endpoint outside [0, " + n + ")");
+            }
+            if (w[i] < 0) {
+                throw new IllegalArgumentException("edge " + i + " has negative weight " + w[i]);
+            }
+
+            ++offsets[src[i] + 1];
+            if (undirected) {
+                ++offsets[dst[i] + 1];
+            }
+        }
+
+        for (int v = 0; v < n; ++v) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        int[] next = new int[n];
+        System.arraycopy(offsets, 0, next, 0, n);
+
+        int[] targets = new int[m];
+        long[] weights = new long[m];
+
+        for (int i = 0; i < src.length; ++i) {
+            int e = next[src[i]]++;
+            targets[e] = dst[i];
+            weights[e] = w[i];
+
+            if (undirected) {
+                e = next[dst[i]]++;
+                targets[e] = src[i];
+                weights[e] = w[i];
+            }
+        }
+
+        return new CsrGraph(n, offsets, targets, weights);
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int vertexCount() {
+        return n;
+    }
+
+    /**
+     * @return the number of (directed) edges
+     */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param v a vertex
+     * @return the index of the first edge leaving v; the edges leaving
+     * v end at <code>offset(v + 1)</code>
+     */
+    public int offset(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @param e an edge
+     * @return the vertex edge e leads to
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * @param e an edge
+     * @return the weight of edge e
+     */
+    public long weight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * @param v a vertex
+     * @return the number of edges leaving v
+     */
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+}
@@ -0,0 +1,380 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Runs tasks after a given delay. Pending tasks are stored in a
+ * <code>HeapPriorityQueue</code> keyed by their
+ * <code>System.nanoTime()</code> deadline, measured from the
+ * <code>nanoTime</code> at which the scheduler was created so that
+ * keys never wrap around. Delays are capped at
+ * <code>MAX_DELAY_NANOS</code> (about 146 years). A single dispatcher thread
+ * repeatedly calls <code>takeBatch</code>, which parks exactly until
+ * the earliest deadline (the queue's <code>min()</code>) and then
+ * removes every task that is due, and hands the batch to an
+ * executor.</p>
+ *
+ * <p>The dispatcher is signalled only when a newly scheduled task
+ * becomes the earliest one, so it is neither woken by later tasks
+ * nor left sleeping past an earlier one. Tasks are only ever taken
+ * by the dispatcher, so every task removed from the queue is handed
+ * to the executor.</p>
+ *
+ * <p>If the executor rejects a task while the scheduler is open, the
+ * rejection is reported to the dispatcher thread's uncaught exception
+ * handler and dispatching goes on with the next task.</p>
+ *
+ * <p>By default tasks run on a virtual-thread-per-task executor when
+ * the running JVM provides one (Java 21 and later), and on a cached
+ * pool of daemon threads otherwise.</p>
+ *
+ * <p>The scheduler records the <em>lateness</em> of every dispatched
+ * task, i.e., the time from its deadline until it was handed to the
+ * executor.</p>
+ */
+
+public class DelayScheduler implements AutoCloseable {
+
+    /**
+     * The default maximum number of tasks dispatched per wakeup.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * The longest delay, in nanoseconds; longer ones are shortened to
+     * it. As in <code>ScheduledThreadPoolExecutor</code>, this keeps
+     * the difference of any two deadlines from overflowing.
+     */
+    public static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 1;
+
+    private final HeapPriorityQueue<ScheduledTask> queue = new HeapPriorityQueue<ScheduledTask>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    /**
+     * The origin of the queue's keys.
+     */
+    private final long base = System.nanoTime();
+
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final int batchSize;
+    private final Thread dispatcher;
+    private volatile boolean closed = false;
+
+    // lateness statistics, guarded by lock
+    private long dispatched = 0;
+    private long totalLateness = 0;
+    private long maxLateness = 0;
+    private long wakeups = 0;
+
+    /**
+     * Create a scheduler that runs tasks on its own executor (virtual
+     * threads if available), dispatching up to
+     * <code>DEFAULT_BATCH_SIZE</code> tasks per wakeup.
+     */
+    public DelayScheduler() {
+        this(newTaskExecutor(), true, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create a scheduler that runs tasks on the given executor. The
+     * executor is not shut down when the scheduler is closed.
+     *
+     * @param executor the executor on which due tasks are run
+     * @param batchSize the maximum number of tasks dispatched per
+     * wakeup
+     */
+    public DelayScheduler(Executor executor, int batchSize) {
+        this(executor, false, batchSize);
+    }
+
+    private DelayScheduler(Executor executor, boolean ownsExecutor, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+        }
+
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.batchSize = batchSize;
+
+        dispatcher = new Thread(this::dispatch, "DelayScheduler-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * <p>Schedule a task to be run after the given delay.</p>
+     *
+     * @param task the task to be run
+     * @param delay the delay from now; a negative delay is taken as
+     * zero, and one longer than <code>MAX_DELAY_NANOS</code> as that
+     * @param unit the unit of delay
+     * @throws RejectedExecutionException if the scheduler is closed
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        long nanos = Math.max(0, Math.min(unit.toNanos(delay), MAX_DELAY_NANOS));
+        long deadline = System.nanoTime() + nanos;
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("scheduler is closed");
+            }
+
+            ScheduledTask first = queue.min();
+            // deadline may wrap around, but deadline - base does not
+            queue.insert(deadline - base, new ScheduledTask(deadline, task));
+
+            // re-arm the dispatcher only if the new task is now the
+            // earliest one
+            if (first == null || deadline - first.deadline < 0) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Return the number of tasks that have not yet been
+     * dispatched.</p>
+     *
+     * @return the number of pending tasks
+     */
+    public int pending() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the earliest pending task is due, then remove up to
+     * max due tasks, adding them to out in order of deadline, and
+     * return their number. Only called by the dispatcher thread.
+     */
+    private int takeBatch(List<Runnable> out, int max) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                ScheduledTask first = queue.min();
+
+                if (first == null) {
+                    available.await();
+                    ++wakeups;
+                    continue;
+                }
+
+                long delay = first.deadline - System.nanoTime();
+
+                if (delay <= 0) {
+                    return drainDue(out, max);
+                }
+
+                available.awaitNanos(delay);
+                ++wakeups;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove up to max due tasks, recording their lateness. Must be
+     * called with lock held and at least one task due.
+     */
+    private int drainDue(List<Runnable> out, int max) {
+        long now = System.nanoTime();
+        int n = 0;
+
+        while (n < max) {
+            ScheduledTask first = queue.min();
+
+            if (first == null || first.deadline - now > 0) {
+                break;
+            }
+
+            queue.removeMin();
+            out.add(first.task);
+            ++n;
+
+            long lateness = now - first.deadline;
+            ++dispatched;
+            totalLateness += lateness;
+            maxLateness = Math.max(maxLateness, lateness);
+        }
+
+        return n;
+    }
+
+    /**
+     * The body of the dispatcher thread.
+     */
+    private void dispatch() {
+        List<Runnable> batch = new ArrayList<Runnable>(batchSize);
+
+        while (!closed) {
+            try {
+                takeBatch(batch, batchSize);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            for (Runnable task : batch) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // report the task rather than let the rejection
+                    // stop the dispatcher
+                    if (!closed) {
+                        Thread.UncaughtExceptionHandler h = dispatcher.getUncaughtExceptionHandler();
+                        h.uncaughtException(dispatcher, e);
+                    }
+                }
+            }
+
+            batch.clear();
+        }
+    }
+
+    /**
+     * <p>Return the number of tasks dispatched so far.</p>
+     *
+     * @return the number of dispatched tasks
+     */
+    public long getDispatchedCount() {
+        lock.lock();
+        try {
+            return dispatched;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Return the mean time from a task's deadline to its dispatch,
+     * in nanoseconds.</p>
+     *
+     * @return the mean lateness of dispatched tasks
+     */
+    public double getMeanLatenessNanos() {
+        lock.lock();
+        try {
+            return (dispatched == 0) ? 0 : (double) totalLateness / dispatched;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Return the largest time from a task's deadline to its
+     * dispatch, in nanoseconds.</p>
+     *
+     * @return the maximum lateness of dispatched tasks
+     */
+    public long getMaxLatenessNanos() {
+        lock.lock();
+        try {
+            return maxLateness;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Return the number of times the dispatcher thread was woken up
+     * while waiting for a task to be due.</p>
+     *
+     * @return the number of wakeups
+     */
+    public long getWakeups() {
+        lock.lock();
+        try {
+            return wakeups;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Stop dispatching tasks. Pending tasks are discarded. If the
+     * scheduler created its own executor, that executor is shut down
+     * after the tasks already dispatched have completed. If the
+     * calling thread is interrupted while waiting, it keeps waiting
+     * and its interrupt status is set on return.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                dispatcher.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (ownsExecutor) {
+            ExecutorService es = (ExecutorService) executor;
+            es.shutdown();
+
+            while (true) {
+                try {
+                    es.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Return a virtual-thread-per-task executor if the running JVM
+     * provides one, and a cached pool of daemon threads otherwise.
+     */
+    static ExecutorService newTaskExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * A task together with its deadline.
+     */
+    private static final class ScheduledTask {
+        final long deadline;
+        final Runnable task;
+
+        ScheduledTask(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+}
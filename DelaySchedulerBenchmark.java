@@ -0,0 +1,70 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measure the scheduling lateness of <code>DelayScheduler</code>
+ * under load. Several producer threads schedule tasks with random
+ * delays up to <code>maxDelayMillis</code>; each task records the
+ * time from its deadline until it started running. The scheduler's
+ * own statistics (lateness until dispatch, number of wakeups) are
+ * reported alongside.
+ *
+ * <p>Usage: <code>java DelaySchedulerBenchmark [tasks] [producers] [maxDelayMillis]</code></p>
+ */
+
+public class DelaySchedulerBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+        int producers = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        long maxDelayMillis = (args.length > 2) ? Long.parseLong(args[2]) : 2000;
+
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicLong totalStartLateness = new AtomicLong();
+        AtomicLong maxStartLateness = new AtomicLong();
+
+        try (DelayScheduler scheduler = new DelayScheduler()) {
+            Thread[] threads = new Thread[producers];
+
+            for (int p = 0; p < producers; ++p) {
+                int count = tasks / producers + ((p < tasks % producers) ? 1 : 0);
+
+                threads[p] = new Thread(() -> {
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+
+                    for (int i = 0; i < count; ++i) {
+                        long delay = rand.nextLong(TimeUnit.MILLISECONDS.toNanos(maxDelayMillis));
+                        long deadline = System.nanoTime() + delay;
+
+                        scheduler.schedule(() -> {
+                            long lateness = System.nanoTime() - deadline;
+                            totalStartLateness.addAndGet(lateness);
+                            maxStartLateness.accumulateAndGet(lateness, Math::max);
+                            done.countDown();
+                        }, delay, TimeUnit.NANOSECONDS);
+                    }
+                });
+                threads[p].start();
+            }
+
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            done.await();
+
+            System.out.println("tasks:                       " + tasks);
+            System.out.println("dispatcher wakeups:          " + scheduler.getWakeups());
+            System.out.printf("mean lateness to dispatch:   %.1f us%n",
+                              scheduler.getMeanLatenessNanos() / 1000);
+            System.out.printf("max lateness to dispatch:    %.1f us%n",
+                              scheduler.getMaxLatenessNanos() / 1000.0);
+            System.out.printf("mean lateness to task start: %.1f us%n",
+                              totalStartLateness.get() / 1000.0 / tasks);
+            System.out.printf("max lateness to task start:  %.1f us%n",
+                              maxStartLateness.get() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,891 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * <p>A <code>HeapPriorityQueue</code> that survives the death of its
+ * process. Every <code>insert</code> and <code>removeMin</code> is
+ * appended as a record to a write-ahead log in a directory, and the
+ * heap is periodically saved as a <code>QueueSnapshot</code>
+ * checkpoint, so that opening the directory again restores the last
+ * checkpoint and replays only the log written after it.</p>
+ *
+ * <p>Records are appended to an in-memory buffer and made durable by
+ * a <em>commit</em>, which writes the buffer through a
+ * <code>FileChannel</code> and forces it to disk. Commits use
+ * <em>group commit</em>: while one thread writes and forces a buffer,
+ * other threads keep appending to a second buffer, and the next
+ * commit makes all of their records durable with a single force. When
+ * the queue is created with <code>awaitCommit</code>, each operation
+ * returns only once its record is durable, so with many threads the
+ * cost of a force is shared by all the operations that arrived during
+ * the previous one. Otherwise operations return at once, and the
+ * caller decides when to call <code>commit</code>.</p>
+ *
+ * <p>The directory holds checkpoints <code>checkpoint-G</code> and
+ * logs <code>log-G</code>, numbered by generation G. A checkpoint of
+ * generation G holds the queue as of the start of <code>log-G</code>.
+ * A checkpoint starts a new log, writes the new checkpoint to a
+ * temporary file and renames it into place, and only then deletes the
+ * older files, so a crash at any point leaves a checkpoint and the
+ * logs to replay after it. Each record is framed by its length and a
+ * CRC-32C checksum; a torn record at the end of the last log (an
+ * operation that was never committed) is discarded on recovery.</p>
+ *
+ * <p>Log record format (little-endian): the length of the body (4
+ * bytes), the body, and the CRC-32C of the body (4 bytes). The body is
+ * a type byte (<code>INSERT</code> or <code>REMOVE_MIN</code>) and the
+ * priority (8 bytes), followed for an insert by the element as written
+ * by the <code>PayloadCodec</code>. A removal records the priority it
+ * removed, which recovery checks against the replayed heap.</p>
+ *
+ * <p>All methods may be called from any thread. If writing the log
+ * fails, the queue no longer matches its log: the error is thrown
+ * from every later operation, and the directory must be reopened.
+ * The <code>SimplePriorityQueue</code> methods throw such errors as
+ * <code>UncheckedIOException</code>.</p>
+ *
+ * <p>The queue reports the latency of its commits and the number of
+ * records per commit, the time taken by checkpoints, and the time
+ * taken to recover when it was opened.</p>
+ *
+ * @see QueueSnapshot
+ * @see LatencyHistogram
+ */
+
+public class DurablePriorityQueue<E> implements SimplePriorityQueue<E>, Closeable {
+
+    /**
+     * The default number of records appended between checkpoints.
+     */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 1 << 20;
+
+    static final byte INSERT = 1;
+    static final byte REMOVE_MIN = 2;
+
+    private static final String LOG_PREFIX = "log-";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /**
+     * The size of the body of a record without its element, and of
+     * the length and checksum around it.
+     */
+    private static final int FIXED_BODY_BYTES = 1 + Long.BYTES;
+    private static final int FRAME_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * The largest body accepted when reading a log, to reject a
+     * garbage length without allocating it.
+     */
+    private static final int MAX_BODY_BYTES = 1 << 30;
+
+    private final Path dir;
+    private final PayloadCodec<E> codec;
+    private final boolean awaitCommit;
+    private final long checkpointInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+
+    // guarded by lock
+    private HeapPriorityQueue<E> heap;
+    private long generation;
+    private FileChannel log;
+
+    /**
+     * The buffer records are appended to, and the one being written
+     * by a commit (or null while a commit holds it).
+     */
+    private ByteBuffer pending = newBuffer(BUFFER_BYTES);
+    private ByteBuffer spare = newBuffer(BUFFER_BYTES);
+
+    /**
+     * The number of records appended and made durable since the queue
+     * was opened, and appended since the last checkpoint.
+     */
+    private long appended = 0;
+    private long durable = 0;
+    private long sinceCheckpoint = 0;
+
+    private boolean committing = false;
+    private boolean closed = false;
+    private IOException failure = null;
+
+    private final CRC32C crc = new CRC32C();
+
+    // statistics, guarded by lock
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LatencyHistogram commitGroupSize = new LatencyHistogram();
+    private final RunTimer checkpointTimer = new RunTimer();
+    private final RunTimer recoveryTimer = new RunTimer();
+    private long checkpoints = 0;
+    private long recoveredEntries = 0;
+    private long replayedRecords = 0;
+
+    /**
+     * Open the queue stored in a directory, creating an empty one if
+     * the directory holds none. Each operation waits until it is
+     * durable, and a checkpoint is taken every
+     * <code>DEFAULT_CHECKPOINT_INTERVAL</code> records.
+     *
+     * @param dir the directory of the queue
+     * @param codec the codec used to encode the elements
+     * @throws IOException if the queue cannot be recovered
+     */
+    public DurablePriorityQueue(Path dir, PayloadCodec<E> codec) throws IOException {
+        this(dir, codec, true, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Open the queue stored in a directory, creating an empty one if
+     * the directory holds none.
+     *
+     * @param dir the directory of the queue
+     * @param codec the codec used to encode the elements
+     * @param awaitCommit whether each operation waits until its record
+     * is durable; if false, records are made durable by
+     * <code>commit</code>, <code>checkpoint</code> and
+     * <code>close</code>
+     * @param checkpointInterval the number of records appended after
+     * which a checkpoint is taken
+     * @throws IOException if the queue cannot be recovered
+     */
+    public DurablePriorityQueue(Path dir, PayloadCodec<E> codec, boolean awaitCommit,
+                                long checkpointInterval) throws IOException {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("checkpoint interval must be positive: "
+                                               + checkpointInterval);
+        }
+
+        this.dir = dir;
+        this.codec = codec;
+        this.awaitCommit = awaitCommit;
+        this.checkpointInterval = checkpointInterval;
+
+        recover();
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return heap.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E min() {
+        lock.lock();
+        try {
+            return heap.min();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Insert an element and log the insertion. If the queue awaits
+     * commits, return once the record is durable.</p>
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public void insert(long k, E x) {
+        long lsn;
+
+        lock.lock();
+        try {
+            checkUsable();
+            append(INSERT, k, x);
+            heap.insert(k, x);
+            lsn = appended;
+            afterAppend();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (awaitCommit) {
+            awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * <p>Remove the element with the smallest priority and log the
+     * removal. If the queue awaits commits, return once the record is
+     * durable.</p>
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public E removeMin() {
+        E x;
+        long lsn;
+
+        lock.lock();
+        try {
+            checkUsable();
+            if (heap.isEmpty()) {
+                return null;
+            }
+
+            append(REMOVE_MIN, heap.minKey(), null);
+            x = heap.removeMin();
+            lsn = appended;
+            afterAppend();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (awaitCommit) {
+            awaitDurable(lsn);
+        }
+
+        return x;
+    }
+
+    /**
+     * <p>Make every operation performed so far durable.</p>
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void commit() throws IOException {
+        long lsn;
+
+        lock.lock();
+        try {
+            lsn = appended;
+        } finally {
+            lock.unlock();
+        }
+
+        commit(lsn);
+    }
+
+    /**
+     * <p>Commit everything, save the queue as a new checkpoint, and
+     * delete the log and checkpoint it replaces, so that recovery
+     * does not have to replay the operations performed so far.</p>
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void checkpoint() throws IOException {
+        lock.lock();
+        try {
+            checkUsable();
+            checkpointLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Commit everything and close the log. Closing a closed queue
+     * has no effect.</p>
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            try {
+                if (failure == null) {
+                    awaitIdle();
+                    writePending(true);
+                }
+            } finally {
+                closed = true;
+                log.close();
+                committed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the directory holding the queue
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return the generation of the current log and checkpoint
+     */
+    public long getGeneration() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the histogram of the time taken by each commit
+     * to write and force the log, in nanoseconds
+     */
+    public LatencyHistogram getCommitLatency() {
+        return copy(commitLatency);
+    }
+
+    /**
+     * @return a copy of the histogram of the number of records made
+     * durable by each commit
+     */
+    public LatencyHistogram getCommitGroupSize() {
+        return copy(commitGroupSize);
+    }
+
+    public long getCommits() {
+        lock.lock();
+        try {
+            return commitLatency.getTotalCount();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCheckpoints() {
+        lock.lock();
+        try {
+            return checkpoints;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time spent taking checkpoints, in
+     * nanoseconds
+     */
+    public long getCheckpointNanos() {
+        lock.lock();
+        try {
+            return checkpointTimer.getElapsedNanos();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the time taken to recover the queue when it was opened,
+     * in nanoseconds
+     */
+    public long getRecoveryNanos() {
+        lock.lock();
+        try {
+            return recoveryTimer.getElapsedNanos();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries loaded from the checkpoint when
+     * the queue was opened
+     */
+    public long getRecoveredEntries() {
+        lock.lock();
+        try {
+            return recoveredEntries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of log records replayed when the queue was
+     * opened
+     */
+    public long getReplayedRecords() {
+        lock.lock();
+        try {
+            return replayedRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LatencyHistogram copy(LatencyHistogram h) {
+        LatencyHistogram c = new LatencyHistogram(h.getPrecisionBits());
+
+        lock.lock();
+        try {
+            c.merge(h);
+        } finally {
+            lock.unlock();
+        }
+
+        return c;
+    }
+
+    // must be called with lock held
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("an earlier write to the log failed", failure);
+        }
+        if (closed) {
+            throw new IOException("queue is closed");
+        }
+    }
+
+    /**
+     * Append a record to the pending buffer, growing it if needed.
+     * Must be called with lock held.
+     */
+    private void append(byte type, long k, E x) {
+        while (true) {
+            int start = pending.position();
+
+            try {
+                if (pending.remaining() < FIXED_BODY_BYTES + FRAME_BYTES) {
+                    throw new BufferOverflowException();
+                }
+
+                pending.position(start + Integer.BYTES);
+                pending.put(type);
+                pending.putLong(k);
+                if (type == INSERT) {
+                    codec.encode(x, pending);
+                }
+
+                int end = pending.position();
+
+                crc.reset();
+                crc.update(pending.duplicate().position(start + Integer.BYTES).limit(end));
+                pending.putInt(start, end - start - Integer.BYTES);
+                pending.putInt((int) crc.getValue());
+
+                ++appended;
+                ++sinceCheckpoint;
+                return;
+            } catch (BufferOverflowException e) {
+                pending.position(start);
+                ByteBuffer larger = newBuffer(2 * pending.capacity());
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            } catch (RuntimeException e) {
+                // drop the partial record if the codec fails
+                pending.position(start);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Take a checkpoint if one is due, and otherwise write a full
+     * buffer to the log (without forcing it) if no commit is in
+     * progress, so that a caller that seldom commits does not buffer
+     * its whole log in memory. Must be called with lock held.
+     */
+    private void afterAppend() throws IOException {
+        if (sinceCheckpoint >= checkpointInterval) {
+            checkpointLocked();
+        } else if (!committing && pending.position() >= BUFFER_BYTES) {
+            writePending(false);
+        }
+    }
+
+    /**
+     * Wait until the record numbered lsn is durable, committing if no
+     * other thread is.
+     */
+    private void awaitDurable(long lsn) {
+        try {
+            commit(lsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Make the records up to lsn durable. Only one thread commits at
+     * a time, outside the lock, while the others append to the other
+     * buffer and wait for the commit after it.
+     */
+    private void commit(long lsn) throws IOException {
+        lock.lock();
+        try {
+            while (durable < lsn) {
+                if (failure != null) {
+                    throw new IOException("an earlier write to the log failed", failure);
+                }
+                if (closed) {
+                    throw new IOException("queue is closed");
+                }
+
+                if (committing) {
+                    committed.awaitUninterruptibly();
+                    continue;
+                }
+
+                committing = true;
+                ByteBuffer buf = pending;
+                pending = spare;
+                spare = null;
+                long target = appended;
+                FileChannel ch = log;
+                IOException error = null;
+
+                lock.unlock();
+                long start = System.nanoTime();
+                try {
+                    write(ch, buf);
+                    ch.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                long elapsed = System.nanoTime() - start;
+
+                committing = false;
+                buf.clear();
+                spare = buf;
+
+                if (error != null) {
+                    failure = error;
+                    committed.signalAll();
+                    throw error;
+                }
+
+                commitLatency.record(elapsed);
+                commitGroupSize.record(target - durable);
+                durable = target;
+                committed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until no commit is in progress. Must be called with lock
+     * held.
+     */
+    private void awaitIdle() {
+        while (committing) {
+            committed.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Write the pending buffer to the log, and force the log if
+     * requested, with the lock held and no commit in progress.
+     */
+    private void writePending(boolean force) throws IOException {
+        long target = appended;
+
+        try {
+            if (pending.position() > 0 || durable < target) {
+                long start = System.nanoTime();
+                write(log, pending);
+                pending.clear();
+
+                if (force) {
+                    log.force(false);
+                    commitLatency.record(System.nanoTime() - start);
+                    commitGroupSize.record(target - durable);
+                    durable = target;
+                    committed.signalAll();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            committed.signalAll();
+            throw e;
+        }
+    }
+
+    /**
+     * Take a checkpoint. Must be called with lock held.
+     */
+    private void checkpointLocked() throws IOException {
+        awaitIdle();
+        writePending(true);
+
+        checkpointTimer.start();
+        try {
+            long next = generation + 1;
+
+            // start the new log first: until the checkpoint is in
+            // place, recovery replays it after the old log
+            FileChannel nextLog = openLog(next);
+            syncDirectory();
+
+            Path temp = dir.resolve(CHECKPOINT_PREFIX + next + TEMP_SUFFIX);
+            QueueSnapshot.write(heap, temp, codec);
+            Files.move(temp, dir.resolve(CHECKPOINT_PREFIX + next), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+
+            log.close();
+            log = nextLog;
+            generation = next;
+            sinceCheckpoint = 0;
+            ++checkpoints;
+
+            deleteOlderThan(next);
+        } catch (IOException e) {
+            failure = e;
+            committed.signalAll();
+            throw e;
+        } finally {
+            checkpointTimer.stop();
+        }
+    }
+
+    /**
+     * Restore the queue from the newest checkpoint and the logs after
+     * it, and open the last log for appending.
+     */
+    private void recover() throws IOException {
+        recoveryTimer.start();
+
+        Files.createDirectories(dir);
+
+        List<Long> checkpointGens = new ArrayList<Long>();
+        List<Long> logGens = new ArrayList<Long>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // a checkpoint that was never put in place
+                    Files.delete(p);
+                } else if (name.startsWith(CHECKPOINT_PREFIX)) {
+                    checkpointGens.add(parseGeneration(name, CHECKPOINT_PREFIX));
+                } else if (name.startsWith(LOG_PREFIX)) {
+                    logGens.add(parseGeneration(name, LOG_PREFIX));
+                }
+            }
+        }
+
+        long base = checkpointGens.isEmpty() ? 0 : Collections.max(checkpointGens);
+
+        if (checkpointGens.isEmpty()) {
+            heap = new HeapPriorityQueue<E>();
+        } else {
+            heap = QueueSnapshot.readHeap(dir.resolve(CHECKPOINT_PREFIX + base), codec);
+        }
+        recoveredEntries = heap.size();
+
+        Collections.sort(logGens);
+        long last = base;
+        long validBytes = 0;
+
+        for (long g : logGens) {
+            if (g >= base) {
+                boolean isLast = (g == logGens.get(logGens.size() - 1));
+                validBytes = replay(dir.resolve(LOG_PREFIX + g), isLast);
+                last = g;
+            }
+        }
+
+        // if a crash interrupted a checkpoint, the log continues after
+        // the last one replayed, and recovery will replay it again
+        // from the older checkpoint until the next checkpoint
+        generation = last;
+        sinceCheckpoint = replayedRecords;
+
+        log = openLog(last);
+        if (log.size() > validBytes) {
+            // drop a torn record left by a crash
+            log.truncate(validBytes);
+            log.force(false);
+        }
+        log.position(validBytes);
+
+        deleteOlderThan(base);
+        recoveryTimer.stop();
+    }
+
+    /**
+     * Replay the records of a log into the heap, and return the length
+     * of its valid prefix. A truncated or corrupt record ends the last
+     * log (it was never committed) but is an error in any other.
+     */
+    private long replay(Path file, boolean isLast) throws IOException {
+        long valid = 0;
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = newBuffer(BUFFER_BYTES);
+
+            while (true) {
+                buf.flip();
+
+                // replay every complete record in the buffer
+                while (true) {
+                    if (buf.remaining() < Integer.BYTES) {
+                        break;
+                    }
+
+                    int bodyBytes = buf.getInt(buf.position());
+
+                    if (bodyBytes < FIXED_BODY_BYTES || bodyBytes > MAX_BODY_BYTES) {
+                        return corrupt(file, isLast, valid);
+                    }
+                    if (buf.remaining() < bodyBytes + FRAME_BYTES) {
+                        if (buf.capacity() < bodyBytes + FRAME_BYTES) {
+                            ByteBuffer larger = newBuffer(bodyBytes + FRAME_BYTES);
+                            larger.put(buf);
+                            larger.flip();
+                            buf = larger;
+                        }
+                        break;
+                    }
+
+                    int bodyStart = buf.position() + Integer.BYTES;
+                    ByteBuffer body = buf.duplicate().position(bodyStart).limit(bodyStart + bodyBytes)
+                        .slice().order(ByteOrder.LITTLE_ENDIAN);
+
+                    crc.reset();
+                    crc.update(body.duplicate());
+
+                    if ((int) crc.getValue() != buf.getInt(bodyStart + bodyBytes)) {
+                        return corrupt(file, isLast, valid);
+                    }
+
+                    apply(file, body);
+                    ++replayedRecords;
+
+                    buf.position(bodyStart + bodyBytes + Integer.BYTES);
+                    valid += bodyBytes + FRAME_BYTES;
+                }
+
+                buf.compact();
+                if (ch.read(buf) < 0) {
+                    break;
+                }
+            }
+
+            buf.flip();
+            if (buf.hasRemaining()) {
+                return corrupt(file, isLast, valid);
+            }
+        }
+
+        return valid;
+    }
+
+    private static long corrupt(Path file, boolean isLast, long valid) throws IOException {
+        if (!isLast) {
+            throw new IOException(file + " is corrupt at byte " + valid);
+        }
+
+        return valid;
+    }
+
+    /**
+     * Apply one log record to the heap.
+     */
+    private void apply(Path file, ByteBuffer body) throws IOException {
+        byte type = body.get();
+        long k = body.getLong();
+
+        if (type == INSERT) {
+            heap.insert(k, codec.decode(body));
+        } else if (type == REMOVE_MIN) {
+            if (heap.isEmpty() || heap.minKey() != k) {
+                throw new IOException(file + " does not match its checkpoint: removal of " + k);
+            }
+            heap.removeMin();
+        } else {
+            throw new IOException(file + " has a record of unknown type " + type);
+        }
+    }
+
+    private FileChannel openLog(long g) throws IOException {
+        return FileChannel.open(dir.resolve(LOG_PREFIX + g), StandardOpenOption.CREATE,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Delete the logs and checkpoints of generations before g.
+     */
+    private void deleteOlderThan(long g) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+
+                if ((name.startsWith(CHECKPOINT_PREFIX) && parseGeneration(name, CHECKPOINT_PREFIX) < g)
+                    || (name.startsWith(LOG_PREFIX) && parseGeneration(name, LOG_PREFIX) < g)) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Force the directory entries to disk, so that created and renamed
+     * files survive a crash. Not every platform can open a directory;
+     * there the rename is left to the file system.
+     */
+    private void syncDirectory() {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // not supported on this platform
+        }
+    }
+
+    private static long parseGeneration(String name, String prefix) throws IOException {
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("unexpected file in queue directory: " + name);
+        }
+    }
+
+    private static void write(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
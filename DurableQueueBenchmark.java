@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measure group commit and recovery of
+ * <code>DurablePriorityQueue</code>. For each number of threads, the
+ * threads insert random priorities into a queue that awaits every
+ * commit, and the throughput, the number of records per commit and
+ * the commit latency are reported. The queue is then reopened, and the
+ * time taken to recover it (checkpoint plus log replay) is reported.
+ *
+ * <p>Usage: <code>java DurableQueueBenchmark [dir] [opsPerThread] [maxThreads]</code></p>
+ */
+
+public class DurableQueueBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path dir = (args.length > 0) ? Paths.get(args[0]) : Files.createTempDirectory("durable-queue");
+        int opsPerThread = (args.length > 1) ? Integer.parseInt(args[1]) : 5_000;
+        int maxThreads = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+
+        System.out.println("queue directory: " + dir);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            try (DurablePriorityQueue<Long> q = new DurablePriorityQueue<Long>(dir, PayloadCodec.LONG)) {
+                Thread[] workers = new Thread[threads];
+                long start = System.nanoTime();
+
+                for (int t = 0; t < threads; ++t) {
+                    workers[t] = new Thread(() -> {
+                        ThreadLocalRandom rand = ThreadLocalRandom.current();
+
+                        for (int i = 0; i < opsPerThread; ++i) {
+                            long k = rand.nextLong(1L << 40);
+                            q.insert(k, k);
+                        }
+                    });
+                    workers[t].start();
+                }
+
+                for (Thread t : workers) {
+                    t.join();
+                }
+
+                double secs = (System.nanoTime() - start) / 1e9;
+
+                System.out.printf("%2d threads: %9.0f ops/s, %6d commits, %5.1f records/commit%n",
+                                  threads, threads * opsPerThread / secs, q.getCommits(),
+                                  q.getCommitGroupSize().getMean());
+                q.getCommitLatency().printSummary(System.out, "    commit ns");
+            }
+        }
+
+        try (DurablePriorityQueue<Long> q = new DurablePriorityQueue<Long>(dir, PayloadCodec.LONG)) {
+            System.out.printf("recovered %d entries from checkpoint %d and %d log records in %.1f ms%n",
+                              q.getRecoveredEntries(), q.getGeneration(), q.getReplayedRecords(),
+                              q.getRecoveryNanos() / 1e6);
+
+            long start = System.nanoTime();
+            q.checkpoint();
+            System.out.printf("checkpoint of %d entries took %.1f ms%n",
+                              q.size(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>An immutable <code>SimpleSSet</code> for sets that are built once
+ * and then searched very often, as produced by
+ * <code>AVLTree.freeze()</code>.</p>
+ *
+ * <p>The elements are kept in one array in Eytzinger (breadth-first)
+ * order: the root of a perfectly balanced search tree is at index 1,
+ * and the children of index k are at 2k and 2k + 1. A search makes
+ * no pointer dereferences besides the array accesses. The top levels
+ * of the implicit tree share a few cache lines, and the descendants
+ * of a node a few levels down are contiguous, so the accesses of a
+ * search are cheaper than in a node-based tree.</p>
+ *
+ * <p>A search descends log2(n) levels without exiting early. Each
+ * step turns the comparison into the next index arithmetically (k =
+ * 2k + [a[k] &lt; x]), so the loop has no data-dependent branch to
+ * mispredict. The answer is recovered from the final index, which
+ * encodes the path taken. If every element is a <code>Long</code>,
+ * the values are also copied to a <code>long[]</code>, and searches
+ * for a <code>Long</code> compare primitives instead of calling
+ * <code>compareTo</code>.</p>
+ *
+ * <p><code>add</code> and <code>remove</code> throw
+ * <code>UnsupportedOperationException</code>.</p>
+ *
+ * @see AVLTree#freeze()
+ */
+
+public final class EytzingerSet<E extends Comparable<E>> implements SimpleSSet<E>, Iterable<E> {
+
+    /**
+     * The elements in Eytzinger order, at indices 1 to n (index 0 is
+     * unused).
+     */
+    private final Object[] values;
+
+    /**
+     * The same elements as primitives, if they are all Longs, and
+     * otherwise null.
+     */
+    private final long[] keys;
+
+    private final int n;
+
+    /**
+     * Create a set of the given elements, which must be listed in
+     * strictly increasing order.
+     *
+     * @param sorted the elements, in increasing order
+     * @param n the number of elements
+     * @throws IllegalArgumentException if n is 2^30 - 1 or more, for
+     * which the index arithmetic would overflow (a search could end at
+     * index 2^31 - 1, and find cannot shift out all 32 bits of it)
+     */
+    EytzingerSet(Iterable<E> sorted, int n) {
+        if (n >= (1 << 30) - 1) {
+            throw new IllegalArgumentException("too many elements to freeze: " + n);
+        }
+
+        this.n = n;
+        this.values = new Object[n + 1];
+
+        Iterator<E> it = sorted.iterator();
+        fill(it, 1);
+
+        boolean allLongs = true;
+        for (int k = 1; k <= n && allLongs; ++k) {
+            allLongs = values[k] instanceof Long;
+        }
+
+        if (allLongs) {
+            keys = new long[n + 1];
+            for (int k = 1; k <= n; ++k) {
+                keys[k] = (Long) values[k];
+            }
+        } else {
+            keys = null;
+        }
+    }
+
+    /**
+     * Store the next elements of the in-order sequence in the subtree
+     * rooted at index k, in order.
+     */
+    private void fill(Iterator<E> it, int k) {
+        if (k > n) {
+            return;
+        }
+
+        fill(it, 2 * k);
+        values[k] = it.next();
+        fill(it, 2 * k + 1);
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /**
+     * Return the smallest element that is greater than or equal to x,
+     * or null if there is none.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E find(E x) {
+        int k = 1;
+
+        if (keys != null && x instanceof Long) {
+            long v = (Long) x;
+            while (k <= n) {
+                k = 2 * k + (keys[k] < v ? 1 : 0);
+            }
+        } else {
+            while (k <= n) {
+                k = 2 * k + (((E) values[k]).compareTo(x) >>> 31);
+            }
+        }
+
+        // the path ends with a run of right turns (1 bits) after the
+        // last left turn, which is at the answer; drop them and the
+        // left turn itself
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+
+        return (k == 0) ? null : (E) values[k];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E findMin() {
+        // the leftmost node is the last power of two on the path 1, 2, 4, ...
+        return (n == 0) ? null : (E) values[Integer.highestOneBit(n)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E findMax() {
+        // the rightmost node is the last index of the form 2^j - 1 not above n
+        return (n == 0) ? null : (E) values[Integer.highestOneBit(n + 1) - 1];
+    }
+
+    @Override
+    public boolean add(E x) {
+        throw new UnsupportedOperationException("frozen sets are read-only");
+    }
+
+    @Override
+    public E remove(E x) {
+        throw new UnsupportedOperationException("frozen sets are read-only");
+    }
+
+    /**
+     * Return an iterator over the elements in increasing order.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int k = (n == 0) ? 0 : Integer.highestOneBit(n);
+
+            @Override
+            public boolean hasNext() {
+                return k != 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (k == 0) {
+                    throw new NoSuchElementException();
+                }
+
+                E value = (E) values[k];
+
+                if (2 * k + 1 <= n) {
+                    // the leftmost node of the right subtree
+                    k = 2 * k + 1;
+                    while (2 * k <= n) {
+                        k = 2 * k;
+                    }
+                } else {
+                    // the first ancestor of which this is a left descendant
+                    k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+                }
+
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+
+        for (E x : this) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(x);
+        }
+
+        return sb.append(']').toString();
+    }
+}
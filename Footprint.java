@@ -0,0 +1,68 @@
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Estimates of the memory taken by objects and arrays in the running
+ * JVM, for reporting the footprint of data structures. On HotSpot the
+ * sizes of references and object headers depend on whether compressed
+ * oops and compressed class pointers are in use, which is read from
+ * the JVM's options; elsewhere the uncompressed sizes are assumed.
+ */
+
+final class Footprint {
+
+    /**
+     * The size of a reference, in bytes.
+     */
+    static final int REFERENCE_BYTES;
+
+    /**
+     * The size of an object header, and of an array header (including
+     * the length), in bytes.
+     */
+    static final int OBJECT_HEADER_BYTES;
+    static final int ARRAY_HEADER_BYTES;
+
+    static {
+        boolean oops = option("UseCompressedOops");
+        boolean classPointers = oops && option("UseCompressedClassPointers");
+
+        REFERENCE_BYTES = oops ? 4 : 8;
+        OBJECT_HEADER_BYTES = classPointers ? 12 : 16;
+        ARRAY_HEADER_BYTES = classPointers ? 16 : 24;
+    }
+
+    private Footprint() {
+    }
+
+    private static boolean option(String name) {
+        try {
+            HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return hotspot != null && Boolean.parseBoolean(hotspot.getVMOption(name).getValue());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Round a size up to the 8 byte alignment of objects.
+     */
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Return the size of an array of references of the given length.
+     */
+    static long referenceArray(long length) {
+        return align(ARRAY_HEADER_BYTES + length * REFERENCE_BYTES);
+    }
+
+    /**
+     * Return the size of an object with the given number of reference
+     * fields and of bytes in primitive fields.
+     */
+    static long object(int references, int primitiveBytes) {
+        return align(OBJECT_HEADER_BYTES + (long) references * REFERENCE_BYTES + primitiveBytes);
+    }
+}
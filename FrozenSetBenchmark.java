@@ -0,0 +1,75 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compare successor searches (<code>find</code>) in an
+ * <code>AVLTree</code> with those in the <code>EytzingerSet</code>
+ * produced by <code>AVLTree.freeze()</code>. The set holds (up to)
+ * <code>n</code> random even keys; the queries are random keys from
+ * the same range, so about half of them are absent and are answered
+ * with their successor. Both structures must return the same answers.
+ * The first <code>WARMUP_ROUNDS</code> rounds are not reported.
+ *
+ * <p>Usage: <code>java FrozenSetBenchmark [n] [queries] [rounds]</code></p>
+ */
+
+public class FrozenSetBenchmark {
+    static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000_000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        Random rand = new Random(211);
+        long[] sorted = rand.longs(n, 0, Integer.MAX_VALUE / 2).map(k -> 2 * k).sorted().distinct().toArray();
+        AVLTree<Long> tree = new AVLTree<Long>();
+        tree.loadSorted(Arrays.stream(sorted).boxed().collect(Collectors.toList()));
+        n = sorted.length;
+
+        Long[] keys = new Long[queries];
+        for (int i = 0; i < queries; ++i) {
+            keys[i] = (long) rand.nextInt(Integer.MAX_VALUE);
+        }
+
+        RunTimer timer = new RunTimer();
+        timer.start();
+        EytzingerSet<Long> frozen = tree.freeze();
+        timer.stop();
+
+        System.out.printf("n = %d, froze in %.1f ms%n", n, timer.getElapsedNanos() / 1e6);
+        System.out.println("structure      find (ns/op)");
+
+        for (int r = 0; r < WARMUP_ROUNDS + rounds; ++r) {
+            boolean report = r >= WARMUP_ROUNDS;
+            long[] treeResult = run(tree, keys);
+            long[] frozenResult = run(frozen, keys);
+
+            if (treeResult[1] != frozenResult[1]) {
+                throw new IllegalStateException("AVLTree and EytzingerSet disagree");
+            }
+
+            if (report) {
+                System.out.printf("%-12s %14.1f%n", "AVLTree", (double) treeResult[0] / queries);
+                System.out.printf("%-12s %14.1f%n", "EytzingerSet", (double) frozenResult[0] / queries);
+            }
+        }
+    }
+
+    /**
+     * Search for every key, returning the elapsed time and a checksum
+     * of the results.
+     */
+    static long[] run(SimpleSSet<Long> set, Long[] keys) {
+        long sum = 0;
+        long start = System.nanoTime();
+
+        for (Long k : keys) {
+            Long y = set.find(k);
+            sum = 31 * sum + ((y == null) ? -1 : y);
+        }
+
+        return new long[] { System.nanoTime() - start, sum };
+    }
+}
@@ -0,0 +1,351 @@
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
+/**
+ * <p>Shortest path and minimum spanning tree algorithms on a
+ * <code>CsrGraph</code>, each in two variants:</p>
+ * <ul>
+ * <li><em>lazy deletion</em>, which works with any
+ * <code>SimplePriorityQueue</code> (supplied by the caller): when a
+ * vertex's tentative distance improves it is inserted again, and
+ * stale entries are skipped when they are removed;</li>
+ * <li><em>decrease-key</em>, which uses an
+ * <code>IndexedMinHeap</code> holding each vertex at most once.</li>
+ * </ul>
+ *
+ * <p>Priority queues in this repository assume distinct priorities
+ * (an <code>AVLPriorityQueue</code> keeps only one element per
+ * priority), so the lazy variants pack the vertex id into the low
+ * bits of each priority: a vertex <code>v</code> with tentative
+ * distance <code>d</code> is inserted with priority <code>(d &lt;&lt;
+ * b) | v</code>, where <code>b</code> is the number of bits needed
+ * for a vertex id. This requires distances to be less than
+ * <code>2^(63-b)</code>; an <code>ArithmeticException</code> is
+ * thrown otherwise.</p>
+ *
+ * <p>Unreachable vertices have distance <code>INFINITY</code>.</p>
+ *
+ * @see CsrGraph
+ * @see IndexedMinHeap
+ */
+
+public final class GraphAlgorithms {
+
+    /**
+     * The distance of a vertex that cannot be reached.
+     */
+    public static final long INFINITY = Long.MAX_VALUE;
+
+    private GraphAlgorithms() {
+    }
+
+    /**
+     * <p>Compute the distance from source to every vertex with
+     * Dijkstra's algorithm, using lazy deletion on a queue obtained
+     * from <code>queues</code>.</p>
+     *
+     * @param g the graph
+     * @param source the source vertex
+     * @param queues supplies an empty priority queue
+     * @return the array of distances from source
+     */
+    public static long[] dijkstra(CsrGraph g, int source, Supplier<? extends SimplePriorityQueue<Integer>> queues) {
+        int n = g.vertexCount();
+        int bits = idBits(n);
+        Integer[] ids = new Integer[n];
+        long[] dist = new long[n];
+        boolean[] settled = new boolean[n];
+        SimplePriorityQueue<Integer> q = queues.get();
+
+        Arrays.fill(dist, INFINITY);
+        dist[source] = 0;
+        q.insert(pack(0, source, bits), id(ids, source));
+
+        while (!q.isEmpty()) {
+            int v = q.removeMin();
+
+            // skip entries superseded by a later, shorter distance
+            if (settled[v]) {
+                continue;
+            }
+            settled[v] = true;
+
+            for (int e = g.offset(v), end = g.offset(v + 1); e < end; ++e) {
+                int u = g.target(e);
+                long du = dist[v] + g.weight(e);
+
+                if (du < dist[u]) {
+                    dist[u] = du;
+                    q.insert(pack(du, u, bits), id(ids, u));
+                }
+            }
+        }
+
+        return dist;
+    }
+
+    /**
+     * <p>Compute the distance from source to every vertex with
+     * Dijkstra's algorithm, using an <code>IndexedMinHeap</code> with
+     * decrease-key.</p>
+     *
+     * @param g the graph
+     * @param source the source vertex
+     * @return the array of distances from source
+     */
+    public static long[] dijkstra(CsrGraph g, int source) {
+        int n = g.vertexCount();
+        long[] dist = new long[n];
+        IndexedMinHeap q = new IndexedMinHeap(n);
+
+        Arrays.fill(dist, INFINITY);
+        dist[source] = 0;
+        q.insert(source, 0);
+
+        while (!q.isEmpty()) {
+            int v = q.removeMin();
+
+            for (int e = g.offset(v), end = g.offset(v + 1); e < end; ++e) {
+                int u = g.target(e);
+                long du = dist[v] + g.weight(e);
+
+                if (du < dist[u]) {
+                    dist[u] = du;
+                    q.insertOrDecrease(u, du);
+                }
+            }
+        }
+
+        return dist;
+    }
+
+    /**
+     * <p>Compute a minimum spanning tree of the component of an
+     * undirected graph containing root with Prim's algorithm, using
+     * lazy deletion on a queue obtained from <code>queues</code>. On
+     * return, <code>parent[v]</code> is the parent of v in the tree,
+     * or -1 if v is root or not in root's component.</p>
+     *
+     * @param g the graph, which should contain the reverse of every
+     * edge
+     * @param root the root of the tree
+     * @param parent array of length <code>g.vertexCount()</code> to
+     * receive the parent of each vertex
+     * @param queues supplies an empty priority queue
+     * @return the total weight of the tree
+     */
+    public static long prim(CsrGraph g, int root, int[] parent,
+                            Supplier<? extends SimplePriorityQueue<Integer>> queues) {
+        int n = g.vertexCount();
+        int bits = idBits(n);
+        Integer[] ids = new Integer[n];
+        long[] best = new long[n];
+        boolean[] inTree = new boolean[n];
+        SimplePriorityQueue<Integer> q = queues.get();
+        long total = 0;
+
+        Arrays.fill(best, INFINITY);
+        Arrays.fill(parent, -1);
+        best[root] = 0;
+        q.insert(pack(0, root, bits), id(ids, root));
+
+        while (!q.isEmpty()) {
+            int v = q.removeMin();
+
+            if (inTree[v]) {
+                continue;
+            }
+            inTree[v] = true;
+            total += best[v];
+
+            for (int e = g.offset(v), end = g.offset(v + 1); e < end; ++e) {
+                int u = g.target(e);
+                long w = g.weight(e);
+
+                if (!inTree[u] && w < best[u]) {
+                    best[u] = w;
+                    parent[u] = v;
+                    q.insert(pack(w, u, bits), id(ids, u));
+                }
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * <p>Compute a minimum spanning tree as in
+     * <code>prim(g, root, parent, queues)</code>, using an
+     * <code>IndexedMinHeap</code> with decrease-key.</p>
+     *
+     * @param g the graph, which should contain the reverse of every
+     * edge
+     * @param root the root of the tree
+     * @param parent array of length <code>g.vertexCount()</code> to
+     * receive the parent of each vertex
+     * @return the total weight of the tree
+     */
+    public static long prim(CsrGraph g, int root, int[] parent) {
+        int n = g.vertexCount();
+        long[] best = new long[n];
+        boolean[] inTree = new boolean[n];
+        IndexedMinHeap q = new IndexedMinHeap(n);
+        long total = 0;
+
+        Arrays.fill(best, INFINITY);
+        Arrays.fill(parent, -1);
+        best[root] = 0;
+        q.insert(root, 0);
+
+        while (!q.isEmpty()) {
+            int v = q.removeMin();
+            inTree[v] = true;
+            total += best[v];
+
+            for (int e = g.offset(v), end = g.offset(v + 1); e < end; ++e) {
+                int u = g.target(e);
+                long w = g.weight(e);
+
+                if (!inTree[u] && w < best[u]) {
+                    best[u] = w;
+                    parent[u] = v;
+                    q.insertOrDecrease(u, w);
+                }
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * <p>Compute the distance from source to target with A* search,
+     * using lazy deletion on a queue obtained from
+     * <code>queues</code>. The heuristic must be consistent (i.e.,
+     * <code>h(v) &lt;= w(v, u) + h(u)</code> for every edge, and
+     * <code>h(target) == 0</code>), in which case each vertex is
+     * expanded at most once.</p>
+     *
+     * @param g the graph
+     * @param source the source vertex
+     * @param target the target vertex
+     * @param h the heuristic, a lower bound on the distance from a
+     * vertex to target
+     * @param queues supplies an empty priority queue
+     * @return the distance from source to target
+     */
+    public static long aStar(CsrGraph g, int source, int target, IntToLongFunction h,
+                             Supplier<? extends SimplePriorityQueue<Integer>> queues) {
+        int n = g.vertexCount();
+        int bits = idBits(n);
+        Integer[] ids = new Integer[n];
+        long[] dist = new long[n];
+        boolean[] closed = new boolean[n];
+        SimplePriorityQueue<Integer> q = queues.get();
+
+        Arrays.fill(dist, INFINITY);
+        dist[source] = 0;
+        q.insert(pack(h.applyAsLong(source), source, bits), id(ids, source));
+
+        while (!q.isEmpty()) {
+            int v = q.removeMin();
+
+            if (v == target) {
+                return dist[v];
+            }
+            if (closed[v]) {
+                continue;
+            }
+            closed[v] = true;
+
+            for (int e = g.offset(v), end = g.offset(v + 1); e < end; ++e) {
+                int u = g.target(e);
+                long du = dist[v] + g.weight(e);
+
+                if (du < dist[u]) {
+                    dist[u] = du;
+                    q.insert(pack(du + h.applyAsLong(u), u, bits), id(ids, u));
+                }
+            }
+        }
+
+        return INFINITY;
+    }
+
+    /**
+     * <p>Compute the distance from source to target with A* search as
+     * in <code>aStar(g, source, target, h, queues)</code>, using an
+     * <code>IndexedMinHeap</code> with decrease-key.</p>
+     *
+     * @param g the graph
+     * @param source the source vertex
+     * @param target the target vertex
+     * @param h a consistent heuristic
+     * @return the distance from source to target
+     */
+    public static long aStar(CsrGraph g, int source, int target, IntToLongFunction h) {
+        int n = g.vertexCount();
+        long[] dist = new long[n];
+        boolean[] closed = new boolean[n];
+        IndexedMinHeap q = new IndexedMinHeap(n);
+
+        Arrays.fill(dist, INFINITY);
+        dist[source] = 0;
+        q.insert(source, h.applyAsLong(source));
+
+        while (!q.isEmpty()) {
+            int v = q.removeMin();
+
+            if (v == target) {
+                return dist[v];
+            }
+            closed[v] = true;
+
+            for (int e = g.offset(v), end = g.offset(v + 1); e < end; ++e) {
+                int u = g.target(e);
+                long du = dist[v] + g.weight(e);
+
+                if (!closed[u] && du < dist[u]) {
+                    dist[u] = du;
+                    q.insertOrDecrease(u, du + h.applyAsLong(u));
+                }
+            }
+        }
+
+        return INFINITY;
+    }
+
+    /**
+     * Return the number of bits needed to store a vertex id of a
+     * graph with n vertices.
+     */
+    static int idBits(int n) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    /**
+     * Pack a non-negative distance and a vertex id into a single
+     * priority, ordered by distance and then by id.
+     */
+    static long pack(long dist, int v, int bits) {
+        if (dist > (Long.MAX_VALUE >>> bits)) {
+            throw new ArithmeticException("distance " + dist + " is too large to pack with a " + bits + " bit vertex id");
+        }
+
+        return (dist << bits) | v;
+    }
+
+    /**
+     * Return the boxed id of v, boxing each id at most once per run.
+     */
+    private static Integer id(Integer[] ids, int v) {
+        Integer id = ids[v];
+
+        if (id == null) {
+            id = v;
+            ids[v] = id;
+        }
+
+        return id;
+    }
+}
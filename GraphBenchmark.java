@@ -0,0 +1,184 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Compare the priority queue implementations on graph algorithms over
+ * large generated graphs: Dijkstra's algorithm and Prim's algorithm on
+ * a random graph, and A* search on a grid. Each algorithm is run with
+ * lazy deletion on a <code>HeapPriorityQueue</code> and on an
+ * <code>AVLPriorityQueue</code>, and with decrease-key on an
+ * <code>IndexedMinHeap</code>; the results of the three runs are
+ * checked to agree. The first <code>WARMUP_ROUNDS</code> rounds are
+ * not reported.
+ *
+ * <p>Usage: <code>java GraphBenchmark [vertices] [degree] [gridSide] [rounds]</code></p>
+ */
+
+public class GraphBenchmark {
+    static final int WARMUP_ROUNDS = 2;
+    static final long MAX_WEIGHT = 1000;
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 500_000;
+        int degree = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+        int side = (args.length > 2) ? Integer.parseInt(args[2]) : 700;
+        int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 3;
+
+        Random rand = new Random(211);
+        CsrGraph directed = randomGraph(n, degree, false, rand);
+        CsrGraph undirected = randomGraph(n, degree / 2, true, rand);
+        CsrGraph grid = grid(side, rand);
+        int corner = side * side - 1;
+        IntToLongFunction manhattan = v -> (side - 1 - v / side) + (side - 1 - v % side);
+        int[] parent = new int[n];
+
+        System.out.printf("random graph: %d vertices, %d edges; grid: %d x %d%n",
+                          n, directed.edgeCount(), side, side);
+        System.out.println("algorithm   HeapPriorityQueue (ms)  AVLPriorityQueue (ms)  IndexedMinHeap (ms)");
+
+        for (int r = 0; r < WARMUP_ROUNDS + rounds; ++r) {
+            boolean report = r >= WARMUP_ROUNDS;
+            RunTimer timer = new RunTimer();
+            long[] ms = new long[3];
+
+            // Dijkstra
+            timer.start();
+            long[] d1 = GraphAlgorithms.dijkstra(directed, 0, HeapPriorityQueue::new);
+            timer.stop();
+            ms[0] = timer.getElapsedMillis();
+
+            timer.reset();
+            timer.start();
+            long[] d2 = GraphAlgorithms.dijkstra(directed, 0, AVLPriorityQueue::new);
+            timer.stop();
+            ms[1] = timer.getElapsedMillis();
+
+            timer.reset();
+            timer.start();
+            long[] d3 = GraphAlgorithms.dijkstra(directed, 0);
+            timer.stop();
+            ms[2] = timer.getElapsedMillis();
+
+            check(Arrays.equals(d1, d2) && Arrays.equals(d1, d3), "Dijkstra");
+            print(report, "Dijkstra", ms);
+
+            // Prim
+            timer.reset();
+            timer.start();
+            long w1 = GraphAlgorithms.prim(undirected, 0, parent, HeapPriorityQueue::new);
+            timer.stop();
+            ms[0] = timer.getElapsedMillis();
+
+            timer.reset();
+            timer.start();
+            long w2 = GraphAlgorithms.prim(undirected, 0, parent, AVLPriorityQueue::new);
+            timer.stop();
+            ms[1] = timer.getElapsedMillis();
+
+            timer.reset();
+            timer.start();
+            long w3 = GraphAlgorithms.prim(undirected, 0, parent);
+            timer.stop();
+            ms[2] = timer.getElapsedMillis();
+
+            check(w1 == w2 && w1 == w3, "Prim");
+            print(report, "Prim", ms);
+
+            // A*
+            timer.reset();
+            timer.start();
+            long a1 = GraphAlgorithms.aStar(grid, 0, corner, manhattan, HeapPriorityQueue::new);
+            timer.stop();
+            ms[0] = timer.getElapsedMillis();
+
+            timer.reset();
+            timer.start();
+            long a2 = GraphAlgorithms.aStar(grid, 0, corner, manhattan, AVLPriorityQueue::new);
+            timer.stop();
+            ms[1] = timer.getElapsedMillis();
+
+            timer.reset();
+            timer.start();
+            long a3 = GraphAlgorithms.aStar(grid, 0, corner, manhattan);
+            timer.stop();
+            ms[2] = timer.getElapsedMillis();
+
+            check(a1 == a2 && a1 == a3 && a1 == GraphAlgorithms.dijkstra(grid, 0)[corner], "A*");
+            print(report, "A*", ms);
+        }
+    }
+
+    static void print(boolean report, String name, long[] ms) {
+        if (report) {
+            System.out.printf("%-9s %24d %22d %20d%n", name, ms[0], ms[1], ms[2]);
+        }
+    }
+
+    static void check(boolean agree, String name) {
+        if (!agree) {
+            throw new IllegalStateException(name + " results differ between implementations");
+        }
+    }
+
+    /**
+     * Generate a graph with n vertices and n * degree random edges
+     * with weights in [1, MAX_WEIGHT], plus a path through all
+     * vertices so that every vertex is reachable from vertex 0.
+     */
+    static CsrGraph randomGraph(int n, int degree, boolean undirected, Random rand) {
+        int m = n * degree + (n - 1);
+        int[] src = new int[m];
+        int[] dst = new int[m];
+        long[] w = new long[m];
+        int i = 0;
+
+        for (int v = 0; v + 1 < n; ++v, ++i) {
+            src[i] = v;
+            dst[i] = v + 1;
+            w[i] = 1 + rand.nextInt((int) MAX_WEIGHT);
+        }
+
+        for (; i < m; ++i) {
+            src[i] = rand.nextInt(n);
+            dst[i] = rand.nextInt(n);
+            w[i] = 1 + rand.nextInt((int) MAX_WEIGHT);
+        }
+
+        return CsrGraph.fromEdges(n, src, dst, w, undirected);
+    }
+
+    /**
+     * Generate a side x side grid in which vertex v is at row v /
+     * side and column v % side, with edges between horizontally and
+     * vertically adjacent vertices of random weight in [1, 10]. Since
+     * every weight is at least 1, the Manhattan distance to a vertex
+     * is a consistent heuristic.
+     */
+    static CsrGraph grid(int side, Random rand) {
+        int m = 2 * side * (side - 1);
+        int[] src = new int[m];
+        int[] dst = new int[m];
+        long[] w = new long[m];
+        int i = 0;
+
+        for (int r = 0; r < side; ++r) {
+            for (int c = 0; c < side; ++c) {
+                int v = r * side + c;
+
+                if (c + 1 < side) {
+                    src[i] = v;
+                    dst[i] = v + 1;
+                    w[i++] = 1 + rand.nextInt(10);
+                }
+                if (r + 1 < side) {
+                    src[i] = v;
+                    dst[i] = v + side;
+                    w[i++] = 1 + rand.nextInt(10);
+                }
+            }
+        }
+
+        return CsrGraph.fromEdges(side * side, src, dst, w, true);
+    }
+}
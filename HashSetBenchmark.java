@@ -0,0 +1,130 @@
+import java.util.Random;
+
+/**
+ * Compare the running times of <code>add</code>, <code>find</code>
+ * and <code>remove</code> for <code>AVLTree</code>,
+ * <code>OpenHashSet</code> and the unboxed <code>LongHashSet</code>.
+ * Each round adds <code>n</code> random keys, looks each of them up
+ * together with <code>n</code> keys that are absent, and then removes
+ * them all. The first <code>WARMUP_ROUNDS</code> rounds are not
+ * reported.
+ *
+ * <p>Usage: <code>java HashSetBenchmark [n] [rounds]</code></p>
+ */
+
+public class HashSetBenchmark {
+    static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        // even keys are added, odd keys are only searched for
+        Random rand = new Random(211);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; ++i) {
+            keys[i] = 2L * rand.nextInt(Integer.MAX_VALUE / 2);
+        }
+
+        System.out.println("structure      add (ns/op)  find (ns/op)  remove (ns/op)");
+
+        for (int r = 0; r < WARMUP_ROUNDS + rounds; ++r) {
+            boolean report = r >= WARMUP_ROUNDS;
+
+            print(report, "AVLTree", runSet(new AVLTree<Long>(), keys));
+            print(report, "OpenHashSet", runSet(new OpenHashSet<Long>(), keys));
+            print(report, "LongHashSet", runLongSet(new LongHashSet(), keys));
+        }
+    }
+
+    static void print(boolean report, String name, double[] nanosPerOp) {
+        if (report) {
+            System.out.printf("%-12s %12.1f  %12.1f  %14.1f%n",
+                              name, nanosPerOp[0], nanosPerOp[1], nanosPerOp[2]);
+        }
+    }
+
+    static double[] runSet(SimpleUSet<Long> set, long[] keys) {
+        RunTimer timer = new RunTimer();
+        double[] result = new double[3];
+        long found = 0;
+
+        timer.start();
+        for (long k : keys) {
+            set.add(k);
+        }
+        timer.stop();
+        result[0] = (double) timer.getElapsedNanos() / keys.length;
+
+        timer.reset();
+        timer.start();
+        for (long k : keys) {
+            if (set.find(k) != null) {
+                ++found;
+            }
+            if (set.find(k + 1) != null) {
+                ++found;
+            }
+        }
+        timer.stop();
+        result[1] = (double) timer.getElapsedNanos() / (2 * keys.length);
+
+        timer.reset();
+        timer.start();
+        for (long k : keys) {
+            set.remove(k);
+        }
+        timer.stop();
+        result[2] = (double) timer.getElapsedNanos() / keys.length;
+
+        check(found, set.size());
+
+        return result;
+    }
+
+    static double[] runLongSet(LongHashSet set, long[] keys) {
+        RunTimer timer = new RunTimer();
+        double[] result = new double[3];
+        long found = 0;
+
+        timer.start();
+        for (long k : keys) {
+            set.add(k);
+        }
+        timer.stop();
+        result[0] = (double) timer.getElapsedNanos() / keys.length;
+
+        timer.reset();
+        timer.start();
+        for (long k : keys) {
+            if (set.contains(k)) {
+                ++found;
+            }
+            if (set.contains(k + 1)) {
+                ++found;
+            }
+        }
+        timer.stop();
+        result[1] = (double) timer.getElapsedNanos() / (2 * keys.length);
+
+        timer.reset();
+        timer.start();
+        for (long k : keys) {
+            set.remove(k);
+        }
+        timer.stop();
+        result[2] = (double) timer.getElapsedNanos() / keys.length;
+
+        check(found, set.size());
+
+        return result;
+    }
+
+    // consume the results so that the lookups cannot be optimized
+    // away, and sanity check that the set was emptied
+    static void check(long found, int size) {
+        if (found == 0 || size != 0) {
+            throw new IllegalStateException("benchmark produced inconsistent results");
+        }
+    }
+}
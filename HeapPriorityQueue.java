@@ -1,6 +1,55 @@
-public class HeapPriorityQueue<E> implements SimplePriorityQueue<E> {
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
 
-    private ArrayBinaryHeap<Pair<E>> heap = new ArrayBinaryHeap<Pair<E>>();
+public class HeapPriorityQueue<E> implements SimplePriorityQueue<E>, QueueCounters {
+
+    private final ArrayBinaryHeap<Pair<E>> heap;
+
+    /**
+     * The number of priority comparisons (only counted if
+     * <code>QueueCounters.ENABLED</code>).
+     */
+    private long comparisons = 0;
+
+    public HeapPriorityQueue() {
+	heap = new ArrayBinaryHeap<Pair<E>>();
+    }
+
+    /**
+     * Create a queue whose heap array starts with the given capacity
+     * and is multiplied in size by growthFactor when it is full. The
+     * array shrinks when the queue becomes sparse, but never below
+     * initialCapacity.
+     *
+     * @param initialCapacity the initial number of slots
+     * @param growthFactor the factor by which a full array grows,
+     * greater than 1
+     * @throws IllegalArgumentException if either argument is out of
+     * range
+     */
+    public HeapPriorityQueue(int initialCapacity, double growthFactor) {
+	this(initialCapacity, growthFactor, false);
+    }
+
+    /**
+     * Create a queue as above which, if buffered is true, appends
+     * inserted entries to an unsorted buffer in O(1) time and merges
+     * the buffer into the heap only on the next
+     * <code>removeMin()</code>. <code>min()</code> stays O(1), since
+     * the smallest entry of the buffer is cached. This suits producers
+     * that insert in bursts and remove only now and then.
+     *
+     * @param initialCapacity the initial number of slots
+     * @param growthFactor the factor by which a full array grows,
+     * greater than 1
+     * @param buffered whether to buffer insertions
+     * @throws IllegalArgumentException if either number is out of
+     * range
+     */
+    public HeapPriorityQueue(int initialCapacity, double growthFactor, boolean buffered) {
+	heap = new ArrayBinaryHeap<Pair<E>>(initialCapacity, growthFactor, buffered);
+    }
 
     public int size() {
 	return heap.size();
@@ -33,6 +82,123 @@ public class HeapPriorityQueue<E> implements SimplePriorityQueue<E> {
 	return p.val;
     }
 
+    /**
+     * Return an iterator over the elements of the queue in increasing
+     * order of priority, without removing them or copying the heap.
+     * Reaching the first k elements takes O(k log k) time. The
+     * iterator throws a <code>ConcurrentModificationException</code>
+     * if the queue is modified while it is in use.
+     */
+    public Iterator<E> sortedIterator() {
+	Iterator<Pair<E>> it = heap.sortedIterator();
+
+	return new Iterator<E>() {
+	    public boolean hasNext() {
+		return it.hasNext();
+	    }
+
+	    public E next() {
+		return it.next().val;
+	    }
+	};
+    }
+
+    /**
+     * Pass the (at most) k entries of smallest priority, in increasing
+     * order of priority, to the given action, without removing them.
+     * This takes O(k log k) time.
+     *
+     * @param k the number of entries
+     * @param action the action to be performed on each element and
+     * priority
+     */
+    public void forFirst(int k, ObjLongConsumer<E> action) {
+	Iterator<Pair<E>> it = heap.sortedIterator();
+
+	for (int i = 0; i < k && it.hasNext(); ++i) {
+	    Pair<E> p = it.next();
+	    action.accept(p.val, p.key);
+	}
+    }
+
+    /**
+     * Return the number of slots in the heap's array.
+     */
+    public int capacity() {
+	return heap.capacity();
+    }
+
+    /**
+     * Shrink the heap's array to the size of the queue.
+     */
+    public void trimToSize() {
+	heap.trimToSize();
+    }
+
+    /**
+     * Return an estimate of the number of bytes retained by the
+     * queue: its heap array and one entry object per element, but not
+     * the elements themselves.
+     */
+    public long retainedBytes() {
+	return heap.retainedBytes() + (long) heap.size() * Footprint.object(2, Long.BYTES);
+    }
+
+    @Override
+    public long getComparisons() {
+	return comparisons;
+    }
+
+    @Override
+    public long getRotations() {
+	return 0;
+    }
+
+    @Override
+    public long getGrowths() {
+	return heap.growths();
+    }
+
+    /**
+     * Return the smallest priority in the queue, which must not be
+     * empty.
+     */
+    long minKey() {
+	return heap.min().key;
+    }
+
+    /**
+     * Return the priority of the entry at the given position of the
+     * heap's array (not in priority order).
+     */
+    long keyAt(int position) {
+	return heap.get(position).key;
+    }
+
+    /**
+     * Return the element of the entry at the given position of the
+     * heap's array (not in priority order).
+     */
+    E valueAt(int position) {
+	return heap.get(position).val;
+    }
+
+    /**
+     * Replace the contents of the queue with the given entries, which
+     * must be listed in the array order of a valid heap (e.g., as
+     * produced by <code>keyAt</code> and <code>valueAt</code>), so
+     * that the heap need not be rebuilt.
+     */
+    void loadHeapOrder(long[] keys, List<E> vals) {
+	Object[] pairs = new Object[keys.length];
+
+	for (int i = 0; i < keys.length; ++i) {
+	    pairs[i] = new Pair<E>(keys[i], vals.get(i));
+	}
+
+	heap.load(pairs, keys.length);
+    }
+
     private class Pair<E> implements Comparable<Pair<E> > {
 	E val;
 	long key;
@@ -43,11 +209,15 @@ public class HeapPriorityQueue<E> implements SimplePriorityQueue<E> {
 	}
 	
 	public int compareTo(Pair<E> p) {
-	    long diff = key - p.key;
+	    if (QueueCounters.ENABLED) {
+		++comparisons;
+	    }
 
-	    if (diff > 0) {
+	    // compare directly: key - p.key overflows for priorities
+	    // more than 2^63 apart
+	    if (key > p.key) {
 		return 1;
-	    } else if (diff < 0) {
+	    } else if (key < p.key) {
 		return -1;
 	    } else {
 		return 0;
@@ -0,0 +1,286 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A binary min-heap of the integers <code>0, 1, ..., n-1</code>,
+ * each with a <code>long</code> key, supporting
+ * <code>decreaseKey</code>. Alongside the heap array, the heap keeps
+ * the position of every id in that array, so that an id's entry can
+ * be found and sifted up in O(log n) time. Everything is stored in
+ * primitive arrays, and no operation allocates.</p>
+ *
+ * <p>This is the addressable priority queue used by the decrease-key
+ * variants in <code>GraphAlgorithms</code>, and (with
+ * <code>changeKey</code>, <code>remove</code> and <code>grow</code>)
+ * the eviction order of <code>PriorityCache</code>.</p>
+ *
+ * @see ArrayBinaryHeap
+ */
+
+public class IndexedMinHeap {
+    private int[] heap;
+    private int[] pos;
+    private long[] keys;
+    private int size = 0;
+
+    /**
+     * Create an empty heap for the ids <code>0, 1, ..., n-1</code>.
+     *
+     * @param n the number of ids
+     */
+    public IndexedMinHeap(int n) {
+        heap = new int[n];
+        pos = new int[n];
+        keys = new long[n];
+        Arrays.fill(pos, -1);
+    }
+
+    /**
+     * @return the number of ids the heap can hold
+     */
+    public int capacity() {
+        return pos.length;
+    }
+
+    /**
+     * Allow the ids <code>0, 1, ..., n-1</code>, if n is larger than
+     * the current capacity.
+     *
+     * @param n the new number of ids
+     */
+    public void grow(int n) {
+        int old = pos.length;
+
+        if (n > old) {
+            heap = Arrays.copyOf(heap, n);
+            pos = Arrays.copyOf(pos, n);
+            keys = Arrays.copyOf(keys, n);
+            Arrays.fill(pos, old, n, -1);
+        }
+    }
+
+    /**
+     * @return the number of ids in the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if and only if the heap is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param id an id
+     * @return <code>true</code> if and only if id is in the heap
+     */
+    public boolean contains(int id) {
+        return pos[id] >= 0;
+    }
+
+    /**
+     * @param id an id in the heap
+     * @return the key of id
+     */
+    public long key(int id) {
+        return keys[id];
+    }
+
+    /**
+     * Insert id with the given key.
+     *
+     * @param id an id not in the heap
+     * @param key the key of id
+     * @throws IllegalArgumentException if id is already in the heap
+     */
+    public void insert(int id, long key) {
+        if (pos[id] >= 0) {
+            throw new IllegalArgumentException("id " + id + " is already in the heap");
+        }
+
+        keys[id] = key;
+        heap[size] = id;
+        pos[id] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Lower the key of id.
+     *
+     * @param id an id in the heap
+     * @param key the new key, which must not exceed the current key
+     * @throws IllegalArgumentException if key is larger than id's
+     * current key
+     */
+    public void decreaseKey(int id, long key) {
+        if (key > keys[id]) {
+            throw new IllegalArgumentException("new key " + key + " exceeds current key " + keys[id]);
+        }
+
+        keys[id] = key;
+        siftUp(pos[id]);
+    }
+
+    /**
+     * Insert id with the given key if it is not in the heap, or lower
+     * its key to the given key if that is smaller than its current
+     * key.
+     *
+     * @param id an id
+     * @param key the (new) key of id
+     * @return <code>true</code> if and only if the heap changed
+     */
+    public boolean insertOrDecrease(int id, long key) {
+        if (pos[id] < 0) {
+            insert(id, key);
+            return true;
+        }
+
+        if (key < keys[id]) {
+            keys[id] = key;
+            siftUp(pos[id]);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Change the key of id to any value, moving it up or down the
+     * heap as needed.
+     *
+     * @param id an id in the heap
+     * @param key the new key of id
+     * @throws IllegalArgumentException if id is not in the heap
+     */
+    public void changeKey(int id, long key) {
+        if (pos[id] < 0) {
+            throw new IllegalArgumentException("id " + id + " is not in the heap");
+        }
+
+        long old = keys[id];
+        keys[id] = key;
+
+        if (key < old) {
+            siftUp(pos[id]);
+        } else if (key > old) {
+            siftDown(pos[id]);
+        }
+    }
+
+    /**
+     * Remove id from the heap, if it is in the heap.
+     *
+     * @param id an id
+     * @return <code>true</code> if and only if id was in the heap
+     */
+    public boolean remove(int id) {
+        int i = pos[id];
+
+        if (i < 0) {
+            return false;
+        }
+
+        pos[id] = -1;
+
+        // move the last entry into the hole, and restore the heap
+        // order in whichever direction it is violated
+        if (i != --size) {
+            int moved = heap[size];
+            heap[i] = moved;
+            pos[moved] = i;
+            siftUp(i);
+            siftDown(pos[moved]);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the id with the smallest key
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int min() {
+        if (size == 0) {
+            throw new NoSuchElementException("heap is empty");
+        }
+
+        return heap[0];
+    }
+
+    /**
+     * Remove and return the id with the smallest key.
+     *
+     * @return the id with the smallest key
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int removeMin() {
+        if (size == 0) {
+            throw new NoSuchElementException("heap is empty");
+        }
+
+        int id = heap[0];
+        pos[id] = -1;
+
+        if (--size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+
+        return id;
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        long key = keys[id];
+
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int pid = heap[parent];
+
+            if (keys[pid] <= key) {
+                break;
+            }
+
+            heap[i] = pid;
+            pos[pid] = i;
+            i = parent;
+        }
+
+        heap[i] = id;
+        pos[id] = i;
+    }
+
+    private void siftDown(int i) {
+        int id = heap[i];
+        long key = keys[id];
+
+        while (true) {
+            int child = 2 * i + 1;
+
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                ++child;
+            }
+
+            int cid = heap[child];
+            if (keys[cid] >= key) {
+                break;
+            }
+
+            heap[i] = cid;
+            pos[cid] = i;
+            i = child;
+        }
+
+        heap[i] = id;
+        pos[id] = i;
+    }
+}
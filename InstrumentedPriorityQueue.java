@@ -0,0 +1,355 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>A <code>SimplePriorityQueue</code> decorator that counts the
+ * operations on the queue it wraps and makes the counts visible
+ * through JMX and Java Flight Recorder.</p>
+ *
+ * <ul>
+ * <li>The operation counts, rates, current and maximum size, and (if
+ * the wrapped queue is a <code>HeapPriorityQueue</code> or an
+ * <code>AVLPriorityQueue</code> and <code>-Dpq.counters=true</code> is
+ * set) the comparisons, rotations and array growths of the wrapped
+ * queue are attributes of an <code>InstrumentedPriorityQueueMBean</code>,
+ * registered with <code>register()</code>.</li>
+ * <li>Every operation is wrapped in a
+ * <code>SlowQueueOperationEvent</code>, which a flight recording
+ * records if the operation exceeds the event's threshold.</li>
+ * <li>If a slow threshold is set (with the constructor or through
+ * JMX), every operation is also timed with
+ * <code>System.nanoTime()</code> and operations above the threshold
+ * are counted.</li>
+ * </ul>
+ *
+ * <p>With JFR disabled and no slow threshold, the overhead of the
+ * decorator is a few counter updates per operation. Like the queues
+ * it wraps, an InstrumentedPriorityQueue must be used by one thread
+ * at a time. Since only that thread updates the statistics, they are
+ * written with opaque stores through <code>VarHandle</code>s rather
+ * than as volatile fields, which would cost a full fence per store,
+ * and read opaquely by the JMX getters, so a monitoring thread still
+ * sees recent values.</p>
+ */
+
+public class InstrumentedPriorityQueue<E> implements SimplePriorityQueue<E>, InstrumentedPriorityQueueMBean {
+    private final SimplePriorityQueue<E> queue;
+    private final String name;
+
+    // written only by the thread using the queue (or by
+    // resetStatistics), through the VarHandles below
+    private long inserts = 0;
+    private long removes = 0;
+    private long mins = 0;
+    private int maxSize = 0;
+    private long slowOperations = 0;
+    private long maxOperationNanos = 0;
+
+    private volatile long slowThresholdNanos;
+    private volatile long resetTime = System.nanoTime();
+    private volatile long comparisonsAtReset = 0;
+
+    private ObjectName objectName = null;
+
+    private static final VarHandle INSERTS;
+    private static final VarHandle REMOVES;
+    private static final VarHandle MINS;
+    private static final VarHandle MAX_SIZE;
+    private static final VarHandle SLOW_OPERATIONS;
+    private static final VarHandle MAX_OPERATION_NANOS;
+
+    static {
+        MethodHandles.Lookup l = MethodHandles.lookup();
+        Class<?> c = InstrumentedPriorityQueue.class;
+
+        try {
+            INSERTS = l.findVarHandle(c, "inserts", long.class);
+            REMOVES = l.findVarHandle(c, "removes", long.class);
+            MINS = l.findVarHandle(c, "mins", long.class);
+            MAX_SIZE = l.findVarHandle(c, "maxSize", int.class);
+            SLOW_OPERATIONS = l.findVarHandle(c, "slowOperations", long.class);
+            MAX_OPERATION_NANOS = l.findVarHandle(c, "maxOperationNanos", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Wrap a queue without timing its operations.
+     *
+     * @param queue the queue to wrap
+     * @param name the name of the queue, used in its JMX object name
+     * and in JFR events
+     */
+    public InstrumentedPriorityQueue(SimplePriorityQueue<E> queue, String name) {
+        this(queue, name, 0);
+    }
+
+    /**
+     * Wrap a queue, timing its operations and counting those longer
+     * than slowThresholdNanos.
+     *
+     * @param queue the queue to wrap
+     * @param name the name of the queue, used in its JMX object name
+     * and in JFR events
+     * @param slowThresholdNanos the threshold in nanoseconds, or 0 not
+     * to time operations
+     */
+    public InstrumentedPriorityQueue(SimplePriorityQueue<E> queue, String name, long slowThresholdNanos) {
+        this.queue = queue;
+        this.name = name;
+        this.slowThresholdNanos = slowThresholdNanos;
+        MAX_SIZE.setOpaque(this, queue.size());
+    }
+
+    /**
+     * <p>Register this queue with the platform MBean server, under the
+     * object name
+     * <code>PriorityQueues:type=InstrumentedPriorityQueue,name=</code><em>name</em>.</p>
+     *
+     * @return the object name
+     * @throws JMException if the name is invalid or already
+     * registered
+     */
+    public synchronized ObjectName register() throws JMException {
+        if (objectName == null) {
+            ObjectName on = new ObjectName("PriorityQueues:type=InstrumentedPriorityQueue,name="
+                                           + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        }
+
+        return objectName;
+    }
+
+    /**
+     * <p>Unregister this queue from the platform MBean server, if it
+     * is registered.</p>
+     *
+     * @throws JMException if the queue cannot be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return the wrapped queue
+     */
+    public SimplePriorityQueue<E> getQueue() {
+        return queue;
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public E min() {
+        SlowQueueOperationEvent event = new SlowQueueOperationEvent();
+        event.begin();
+        long start = (slowThresholdNanos > 0) ? System.nanoTime() : 0;
+
+        E x = queue.min();
+
+        finish(event, start, "min", 0);
+        increment(MINS);
+
+        return x;
+    }
+
+    @Override
+    public void insert(long k, E x) {
+        SlowQueueOperationEvent event = new SlowQueueOperationEvent();
+        event.begin();
+        long start = (slowThresholdNanos > 0) ? System.nanoTime() : 0;
+
+        queue.insert(k, x);
+
+        finish(event, start, "insert", k);
+        increment(INSERTS);
+
+        int n = queue.size();
+        if (n > (int) MAX_SIZE.getOpaque(this)) {
+            MAX_SIZE.setOpaque(this, n);
+        }
+    }
+
+    @Override
+    public E removeMin() {
+        SlowQueueOperationEvent event = new SlowQueueOperationEvent();
+        event.begin();
+        long start = (slowThresholdNanos > 0) ? System.nanoTime() : 0;
+
+        E x = queue.removeMin();
+
+        finish(event, start, "removeMin", 0);
+        increment(REMOVES);
+
+        return x;
+    }
+
+    /**
+     * Add one to the long field behind counter. An opaque read and
+     * write are enough, as there is a single writer.
+     */
+    private void increment(VarHandle counter) {
+        counter.setOpaque(this, (long) counter.getOpaque(this) + 1);
+    }
+
+    /**
+     * End the event for an operation, committing it if the operation
+     * was slow enough for a recording, and update the slow-operation
+     * statistics if the operation was timed (start is not 0).
+     */
+    private void finish(SlowQueueOperationEvent event, long start, String operation, long priority) {
+        if (start != 0) {
+            long elapsed = System.nanoTime() - start;
+
+            if (elapsed > (long) MAX_OPERATION_NANOS.getOpaque(this)) {
+                MAX_OPERATION_NANOS.setOpaque(this, elapsed);
+            }
+            if (elapsed > slowThresholdNanos) {
+                increment(SLOW_OPERATIONS);
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.queue = name;
+            event.operation = operation;
+            event.priority = priority;
+            event.size = queue.size();
+            event.commit();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getSize() {
+        return queue.size();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return (int) MAX_SIZE.getOpaque(this);
+    }
+
+    @Override
+    public long getInsertCount() {
+        return (long) INSERTS.getOpaque(this);
+    }
+
+    @Override
+    public long getRemoveMinCount() {
+        return (long) REMOVES.getOpaque(this);
+    }
+
+    @Override
+    public long getMinCount() {
+        return (long) MINS.getOpaque(this);
+    }
+
+    @Override
+    public double getInsertRate() {
+        return perSecond(getInsertCount());
+    }
+
+    @Override
+    public double getRemoveMinRate() {
+        return perSecond(getRemoveMinCount());
+    }
+
+    private double perSecond(long count) {
+        double secs = (System.nanoTime() - resetTime) / 1e9;
+        return (secs > 0) ? count / secs : 0;
+    }
+
+    @Override
+    public boolean isInternalCountersEnabled() {
+        return QueueCounters.ENABLED && queue instanceof QueueCounters;
+    }
+
+    @Override
+    public long getComparisons() {
+        return (queue instanceof QueueCounters) ? ((QueueCounters) queue).getComparisons() : 0;
+    }
+
+    @Override
+    public double getComparisonsPerOperation() {
+        long ops = getInsertCount() + getRemoveMinCount();
+        return (ops == 0) ? 0 : (double) (getComparisons() - comparisonsAtReset) / ops;
+    }
+
+    @Override
+    public long getRotations() {
+        return (queue instanceof QueueCounters) ? ((QueueCounters) queue).getRotations() : 0;
+    }
+
+    @Override
+    public long getGrowths() {
+        return (queue instanceof QueueCounters) ? ((QueueCounters) queue).getGrowths() : 0;
+    }
+
+    @Override
+    public long getRetainedBytes() {
+        if (queue instanceof HeapPriorityQueue) {
+            return ((HeapPriorityQueue<?>) queue).retainedBytes();
+        } else if (queue instanceof SegmentedHeapPriorityQueue) {
+            return ((SegmentedHeapPriorityQueue<?>) queue).retainedBytes();
+        }
+
+        return -1;
+    }
+
+    @Override
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+
+    @Override
+    public void setSlowThresholdNanos(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("threshold must be non-negative: " + nanos);
+        }
+
+        slowThresholdNanos = nanos;
+    }
+
+    @Override
+    public long getSlowOperationCount() {
+        return (long) SLOW_OPERATIONS.getOpaque(this);
+    }
+
+    @Override
+    public long getMaxOperationNanos() {
+        return (long) MAX_OPERATION_NANOS.getOpaque(this);
+    }
+
+    @Override
+    public void resetStatistics() {
+        INSERTS.setOpaque(this, 0L);
+        REMOVES.setOpaque(this, 0L);
+        MINS.setOpaque(this, 0L);
+        MAX_SIZE.setOpaque(this, queue.size());
+        SLOW_OPERATIONS.setOpaque(this, 0L);
+        MAX_OPERATION_NANOS.setOpaque(this, 0L);
+        comparisonsAtReset = getComparisons();
+        resetTime = System.nanoTime();
+    }
+}
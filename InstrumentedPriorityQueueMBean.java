@@ -0,0 +1,122 @@
+/**
+ * <p>The management interface of an
+ * <code>InstrumentedPriorityQueue</code>, exposing its size, operation
+ * counts and rates, internal counters and slow-operation statistics as
+ * JMX attributes.</p>
+ *
+ * @see InstrumentedPriorityQueue
+ */
+
+public interface InstrumentedPriorityQueueMBean {
+
+    /**
+     * @return the name of the queue
+     */
+    String getName();
+
+    /**
+     * @return the current number of elements in the queue
+     */
+    int getSize();
+
+    /**
+     * @return the largest size the queue has had since the statistics
+     * were reset
+     */
+    int getMaxSize();
+
+    /**
+     * @return the number of insert operations
+     */
+    long getInsertCount();
+
+    /**
+     * @return the number of removeMin operations
+     */
+    long getRemoveMinCount();
+
+    /**
+     * @return the number of min operations
+     */
+    long getMinCount();
+
+    /**
+     * @return the mean number of inserts per second since the
+     * statistics were reset
+     */
+    double getInsertRate();
+
+    /**
+     * @return the mean number of removeMin operations per second since
+     * the statistics were reset
+     */
+    double getRemoveMinRate();
+
+    /**
+     * @return whether the underlying queue maintains internal counters
+     * (see <code>QueueCounters</code>)
+     */
+    boolean isInternalCountersEnabled();
+
+    /**
+     * @return the number of priority comparisons made by the
+     * underlying queue, or 0 if it keeps no counters
+     */
+    long getComparisons();
+
+    /**
+     * @return the mean number of comparisons per insert or removeMin
+     * since the statistics were reset
+     */
+    double getComparisonsPerOperation();
+
+    /**
+     * @return the number of tree rotations made by the underlying
+     * queue, or 0 if it keeps no counters
+     */
+    long getRotations();
+
+    /**
+     * @return the number of array growths made by the underlying
+     * queue, or 0 if it keeps no counters
+     */
+    long getGrowths();
+
+    /**
+     * @return an estimate of the bytes retained by the underlying
+     * queue (excluding its elements), or -1 if it cannot report it
+     */
+    long getRetainedBytes();
+
+    /**
+     * @return the duration in nanoseconds above which an operation is
+     * counted as slow, or 0 if operations are not timed
+     */
+    long getSlowThresholdNanos();
+
+    /**
+     * Set the duration above which an operation is counted as slow.
+     *
+     * @param nanos the threshold in nanoseconds, or 0 to stop timing
+     * operations
+     */
+    void setSlowThresholdNanos(long nanos);
+
+    /**
+     * @return the number of operations that took longer than the slow
+     * threshold
+     */
+    long getSlowOperationCount();
+
+    /**
+     * @return the duration in nanoseconds of the slowest timed
+     * operation
+     */
+    long getMaxOperationNanos();
+
+    /**
+     * Reset the operation counts, rates, maximum size and
+     * slow-operation statistics.
+     */
+    void resetStatistics();
+}
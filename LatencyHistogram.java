@@ -0,0 +1,334 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * <p>A histogram of non-negative <code>long</code> values (typically
+ * operation latencies in nanoseconds) with log-linear buckets, in the
+ * style of HdrHistogram. Each power-of-two range of values is divided
+ * into <code>2^precisionBits</code> equal sub-buckets, so every
+ * recorded value is stored with a relative error of at most
+ * <code>2^-precisionBits</code>, while the whole range of
+ * <code>long</code> values fits in a fixed array of counts. Values
+ * smaller than <code>2^(precisionBits+1)</code> are stored
+ * exactly.</p>
+ *
+ * <p><code>record</code> does not allocate and takes constant time, so
+ * it can be called once per operation inside a measured loop. A
+ * histogram is not thread-safe; to measure several threads, give each
+ * thread its own histogram and <code>merge</code> them afterwards.</p>
+ *
+ * <p>A histogram can be written to a text file with
+ * <code>writeTo</code> and read back with <code>readFrom</code>, for
+ * comparing runs offline. The file lists each non-empty bucket as a
+ * line <code>low high count</code>, after a header line starting with
+ * <code>#</code>.</p>
+ *
+ * @see RunTimer
+ */
+
+public class LatencyHistogram {
+
+    /**
+     * The default number of bits of precision, giving a relative error
+     * below 1%.
+     */
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    private final int precisionBits;
+    private final int subBuckets;
+    private final long[] counts;
+    private long totalCount = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    private double sum = 0;
+
+    /**
+     * Create an empty histogram with the default precision.
+     */
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Create an empty histogram.
+     *
+     * @param precisionBits the number of bits of precision, between 1
+     * and 16
+     * @throws IllegalArgumentException if precisionBits is out of
+     * range
+     */
+    public LatencyHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must be between 1 and 16: " + precisionBits);
+        }
+
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.counts = new long[(64 - precisionBits) * subBuckets];
+    }
+
+    /**
+     * @return the number of bits of precision of this histogram
+     */
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    /**
+     * <p>Record one occurrence of value. Negative values are recorded
+     * as <code>0</code>.</p>
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * <p>Record count occurrences of value. Negative values are
+     * recorded as <code>0</code>.</p>
+     *
+     * @param value the value to record
+     * @param count the number of occurrences
+     */
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts[indexOf(value)] += count;
+        totalCount += count;
+        sum += (double) value * count;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * <p>Add all the values recorded in other to this histogram.</p>
+     *
+     * @param other a histogram with the same precision
+     * @throws IllegalArgumentException if other has a different
+     * precision
+     */
+    public void merge(LatencyHistogram other) {
+        if (other.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("cannot merge histograms of precision "
+                                               + precisionBits + " and " + other.precisionBits);
+        }
+
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * <p>Remove all recorded values.</p>
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest value recorded, or <code>0</code> if the
+     * histogram is empty
+     */
+    public long getMin() {
+        return (totalCount == 0) ? 0 : min;
+    }
+
+    /**
+     * @return the largest value recorded (exactly), or <code>0</code>
+     * if the histogram is empty
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the mean of the values recorded, or <code>0</code> if
+     * the histogram is empty
+     */
+    public double getMean() {
+        return (totalCount == 0) ? 0 : sum / totalCount;
+    }
+
+    /**
+     * <p>Return the value at the given percentile: the smallest value
+     * v such that at least <code>percentile</code> percent of the
+     * recorded values are at most v, up to the precision of the
+     * histogram. The result never exceeds <code>getMax()</code>.</p>
+     *
+     * @param percentile a percentile between 0 and 100, e.g.
+     * <code>99.9</code>
+     * @return the value at that percentile, or <code>0</code> if the
+     * histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        double p = Math.min(100, Math.max(0, percentile));
+        long target = Math.max(1, (long) Math.ceil(p / 100 * totalCount));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(max, highestValueAt(i));
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * <p>Print the count, mean, p50, p99, p99.9 and max of this
+     * histogram on one line.</p>
+     *
+     * @param out the stream to print to
+     * @param label a label to print at the start of the line
+     */
+    public void printSummary(PrintStream out, String label) {
+        out.printf("%s count=%d mean=%.1f p50=%d p99=%d p99.9=%d max=%d%n",
+                   label, totalCount, getMean(), getValueAtPercentile(50),
+                   getValueAtPercentile(99), getValueAtPercentile(99.9), max);
+    }
+
+    /**
+     * <p>Write this histogram to a text file, replacing the file if it
+     * exists.</p>
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path path) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            w.write("# LatencyHistogram precisionBits=" + precisionBits + " count=" + totalCount
+                    + " min=" + getMin() + " max=" + max + " sum=" + sum);
+            w.newLine();
+
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] != 0) {
+                    w.write(lowestValueAt(i) + " " + highestValueAt(i) + " " + counts[i]);
+                    w.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Read a histogram written by <code>writeTo</code>.</p>
+     *
+     * @param path the file to read
+     * @return the histogram
+     * @throws IOException if the file cannot be read or is not in the
+     * expected format
+     */
+    public static LatencyHistogram readFrom(Path path) throws IOException {
+        try (BufferedReader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = r.readLine();
+            if (header == null || !header.startsWith("# LatencyHistogram ")) {
+                throw new IOException(path + " is not a histogram file");
+            }
+
+            LatencyHistogram h = null;
+            long min = 0;
+            long max = 0;
+            double sum = 0;
+
+            try {
+                for (String field : header.substring(19).split(" ")) {
+                    String[] kv = field.split("=", 2);
+                    switch (kv[0]) {
+                    case "precisionBits": h = new LatencyHistogram(Integer.parseInt(kv[1])); break;
+                    case "min": min = Long.parseLong(kv[1]); break;
+                    case "max": max = Long.parseLong(kv[1]); break;
+                    case "sum": sum = Double.parseDouble(kv[1]); break;
+                    default: break;
+                    }
+                }
+                if (h == null) {
+                    throw new IOException(path + " does not give the histogram precision");
+                }
+
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String[] f = line.split(" ");
+                    long count = Long.parseLong(f[2]);
+                    h.counts[h.indexOf(Long.parseLong(f[0]))] += count;
+                    h.totalCount += count;
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException(path + " is not a valid histogram file", e);
+            }
+
+            if (h.totalCount > 0) {
+                h.min = min;
+                h.max = max;
+                h.sum = sum;
+            }
+
+            return h;
+        }
+    }
+
+    /**
+     * Return the index of the bucket holding value, which must be
+     * non-negative: values below <code>2 * subBuckets</code> have
+     * their own bucket, and a larger value whose top bit is bit m goes
+     * to sub-bucket <code>value &gt;&gt;&gt; shift</code> of range
+     * <code>shift = m - precisionBits</code>.
+     */
+    private int indexOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - precisionBits);
+        return (shift << precisionBits) + (int) (value >>> shift);
+    }
+
+    /**
+     * Return the smallest value stored in bucket i.
+     */
+    private long lowestValueAt(int i) {
+        int shift = Math.max(0, (i >>> precisionBits) - 1);
+        long top = i - ((long) shift << precisionBits);
+        return top << shift;
+    }
+
+    /**
+     * Return the largest value stored in bucket i.
+     */
+    private long highestValueAt(int i) {
+        int shift = Math.max(0, (i >>> precisionBits) - 1);
+        long low = lowestValueAt(i);
+        long high = low + (1L << shift) - 1;
+        return (high < low) ? Long.MAX_VALUE : high;
+    }
+}
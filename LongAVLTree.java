@@ -0,0 +1,468 @@
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A height-balanced binary search tree mapping primitive
+ * <code>long</code> keys to values. This is a specialization of
+ * <code>AVLTree</code> for the case where the ordering is given by a
+ * <code>long</code>: each node stores its key as a primitive, so a
+ * search performs one primitive comparison per level instead of
+ * calling <code>equals</code> and <code>compareTo</code>, and an
+ * insertion allocates a single node and no key object.
+ *
+ * <p>Keys are distinct: inserting a key that is already present does
+ * not modify the tree. The operations <code>insert</code>,
+ * <code>get</code>, <code>remove</code> and <code>removeMin</code>
+ * take O(log n) time; <code>minKey</code> and <code>minValue</code>
+ * take O(1) time, since the node storing the smallest key is
+ * cached.</p>
+ *
+ * @see AVLTree
+ * @see AVLPriorityQueue
+ */
+
+public class LongAVLTree<V> {
+
+    private Node<V> root = null;
+
+    /**
+     * The node storing the smallest key, or null if the tree is
+     * empty.
+     */
+    private Node<V> minNode = null;
+
+    private int size = 0;
+
+    /**
+     * Value removed by the most recent call to <code>delete</code>.
+     */
+    private V removed;
+
+    /**
+     * The number of key comparisons and single rotations performed
+     * (only counted if <code>QueueCounters.ENABLED</code>).
+     */
+    private long comparisons = 0;
+    private long rotations = 0;
+
+    /**
+     * Return the number of key comparisons made by insertions and
+     * removals. This is always <code>0</code> unless
+     * <code>QueueCounters.ENABLED</code>.
+     *
+     * @return the number of key comparisons
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    /**
+     * Return the number of single rotations performed to rebalance
+     * the tree, counting a double rotation as two. This is always
+     * <code>0</code> unless <code>QueueCounters.ENABLED</code>.
+     *
+     * @return the number of rotations
+     */
+    public long getRotations() {
+        return rotations;
+    }
+
+    /**
+     * Return the number of keys in the tree.
+     *
+     * @return the size of the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determine if the tree is empty.
+     *
+     * @return <code>true</code> if and only if the tree is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return the current height of the tree, i.e., the length of the
+     * longest path from the root to a leaf, or -1 if the tree is
+     * empty.
+     *
+     * @return the height of the tree
+     */
+    public int height() {
+        return height(root);
+    }
+
+    /**
+     * Associate value with key, unless key is already present.
+     *
+     * @param key the key to be inserted
+     * @param value the value associated with key
+     * @return <code>true</code> if and only if the key was inserted
+     */
+    public boolean insert(long key, V value) {
+        int oldSize = size;
+        root = insert(root, key, value);
+
+        if (size == oldSize) {
+            return false;
+        }
+
+        if (minNode == null || key < minNode.key) {
+            minNode = leftmost(root);
+        }
+
+        return true;
+    }
+
+    /**
+     * Return the value associated with key, or null if key is not in
+     * the tree.
+     *
+     * @param key the key to be searched for
+     * @return the value associated with key, if any
+     */
+    public V get(long key) {
+        Node<V> nd = root;
+
+        while (nd != null) {
+            if (key < nd.key) {
+                nd = nd.left;
+            } else if (key > nd.key) {
+                nd = nd.right;
+            } else {
+                return nd.value;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Determine if key is in the tree.
+     *
+     * @param key the key to be searched for
+     * @return <code>true</code> if and only if key is in the tree
+     */
+    public boolean containsKey(long key) {
+        Node<V> nd = root;
+
+        while (nd != null) {
+            if (key < nd.key) {
+                nd = nd.left;
+            } else if (key > nd.key) {
+                nd = nd.right;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Remove key from the tree, returning its associated value, or
+     * null if key was not in the tree.
+     *
+     * @param key the key to be removed
+     * @return the value associated with key, if any
+     */
+    public V remove(long key) {
+        int oldSize = size;
+        removed = null;
+        root = delete(root, key);
+
+        V value = removed;
+        removed = null;
+
+        if (size != oldSize && (minNode.key == key)) {
+            minNode = leftmost(root);
+        }
+
+        return value;
+    }
+
+    /**
+     * Return the smallest key in the tree.
+     *
+     * @return the smallest key
+     * @throws NoSuchElementException if the tree is empty
+     */
+    public long minKey() {
+        if (minNode == null) {
+            throw new NoSuchElementException("tree is empty");
+        }
+
+        return minNode.key;
+    }
+
+    /**
+     * Return the value associated with the smallest key, or null if
+     * the tree is empty.
+     *
+     * @return the value associated with the smallest key
+     */
+    public V minValue() {
+        return (minNode == null) ? null : minNode.value;
+    }
+
+    /**
+     * Remove the smallest key, returning its associated value, or
+     * null if the tree is empty.
+     *
+     * @return the value associated with the smallest key
+     */
+    public V removeMin() {
+        if (root == null) {
+            return null;
+        }
+
+        V value = minNode.value;
+        root = deleteMin(root);
+        --size;
+        minNode = leftmost(root);
+
+        return value;
+    }
+
+    /**
+     * Replace the contents of the tree with the given entries, which
+     * must be listed in strictly increasing order of key. The tree is
+     * built directly in perfectly balanced form in O(n) time.
+     *
+     * @param keys the keys, in increasing order
+     * @param values the values, in the same order as the keys
+     * @throws IllegalArgumentException if the keys are not strictly
+     * increasing
+     */
+    public void loadSorted(long[] keys, List<V> values) {
+        for (int i = 1; i < keys.length; ++i) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("keys are not in strictly increasing order at index " + i);
+            }
+        }
+
+        root = build(keys, values, 0, keys.length);
+        size = keys.length;
+        minNode = leftmost(root);
+    }
+
+    /**
+     * Pass every entry of the tree, in increasing order of key, to
+     * the given action.
+     *
+     * @param action the action to be performed on each value and key
+     */
+    public void forEachInOrder(ObjLongConsumer<V> action) {
+        forEachInOrder(root, action);
+    }
+
+    /**
+     * Return a string listing the keys of the tree in increasing
+     * order.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+
+        forEachInOrder((value, key) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key);
+        });
+
+        sb.append("]");
+
+        return sb.toString();
+    }
+
+    /**
+     * A tree node, storing its key as a primitive.
+     */
+    private static final class Node<V> {
+        final long key;
+        V value;
+        Node<V> left;
+        Node<V> right;
+        int height = 0;
+
+        Node(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static int height(Node<?> nd) {
+        return (nd == null) ? -1 : nd.height;
+    }
+
+    private static void updateHeight(Node<?> nd) {
+        nd.height = 1 + Math.max(height(nd.left), height(nd.right));
+    }
+
+    private static <V> Node<V> leftmost(Node<V> nd) {
+        if (nd == null) {
+            return null;
+        }
+
+        while (nd.left != null) {
+            nd = nd.left;
+        }
+
+        return nd;
+    }
+
+    private Node<V> insert(Node<V> nd, long key, V value) {
+        if (nd == null) {
+            ++size;
+            return new Node<V>(key, value);
+        }
+
+        if (QueueCounters.ENABLED) {
+            ++comparisons;
+        }
+
+        if (key < nd.key) {
+            nd.left = insert(nd.left, key, value);
+        } else if (key > nd.key) {
+            nd.right = insert(nd.right, key, value);
+        } else {
+            return nd;
+        }
+
+        return balance(nd);
+    }
+
+    private Node<V> delete(Node<V> nd, long key) {
+        if (nd == null) {
+            return null;
+        }
+
+        if (QueueCounters.ENABLED) {
+            ++comparisons;
+        }
+
+        if (key < nd.key) {
+            nd.left = delete(nd.left, key);
+        } else if (key > nd.key) {
+            nd.right = delete(nd.right, key);
+        } else {
+            removed = nd.value;
+            --size;
+
+            // a node with at most one child is replaced by that child
+            if (nd.left == null) {
+                return nd.right;
+            }
+            if (nd.right == null) {
+                return nd.left;
+            }
+
+            // otherwise the next node takes nd's place
+            Node<V> next = leftmost(nd.right);
+            next.right = deleteMin(nd.right);
+            next.left = nd.left;
+            nd = next;
+        }
+
+        return balance(nd);
+    }
+
+    private Node<V> deleteMin(Node<V> nd) {
+        if (nd.left == null) {
+            return nd.right;
+        }
+
+        nd.left = deleteMin(nd.left);
+
+        return balance(nd);
+    }
+
+    /**
+     * Update the height of nd and, if its children's heights differ
+     * by 2, restore the balance with a single or double rotation.
+     * Return the root of the rebalanced subtree.
+     */
+    private Node<V> balance(Node<V> nd) {
+        int lh = height(nd.left);
+        int rh = height(nd.right);
+
+        if (lh > rh + 1) {
+            if (height(nd.left.left) < height(nd.left.right)) {
+                nd.left = rotateLeft(nd.left);
+                countRotation();
+            }
+            countRotation();
+            return rotateRight(nd);
+        }
+
+        if (rh > lh + 1) {
+            if (height(nd.right.right) < height(nd.right.left)) {
+                nd.right = rotateRight(nd.right);
+                countRotation();
+            }
+            countRotation();
+            return rotateLeft(nd);
+        }
+
+        updateHeight(nd);
+
+        return nd;
+    }
+
+    private void countRotation() {
+        if (QueueCounters.ENABLED) {
+            ++rotations;
+        }
+    }
+
+    private static <V> Node<V> rotateRight(Node<V> nd) {
+        Node<V> l = nd.left;
+
+        nd.left = l.right;
+        l.right = nd;
+        updateHeight(nd);
+        updateHeight(l);
+
+        return l;
+    }
+
+    private static <V> Node<V> rotateLeft(Node<V> nd) {
+        Node<V> r = nd.right;
+
+        nd.right = r.left;
+        r.left = nd;
+        updateHeight(nd);
+        updateHeight(r);
+
+        return r;
+    }
+
+    private Node<V> build(long[] keys, List<V> values, int lo, int hi) {
+        if (lo >= hi) {
+            return null;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        Node<V> nd = new Node<V>(keys[mid], values.get(mid));
+
+        nd.left = build(keys, values, lo, mid);
+        nd.right = build(keys, values, mid + 1, hi);
+        updateHeight(nd);
+
+        return nd;
+    }
+
+    private static <V> void forEachInOrder(Node<V> nd, ObjLongConsumer<V> action) {
+        while (nd != null) {
+            forEachInOrder(nd.left, action);
+            action.accept(nd.value, nd.key);
+            nd = nd.right;
+        }
+    }
+}
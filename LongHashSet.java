@@ -0,0 +1,228 @@
+import java.util.Arrays;
+
+/**
+ * A set of primitive <code>long</code> values, using the same open
+ * addressing scheme as <code>OpenHashSet</code> (linear probing,
+ * backward-shift deletion, power-of-two table) but storing the values
+ * in a <code>long[]</code>, so that no operation boxes its argument or
+ * allocates.
+ *
+ * <p>The value <code>0</code> marks an empty slot; membership of
+ * <code>0</code> itself is tracked by a separate flag. Since a set of
+ * primitives cannot return the stored element, this class offers
+ * <code>contains</code> and boolean <code>remove</code> in place of
+ * the <code>find</code> and <code>remove</code> methods of
+ * <code>SimpleUSet</code>.</p>
+ *
+ * @see OpenHashSet
+ */
+
+public class LongHashSet {
+
+    /**
+     * The default initial number of slots in the table.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum fraction of occupied slots before the table grows.
+     */
+    public static final double MAX_LOAD = 0.5;
+
+    private long[] slots;
+    private int bits;
+    private int size = 0;
+
+    /**
+     * Whether the value 0, which cannot be stored in a slot, is in
+     * the set.
+     */
+    private boolean hasZero = false;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty set able to hold about
+     * <code>expectedSize</code> values without resizing.
+     *
+     * @param expectedSize the expected number of values
+     */
+    public LongHashSet(int expectedSize) {
+        bits = 4;
+        while ((1 << bits) * MAX_LOAD < expectedSize) {
+            ++bits;
+        }
+
+        slots = new long[1 << bits];
+    }
+
+    /**
+     * Return the number of values in the set.
+     *
+     * @return the size of the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determine if the set is empty.
+     *
+     * @return <code>true</code> if and only if the set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Add x to the set if it is not already present.
+     *
+     * @param x the value to be added
+     * @return <code>true</code> if and only if x was added
+     */
+    public boolean add(long x) {
+        if (x == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            ++size;
+            return true;
+        }
+
+        int mask = slots.length - 1;
+        int i = home(x);
+
+        while (slots[i] != 0) {
+            if (slots[i] == x) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        slots[i] = x;
+        ++size;
+
+        if (size > slots.length * MAX_LOAD) {
+            resize();
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove x from the set, if present.
+     *
+     * @param x the value to be removed
+     * @return <code>true</code> if and only if x was in the set
+     */
+    public boolean remove(long x) {
+        if (x == 0) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            --size;
+            return true;
+        }
+
+        int i = indexOf(x);
+
+        if (i < 0) {
+            return false;
+        }
+
+        --size;
+        shiftBack(i);
+
+        return true;
+    }
+
+    /**
+     * Determine if x is in the set.
+     *
+     * @param x the value to be found
+     * @return <code>true</code> if and only if x is in the set
+     */
+    public boolean contains(long x) {
+        if (x == 0) {
+            return hasZero;
+        }
+
+        return indexOf(x) >= 0;
+    }
+
+    /**
+     * Remove all values from the set, keeping the table at its
+     * current capacity.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        hasZero = false;
+    }
+
+    private int home(long x) {
+        return (int) ((x * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    private int indexOf(long x) {
+        int mask = slots.length - 1;
+        int i = home(x);
+
+        while (slots[i] != 0) {
+            if (slots[i] == x) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Empty slot i, moving back later values of the same probe run
+     * as in <code>OpenHashSet</code>.
+     */
+    private void shiftBack(int gap) {
+        int mask = slots.length - 1;
+        int i = gap;
+
+        while (true) {
+            i = (i + 1) & mask;
+
+            if (slots[i] == 0) {
+                break;
+            }
+
+            int h = home(slots[i]);
+
+            if (((i - h) & mask) >= ((i - gap) & mask)) {
+                slots[gap] = slots[i];
+                gap = i;
+            }
+        }
+
+        slots[gap] = 0;
+    }
+
+    private void resize() {
+        long[] old = slots;
+
+        ++bits;
+        slots = new long[1 << bits];
+
+        int mask = slots.length - 1;
+        for (long x : old) {
+            if (x != 0) {
+                int i = home(x);
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = x;
+            }
+        }
+    }
+}
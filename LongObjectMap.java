@@ -0,0 +1,174 @@
+/**
+ * A map from primitive <code>long</code> keys to non-null values,
+ * using the open addressing scheme of <code>LongHashSet</code>
+ * (linear probing, backward-shift deletion, power-of-two table). A
+ * slot is empty if its value is null, so every key, including 0, can
+ * be stored. The table starts small, so that a map with few entries
+ * takes little memory.
+ *
+ * @see LongHashSet
+ */
+
+final class LongObjectMap<V> {
+
+    /**
+     * The maximum fraction of occupied slots before the table grows.
+     */
+    static final double MAX_LOAD = 0.5;
+
+    private long[] keys;
+    private Object[] vals;
+    private int bits;
+    private int size = 0;
+
+    LongObjectMap() {
+        bits = 1;
+        keys = new long[2];
+        vals = new Object[2];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return the value of key k, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long k) {
+        int mask = keys.length - 1;
+        int i = home(k);
+
+        while (vals[i] != null) {
+            if (keys[i] == k) {
+                return (V) vals[i];
+            }
+            i = (i + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Set the value of key k to v, which must not be null, returning
+     * the previous value, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long k, V v) {
+        int mask = keys.length - 1;
+        int i = home(k);
+
+        while (vals[i] != null) {
+            if (keys[i] == k) {
+                V old = (V) vals[i];
+                vals[i] = v;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = k;
+        vals[i] = v;
+        ++size;
+
+        if (size > keys.length * MAX_LOAD) {
+            resize(bits + 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove key k, returning its value, or null if it was not in the
+     * map.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long k) {
+        int mask = keys.length - 1;
+        int i = home(k);
+
+        while (vals[i] != null) {
+            if (keys[i] == k) {
+                V old = (V) vals[i];
+                --size;
+                shiftBack(i);
+
+                // halve the table when it is at most 1/8 full
+                if (bits > 1 && size <= (keys.length >>> 3)) {
+                    resize(bits - 1);
+                }
+
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Return an estimate of the number of bytes retained by the map,
+     * not counting the values themselves.
+     */
+    long retainedBytes() {
+        return Footprint.object(2, 2 * Integer.BYTES)
+            + Footprint.align(Footprint.ARRAY_HEADER_BYTES + (long) keys.length * Long.BYTES)
+            + Footprint.referenceArray(vals.length);
+    }
+
+    private int home(long k) {
+        return (int) ((k * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    /**
+     * Empty slot gap, moving back later entries of the same probe run
+     * as in <code>LongHashSet</code>.
+     */
+    private void shiftBack(int gap) {
+        int mask = keys.length - 1;
+        int i = gap;
+
+        while (true) {
+            i = (i + 1) & mask;
+
+            if (vals[i] == null) {
+                break;
+            }
+
+            int h = home(keys[i]);
+
+            if (((i - h) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                vals[gap] = vals[i];
+                gap = i;
+            }
+        }
+
+        vals[gap] = null;
+    }
+
+    private void resize(int newBits) {
+        long[] oldKeys = keys;
+        Object[] oldVals = vals;
+
+        bits = newBits;
+        keys = new long[1 << bits];
+        vals = new Object[1 << bits];
+
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; ++j) {
+            if (oldVals[j] != null) {
+                int i = home(oldKeys[j]);
+                while (vals[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                vals[i] = oldVals[j];
+            }
+        }
+    }
+}
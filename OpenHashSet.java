@@ -0,0 +1,213 @@
+/**
+ * An implementation of <code>SimpleUSet</code> using open addressing
+ * with linear probing. Elements are stored directly in a single array
+ * whose length is a power of two; an element's home slot is given by
+ * the high bits of its (mixed) hash code, and collisions are resolved
+ * by probing the following slots.
+ *
+ * <p>Removal uses backward-shift deletion instead of tombstones: after
+ * an element is removed, later elements of the same probe run are
+ * moved back into the gap, so that searches never have to skip over
+ * deleted slots and the table never needs to be rebuilt to purge
+ * them. The table doubles when it becomes more than
+ * <code>MAX_LOAD</code> full.</p>
+ *
+ * <p>The operations <code>add</code>, <code>remove</code> and
+ * <code>find</code> take O(1) expected time. Elements must not be
+ * <code>null</code>.</p>
+ *
+ * @see LongHashSet
+ */
+
+public class OpenHashSet<E> implements SimpleUSet<E> {
+
+    /**
+     * The default initial number of slots in the table.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum fraction of occupied slots before the table grows.
+     */
+    public static final double MAX_LOAD = 0.5;
+
+    private Object[] slots;
+
+    /**
+     * The number of bits of the mixed hash code used to find a home
+     * slot, i.e., <code>slots.length == 1 &lt;&lt; bits</code>.
+     */
+    private int bits;
+
+    private int size = 0;
+
+    public OpenHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty set able to hold about
+     * <code>expectedSize</code> elements without resizing.
+     *
+     * @param expectedSize the expected number of elements
+     */
+    public OpenHashSet(int expectedSize) {
+        bits = 4;
+        while ((1 << bits) * MAX_LOAD < expectedSize) {
+            ++bits;
+        }
+
+        slots = new Object[1 << bits];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean add(E x) {
+        int mask = slots.length - 1;
+        int i = home(x);
+
+        while (slots[i] != null) {
+            if (x.equals(slots[i])) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        slots[i] = x;
+        ++size;
+
+        if (size > slots.length * MAX_LOAD) {
+            resize();
+        }
+
+        return true;
+    }
+
+    @Override
+    public E remove(E x) {
+        int i = indexOf(x);
+
+        if (i < 0) {
+            return null;
+        }
+
+        E removed = element(i);
+        --size;
+        shiftBack(i);
+
+        return removed;
+    }
+
+    @Override
+    public E find(E x) {
+        int i = indexOf(x);
+
+        return (i < 0) ? null : element(i);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+
+        for (Object o : slots) {
+            if (o != null) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(o);
+            }
+        }
+
+        sb.append("]");
+
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E element(int i) {
+        return (E) slots[i];
+    }
+
+    /**
+     * Return the home slot of x. Fibonacci hashing spreads the bits
+     * of poorly distributed hash codes (such as those of small
+     * <code>Integer</code>s) across the whole table.
+     */
+    private int home(Object x) {
+        return (int) ((x.hashCode() * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    /**
+     * Return the slot storing an element equal to x, or -1 if there
+     * is no such slot.
+     */
+    private int indexOf(Object x) {
+        int mask = slots.length - 1;
+        int i = home(x);
+
+        while (slots[i] != null) {
+            if (x.equals(slots[i])) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Empty slot i, then move back any later element of the same
+     * probe run whose home slot does not lie (cyclically) between the
+     * gap and its current position.
+     */
+    private void shiftBack(int gap) {
+        int mask = slots.length - 1;
+        int i = gap;
+
+        while (true) {
+            i = (i + 1) & mask;
+
+            if (slots[i] == null) {
+                break;
+            }
+
+            int h = home(slots[i]);
+
+            // the element at i may fill the gap if its home slot is
+            // not in the cyclic range (gap, i]
+            if (((i - h) & mask) >= ((i - gap) & mask)) {
+                slots[gap] = slots[i];
+                gap = i;
+            }
+        }
+
+        slots[gap] = null;
+    }
+
+    private void resize() {
+        Object[] old = slots;
+
+        ++bits;
+        slots = new Object[1 << bits];
+
+        int mask = slots.length - 1;
+        for (Object o : old) {
+            if (o != null) {
+                int i = home(o);
+                while (slots[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = o;
+            }
+        }
+    }
+}
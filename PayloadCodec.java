@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Converts the elements stored in a priority queue to and from a
+ * binary representation, for use in snapshot and log files. An
+ * encoding must be self-delimiting: <code>decode</code> must consume
+ * exactly the bytes written by the matching call to
+ * <code>encode</code>.</p>
+ *
+ * @see QueueSnapshot
+ */
+
+public interface PayloadCodec<E> {
+
+    /**
+     * <p>Write the binary representation of <code>x</code> at the
+     * current position of <code>out</code>. If <code>out</code> does
+     * not have enough space remaining, a
+     * <code>java.nio.BufferOverflowException</code> is thrown; the
+     * caller then retries with a larger buffer.</p>
+     *
+     * @param x the element to be encoded
+     * @param out the buffer to write to
+     */
+    void encode(E x, ByteBuffer out);
+
+    /**
+     * <p>Read an element from the current position of
+     * <code>in</code>, advancing the position past its
+     * representation.</p>
+     *
+     * @param in the buffer to read from
+     * @return the decoded element
+     */
+    E decode(ByteBuffer in);
+
+    /**
+     * Encodes <code>Integer</code> elements as 4 bytes.
+     */
+    PayloadCodec<Integer> INTEGER = new PayloadCodec<Integer>() {
+        public void encode(Integer x, ByteBuffer out) {
+            out.putInt(x);
+        }
+
+        public Integer decode(ByteBuffer in) {
+            return in.getInt();
+        }
+    };
+
+    /**
+     * Encodes <code>Long</code> elements as 8 bytes.
+     */
+    PayloadCodec<Long> LONG = new PayloadCodec<Long>() {
+        public void encode(Long x, ByteBuffer out) {
+            out.putLong(x);
+        }
+
+        public Long decode(ByteBuffer in) {
+            return in.getLong();
+        }
+    };
+
+    /**
+     * Encodes <code>String</code> elements as a 4 byte length followed
+     * by the UTF-8 bytes of the string.
+     */
+    PayloadCodec<String> STRING = new PayloadCodec<String>() {
+        public void encode(String x, ByteBuffer out) {
+            byte[] bytes = x.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+
+        public String decode(ByteBuffer in) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
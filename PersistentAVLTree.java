@@ -0,0 +1,463 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent (immutable-node) variant of <code>AVLTree</code>. Nodes
+ * are never modified once they are published: <code>add</code> and
+ * <code>remove</code> copy only the nodes on the search path (and the
+ * nodes touched by rotations), sharing every other subtree with the
+ * previous version. Each version of the tree is published through a
+ * single <code>volatile</code> reference, so readers never block and
+ * never observe a half-applied update.
+ *
+ * <p>Writers are serialized by an internal lock. Readers do not take
+ * the lock: <code>find</code>, <code>findMin</code>,
+ * <code>findMax</code>, <code>size</code> and iteration all read the
+ * current version once and then work on that version only. A
+ * consistent view that survives across several calls can be taken in
+ * O(1) time with <code>snapshot()</code>.</p>
+ *
+ * <p>The ordering on <code>E</code> is assumed to be consistent with
+ * <code>equals</code>, so that only one <code>compareTo</code> is
+ * needed per level of the tree.</p>
+ *
+ * @see AVLTree
+ */
+
+public class PersistentAVLTree<E extends Comparable<E>> implements SimpleSSet<E>, Iterable<E> {
+
+    /**
+     * The most recently published version of the tree.
+     */
+    private volatile Version<E> current = new Version<E>(null, 0);
+
+    /**
+     * Lock serializing writers. Readers never acquire it.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Return an immutable view of the current contents of the
+     * tree. The snapshot is unaffected by later calls to
+     * <code>add</code> or <code>remove</code> on this tree. This
+     * operation takes O(1) time and does not copy any nodes.
+     *
+     * @return a read-only snapshot of the current version
+     */
+    public Snapshot<E> snapshot() {
+        return new Snapshot<E>(current);
+    }
+
+    /**
+     * Return the current height of the tree. That is, the length of
+     * the longest path from the root to any leaf.
+     *
+     * @return the height of the tree
+     */
+    public int height() {
+        return height(current.root);
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current.size == 0;
+    }
+
+    @Override
+    public E find(E x) {
+        return ceiling(current.root, x);
+    }
+
+    @Override
+    public E findMin() {
+        return min(current.root);
+    }
+
+    @Override
+    public E findMax() {
+        return max(current.root);
+    }
+
+    @Override
+    public boolean add(E x) {
+        synchronized (writeLock) {
+            Version<E> v = current;
+            Node<E> newRoot = insert(v.root, x);
+
+            // insert returns the same root if x was already present
+            if (newRoot == v.root) {
+                return false;
+            }
+
+            current = new Version<E>(newRoot, v.size + 1);
+            return true;
+        }
+    }
+
+    @Override
+    public E remove(E x) {
+        synchronized (writeLock) {
+            Version<E> v = current;
+            Object[] removed = new Object[1];
+            Node<E> newRoot = delete(v.root, x, removed);
+
+            if (removed[0] == null) {
+                return null;
+            }
+
+            current = new Version<E>(newRoot, v.size - 1);
+
+            @SuppressWarnings("unchecked")
+            E value = (E) removed[0];
+            return value;
+        }
+    }
+
+    /**
+     * Return an iterator over the elements of the current version in
+     * increasing order. The iterator is unaffected by concurrent
+     * updates.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new InOrderIterator<E>(current.root);
+    }
+
+    /**
+     * Return a string listing the contents of the tree in-order.
+     */
+    @Override
+    public String toString() {
+        return buildString(current.root);
+    }
+
+    /**
+     * A read-only view of a single version of a
+     * <code>PersistentAVLTree</code>. All query operations behave as
+     * for the tree at the moment the snapshot was taken; the
+     * modifying operations throw
+     * <code>UnsupportedOperationException</code>.
+     */
+    public static final class Snapshot<E extends Comparable<E>> implements SimpleSSet<E>, Iterable<E> {
+        private final Version<E> version;
+
+        private Snapshot(Version<E> version) {
+            this.version = version;
+        }
+
+        public int height() {
+            return PersistentAVLTree.height(version.root);
+        }
+
+        @Override
+        public int size() {
+            return version.size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return version.size == 0;
+        }
+
+        @Override
+        public E find(E x) {
+            return ceiling(version.root, x);
+        }
+
+        @Override
+        public E findMin() {
+            return min(version.root);
+        }
+
+        @Override
+        public E findMax() {
+            return max(version.root);
+        }
+
+        @Override
+        public boolean add(E x) {
+            throw new UnsupportedOperationException("snapshots are read-only");
+        }
+
+        @Override
+        public E remove(E x) {
+            throw new UnsupportedOperationException("snapshots are read-only");
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new InOrderIterator<E>(version.root);
+        }
+
+        @Override
+        public String toString() {
+            return buildString(version.root);
+        }
+    }
+
+    /**
+     * A published version of the tree: a root together with the
+     * number of elements reachable from it.
+     */
+    private static final class Version<E> {
+        final Node<E> root;
+        final int size;
+
+        Version(Node<E> root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+    }
+
+    /**
+     * An immutable tree node. Nodes do not store parent pointers,
+     * since a node may be shared by many versions of the tree.
+     */
+    private static final class Node<E> {
+        final E value;
+        final Node<E> left;
+        final Node<E> right;
+        final int height;
+
+        Node(E value, Node<E> left, Node<E> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(PersistentAVLTree.height(left), PersistentAVLTree.height(right));
+        }
+    }
+
+    /**
+     * Iterate over the subtree rooted at a node in-order, using an
+     * explicit stack of the left spine still to be visited.
+     */
+    private static final class InOrderIterator<E> implements Iterator<E> {
+        private final ArrayDeque<Node<E>> stack = new ArrayDeque<Node<E>>();
+
+        InOrderIterator(Node<E> root) {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<E> nd) {
+            while (nd != null) {
+                stack.push(nd);
+                nd = nd.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            Node<E> nd = stack.pop();
+            pushLeft(nd.right);
+
+            return nd.value;
+        }
+    }
+
+    private static int height(Node<?> nd) {
+        return (nd == null) ? -1 : nd.height;
+    }
+
+    private static <E extends Comparable<E>> E ceiling(Node<E> nd, E x) {
+        // best is the smallest value seen so far that is at least x
+        E best = null;
+
+        while (nd != null) {
+            int c = x.compareTo(nd.value);
+
+            if (c == 0) {
+                return nd.value;
+            }
+
+            if (c < 0) {
+                best = nd.value;
+                nd = nd.left;
+            } else {
+                nd = nd.right;
+            }
+        }
+
+        return best;
+    }
+
+    private static <E> E min(Node<E> nd) {
+        if (nd == null) {
+            return null;
+        }
+
+        while (nd.left != null) {
+            nd = nd.left;
+        }
+
+        return nd.value;
+    }
+
+    private static <E> E max(Node<E> nd) {
+        if (nd == null) {
+            return null;
+        }
+
+        while (nd.right != null) {
+            nd = nd.right;
+        }
+
+        return nd.value;
+    }
+
+    private static <E> String buildString(Node<E> root) {
+        StringBuilder sb = new StringBuilder("[");
+        Iterator<E> it = new InOrderIterator<E>(root);
+
+        while (it.hasNext()) {
+            sb.append(it.next());
+            if (it.hasNext()) {
+                sb.append(", ");
+            }
+        }
+
+        sb.append("]");
+
+        return sb.toString();
+    }
+
+    /**
+     * Return the root of a copy of the subtree rooted at nd with x
+     * added, copying only the nodes on the search path. If x is
+     * already present, nd itself is returned.
+     */
+    private static <E extends Comparable<E>> Node<E> insert(Node<E> nd, E x) {
+        if (nd == null) {
+            return new Node<E>(x, null, null);
+        }
+
+        int c = x.compareTo(nd.value);
+
+        if (c == 0) {
+            return nd;
+        }
+
+        if (c < 0) {
+            Node<E> left = insert(nd.left, x);
+            if (left == nd.left) {
+                return nd;
+            }
+            return balance(nd.value, left, nd.right);
+        }
+
+        Node<E> right = insert(nd.right, x);
+        if (right == nd.right) {
+            return nd;
+        }
+        return balance(nd.value, nd.left, right);
+    }
+
+    /**
+     * Return the root of a copy of the subtree rooted at nd with x
+     * removed. The removed value (if any) is stored in removed[0].
+     */
+    private static <E extends Comparable<E>> Node<E> delete(Node<E> nd, E x, Object[] removed) {
+        if (nd == null) {
+            return null;
+        }
+
+        int c = x.compareTo(nd.value);
+
+        if (c < 0) {
+            Node<E> left = delete(nd.left, x, removed);
+            if (left == nd.left) {
+                return nd;
+            }
+            return balance(nd.value, left, nd.right);
+        }
+
+        if (c > 0) {
+            Node<E> right = delete(nd.right, x, removed);
+            if (right == nd.right) {
+                return nd;
+            }
+            return balance(nd.value, nd.left, right);
+        }
+
+        removed[0] = nd.value;
+
+        // a node with at most one child is replaced by that child
+        if (nd.left == null) {
+            return nd.right;
+        }
+        if (nd.right == null) {
+            return nd.left;
+        }
+
+        // otherwise replace the value with the next value in the set,
+        // and remove the node previously storing the next value
+        E next = min(nd.right);
+        Node<E> right = deleteMin(nd.right);
+
+        return balance(next, nd.left, right);
+    }
+
+    private static <E> Node<E> deleteMin(Node<E> nd) {
+        if (nd.left == null) {
+            return nd.right;
+        }
+
+        return balance(nd.value, deleteMin(nd.left), nd.right);
+    }
+
+    /**
+     * Create a node storing value with the given children,
+     * performing a single or double rotation if the children's
+     * heights differ by 2. This is the path-copying counterpart of
+     * <code>AVLTree.restructure</code>.
+     */
+    private static <E> Node<E> balance(E value, Node<E> left, Node<E> right) {
+        int lh = height(left);
+        int rh = height(right);
+
+        if (lh > rh + 1) {
+            if (height(left.left) >= height(left.right)) {
+                // single right rotation
+                return new Node<E>(left.value, left.left,
+                                   new Node<E>(value, left.right, right));
+            }
+
+            // double rotation: left.right becomes the subtree root
+            Node<E> x = left.right;
+            return new Node<E>(x.value,
+                               new Node<E>(left.value, left.left, x.left),
+                               new Node<E>(value, x.right, right));
+        }
+
+        if (rh > lh + 1) {
+            if (height(right.right) >= height(right.left)) {
+                // single left rotation
+                return new Node<E>(right.value,
+                                   new Node<E>(value, left, right.left),
+                                   right.right);
+            }
+
+            // double rotation: right.left becomes the subtree root
+            Node<E> x = right.left;
+            return new Node<E>(x.value,
+                               new Node<E>(value, left, x.left),
+                               new Node<E>(right.value, x.right, right.right));
+        }
+
+        return new Node<E>(value, left, right);
+    }
+}
@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>A cache bounded by the total size in bytes of its values, which
+ * evicts entries in the order given by an eviction priority. The
+ * entries are found through a hash map, and their priorities are kept
+ * in an addressable heap (an <code>IndexedMinHeap</code> of entry
+ * ids), so that updating an entry's priority on access takes O(log n)
+ * time and the next victim is always at the top of the heap; no pass
+ * ever sorts the candidates.</p>
+ *
+ * <p>The policies are:</p>
+ * <ul>
+ * <li><code>TTL</code>: the entry that expires first is evicted first
+ * (the priority is the expiry time);</li>
+ * <li><code>LFU</code>: the least frequently used entry is evicted
+ * first, with <em>dynamic aging</em>: the priority of an entry is its
+ * number of accesses plus the priority of the last entry evicted
+ * when it was last accessed, so that entries that were popular long
+ * ago do not stay forever;</li>
+ * <li><code>GREEDY_DUAL</code>: the cost-aware GreedyDual-Size
+ * policy. An entry's priority is L + cost / bytes, where cost is the
+ * cost of reloading the entry (given when it is put) and L is the
+ * priority of the last entry evicted; an access resets the priority
+ * with the current L. Cheap, large entries are thus evicted before
+ * expensive, small ones, and entries not accessed for a while age
+ * out.</li>
+ * </ul>
+ *
+ * <p>Under every policy, an entry may have a time to live. An expired
+ * entry is never returned: <code>get</code> removes it, and
+ * <code>expire</code> removes all expired entries (at the top of the
+ * heap under <code>TTL</code>, and by a full scan otherwise).</p>
+ *
+ * <p>When a <code>put</code> takes the cache over its byte budget,
+ * entries are evicted until it is within the budget again;
+ * <code>evictTo</code> evicts to any lower budget in one batch. The
+ * cache counts hits, misses, evictions and expirations. It must be
+ * used by one thread at a time.</p>
+ *
+ * @see IndexedMinHeap
+ */
+
+public class PriorityCache<K, V> {
+
+    public enum Policy { TTL, LFU, GREEDY_DUAL }
+
+    /**
+     * The time to live meaning that an entry never expires.
+     */
+    public static final long NO_EXPIRY = 0;
+
+    /**
+     * GreedyDual priorities are cost / bytes in units of 1 /
+     * GREEDY_DUAL_SCALE, so that they can be kept as longs.
+     */
+    static final long GREEDY_DUAL_SCALE = 1 << 16;
+
+    private final Policy policy;
+    private final long maxBytes;
+    private final long defaultTtlNanos;
+    private final LongSupplier clock;
+
+    private final HashMap<K, Entry<K, V>> index = new HashMap<K, Entry<K, V>>();
+    private final IndexedMinHeap heap = new IndexedMinHeap(16);
+    private Object[] entries = new Object[16];
+
+    /**
+     * The ids not in use, as a stack.
+     */
+    private int[] free = new int[16];
+    private int freeCount = 0;
+    private int nextId = 0;
+
+    private long bytes = 0;
+
+    /**
+     * The priority of the last entry evicted (L in GreedyDual-Size and
+     * LFU with dynamic aging).
+     */
+    private long inflation = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long evictedBytes = 0;
+    private long expirations = 0;
+
+    /**
+     * Create an empty cache whose entries never expire unless a time
+     * to live is given when they are put.
+     *
+     * @param policy the eviction policy
+     * @param maxBytes the byte budget
+     */
+    public PriorityCache(Policy policy, long maxBytes) {
+        this(policy, maxBytes, NO_EXPIRY);
+    }
+
+    /**
+     * Create an empty cache.
+     *
+     * @param policy the eviction policy
+     * @param maxBytes the byte budget
+     * @param defaultTtlNanos the time to live of entries put without
+     * one, or <code>NO_EXPIRY</code>
+     */
+    public PriorityCache(Policy policy, long maxBytes, long defaultTtlNanos) {
+        this(policy, maxBytes, defaultTtlNanos, System::nanoTime);
+    }
+
+    /**
+     * Create an empty cache reading the time from the given clock (in
+     * nanoseconds).
+     */
+    PriorityCache(Policy policy, long maxBytes, long defaultTtlNanos, LongSupplier clock) {
+        if (maxBytes < 0 || defaultTtlNanos < 0) {
+            throw new IllegalArgumentException("byte budget and time to live must be non-negative");
+        }
+
+        this.policy = policy;
+        this.maxBytes = maxBytes;
+        this.defaultTtlNanos = defaultTtlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * An entry of the cache and its bookkeeping.
+     */
+    private static final class Entry<K, V> {
+        final K key;
+        V value;
+        int id;
+        long bytes;
+        long cost;
+        long expiresAt;
+        long accesses;
+
+        Entry(K key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the total size in bytes of the entries in the cache
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Return the value of key, or null if the key is not in the cache
+     * or has expired. A hit updates the entry's eviction priority.
+     *
+     * @param key the key
+     * @return the value of key, or null
+     */
+    public V get(K key) {
+        Entry<K, V> e = index.get(key);
+
+        if (e != null && e.expiresAt <= clock.getAsLong()) {
+            ++expirations;
+            discard(e);
+            e = null;
+        }
+
+        if (e == null) {
+            ++misses;
+            return null;
+        }
+
+        ++hits;
+        ++e.accesses;
+        if (policy != Policy.TTL) {
+            heap.changeKey(e.id, priority(e));
+        }
+
+        return e.value;
+    }
+
+    /**
+     * Put an entry with cost 1 and the default time to live.
+     *
+     * @see #put(Object, Object, long, long, long)
+     */
+    public void put(K key, V value, long bytes) {
+        put(key, value, bytes, 1, defaultTtlNanos);
+    }
+
+    /**
+     * Put an entry into the cache, replacing any entry with the same
+     * key, and evict entries until the cache is within its byte
+     * budget. An entry larger than the whole budget is not cached (and
+     * an old entry with its key is removed).
+     *
+     * @param key the key
+     * @param value the value
+     * @param bytes the size of the entry in bytes, at least 1
+     * @param cost the cost of reloading the entry, for
+     * <code>GREEDY_DUAL</code>
+     * @param ttlNanos the time to live of the entry in nanoseconds, or
+     * <code>NO_EXPIRY</code>
+     * @throws IllegalArgumentException if bytes is not positive or
+     * cost or ttlNanos is negative
+     */
+    public void put(K key, V value, long bytes, long cost, long ttlNanos) {
+        if (bytes < 1 || cost < 0 || ttlNanos < 0) {
+            throw new IllegalArgumentException("invalid bytes, cost or time to live");
+        }
+
+        Entry<K, V> e = index.get(key);
+
+        if (bytes > maxBytes) {
+            if (e != null) {
+                discard(e);
+            }
+            return;
+        }
+
+        long now = clock.getAsLong();
+
+        if (e == null) {
+            e = new Entry<K, V>(key);
+            e.id = allocateId();
+            entries[e.id] = e;
+            index.put(key, e);
+        } else {
+            this.bytes -= e.bytes;
+        }
+
+        // replacing a value counts as an access
+        ++e.accesses;
+
+        e.value = value;
+        e.bytes = bytes;
+        e.cost = cost;
+        e.expiresAt = (ttlNanos == NO_EXPIRY || now + ttlNanos < now) ? Long.MAX_VALUE : now + ttlNanos;
+        this.bytes += bytes;
+
+        if (heap.contains(e.id)) {
+            heap.changeKey(e.id, priority(e));
+        } else {
+            heap.insert(e.id, priority(e));
+        }
+
+        if (this.bytes > maxBytes) {
+            evictTo(maxBytes);
+        }
+    }
+
+    /**
+     * Remove the entry with the given key, returning its value, or
+     * null if there is none.
+     */
+    public V remove(K key) {
+        Entry<K, V> e = index.get(key);
+
+        if (e == null) {
+            return null;
+        }
+
+        discard(e);
+        return e.value;
+    }
+
+    /**
+     * Evict entries, in order of eviction priority, until the entries
+     * left take at most budget bytes.
+     *
+     * @param budget the number of bytes to evict to
+     * @return the number of entries evicted
+     */
+    public int evictTo(long budget) {
+        int count = 0;
+
+        while (bytes > budget && !heap.isEmpty()) {
+            int id = heap.min();
+
+            @SuppressWarnings("unchecked")
+            Entry<K, V> e = (Entry<K, V>) entries[id];
+
+            if (policy != Policy.TTL) {
+                inflation = heap.key(id);
+            }
+
+            ++evictions;
+            evictedBytes += e.bytes;
+            discard(e);
+            ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Remove every expired entry.
+     *
+     * @return the number of entries removed
+     */
+    @SuppressWarnings("unchecked")
+    public int expire() {
+        long now = clock.getAsLong();
+        int count = 0;
+
+        if (policy == Policy.TTL) {
+            while (!heap.isEmpty() && heap.key(heap.min()) <= now) {
+                discard((Entry<K, V>) entries[heap.min()]);
+                ++count;
+            }
+        } else {
+            for (int id = 0; id < nextId; ++id) {
+                Entry<K, V> e = (Entry<K, V>) entries[id];
+                if (e != null && e.expiresAt <= now) {
+                    discard(e);
+                    ++count;
+                }
+            }
+        }
+
+        expirations += count;
+        return count;
+    }
+
+    /**
+     * Return the eviction priority of an entry under the policy.
+     */
+    private long priority(Entry<K, V> e) {
+        switch (policy) {
+        case TTL:
+            return e.expiresAt;
+        case LFU:
+            return inflation + e.accesses;
+        default:
+            return inflation + e.cost * GREEDY_DUAL_SCALE / e.bytes;
+        }
+    }
+
+    private void discard(Entry<K, V> e) {
+        index.remove(e.key);
+        heap.remove(e.id);
+        entries[e.id] = null;
+        bytes -= e.bytes;
+
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, 2 * freeCount);
+        }
+        free[freeCount++] = e.id;
+    }
+
+    private int allocateId() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+
+        if (nextId == entries.length) {
+            entries = Arrays.copyOf(entries, 2 * nextId);
+            heap.grow(2 * nextId);
+        }
+
+        return nextId++;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of <code>get</code>s that were hits, or 0
+     * if there were none
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the byte
+     * budget (not counting expired entries)
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * @return the number of expired entries removed
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cache: %d entries, %d/%d bytes, hit rate %.3f, %d evictions (%d bytes), %d expirations",
+                             policy, size(), bytes, maxBytes, getHitRate(), evictions, evictedBytes, expirations);
+    }
+}
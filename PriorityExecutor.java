@@ -0,0 +1,569 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>An <code>ExecutorService</code> that runs tasks in order of a
+ * <code>long</code> priority, smallest first. Instead of one shared
+ * queue, each worker thread owns an <code>ArrayBinaryHeap</code> of
+ * tasks guarded by its own lock. Tasks submitted from a worker go to
+ * that worker's heap; tasks submitted from other threads are spread
+ * over the workers round-robin.</p>
+ *
+ * <p>A worker whose heap is empty <em>steals</em> from the worker
+ * advertising the best (smallest) priority: it removes the better
+ * half of that worker's heap with repeated <code>removeMin</code>
+ * calls and moves it to its own heap. Each worker publishes the
+ * smallest priority in its heap, so choosing a victim takes no
+ * locks.</p>
+ *
+ * <p>Since workers only look at their own heap, a worker may run a
+ * task while a better task waits elsewhere. The difference between
+ * the priority of the task run and the best priority advertised by
+ * any other worker is the <em>drift</em>. Before running a local
+ * task, a worker steals instead if another worker advertises a
+ * priority better by more than <code>maxDrift</code>, which bounds
+ * the drift up to the staleness of the advertised minima. The drift
+ * of every task run is recorded.</p>
+ */
+
+public class PriorityExecutor extends AbstractExecutorService {
+
+    /**
+     * The priority of tasks submitted without one.
+     */
+    public static final long DEFAULT_PRIORITY = 0;
+
+    /**
+     * How long an idle worker parks before looking for work again.
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private final Worker[] workers;
+    private final long maxDrift;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    /**
+     * The number of workers between looking for a task and deciding
+     * to run it, and the tasks they hand back to shutdownNow when they
+     * find the executor stopped in between.
+     */
+    private final AtomicInteger claiming = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Runnable> handedBack = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final CountDownLatch terminated;
+
+    private final LongAdder tasksRun = new LongAdder();
+    private final LongAdder steals = new LongAdder();
+    private final LongAdder totalDrift = new LongAdder();
+    private final LongAccumulator maxObservedDrift = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Create an executor with one worker per available processor and
+     * unbounded drift (workers steal only when idle).
+     */
+    public PriorityExecutor() {
+        this(Runtime.getRuntime().availableProcessors(), Long.MAX_VALUE);
+    }
+
+    /**
+     * Create an executor with the given number of workers.
+     *
+     * @param threads the number of worker threads
+     * @param maxDrift the largest difference between the priority of
+     * a local task and the best advertised priority elsewhere for
+     * which the local task is still run rather than stealing
+     */
+    public PriorityExecutor(int threads, long maxDrift) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one worker: " + threads);
+        }
+        if (maxDrift < 0) {
+            throw new IllegalArgumentException("maxDrift must be non-negative: " + maxDrift);
+        }
+
+        this.maxDrift = maxDrift;
+        this.terminated = new CountDownLatch(threads);
+        this.workers = new Worker[threads];
+
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Worker(i);
+        }
+        for (Worker w : workers) {
+            w.thread.start();
+        }
+    }
+
+    /**
+     * <p>Run the given command with priority
+     * <code>DEFAULT_PRIORITY</code>.</p>
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * <p>Run the given command with the given priority. Smaller
+     * values run first; tasks with equal priority run in the order
+     * submitted to the same worker.</p>
+     *
+     * @param command the task to be run
+     * @param priority the priority of the task
+     * @throws RejectedExecutionException if the executor has been
+     * shut down
+     */
+    public void execute(Runnable command, long priority) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        // announce the submission before checking the state, so that
+        // workers do not exit and shutdownNow does not drain until
+        // the task is in a heap
+        submitting.incrementAndGet();
+        try {
+            if (state.get() != RUNNING) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+
+            Task task = new Task(command, priority, sequence.getAndIncrement());
+            Worker target = currentWorker();
+
+            if (target == null) {
+                target = workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+            }
+
+            target.push(task);
+            target.wake();
+
+            // let an idle worker steal the new task if its owner is busy
+            for (Worker w : workers) {
+                if (w != target && w.parked) {
+                    w.wake();
+                    break;
+                }
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * <p>Submit a value-returning task with the given priority.</p>
+     *
+     * @param task the task to be run
+     * @param priority the priority of the task
+     * @return a Future representing the pending result of the task
+     */
+    public <T> Future<T> submit(Callable<T> task, long priority) {
+        FutureTask<T> f = new FutureTask<T>(task);
+        execute(f, priority);
+        return f;
+    }
+
+    /**
+     * <p>Submit a task with the given priority.</p>
+     *
+     * @param task the task to be run
+     * @param priority the priority of the task
+     * @return a Future whose get method returns null on completion
+     */
+    public Future<?> submit(Runnable task, long priority) {
+        FutureTask<Void> f = new FutureTask<Void>(task, null);
+        execute(f, priority);
+        return f;
+    }
+
+    @Override
+    public void shutdown() {
+        state.compareAndSet(RUNNING, SHUTDOWN);
+        wakeAll();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        state.set(STOP);
+        // a submission that passed the state check is about to push;
+        // wait for it so its task is returned rather than lost
+        while (submitting.get() != 0) {
+            Thread.onSpinWait();
+        }
+
+        List<Runnable> pending = new ArrayList<Runnable>();
+
+        for (Worker w : workers) {
+            w.lock.lock();
+            try {
+                while (!w.heap.isEmpty()) {
+                    pending.add(w.heap.removeMin().command);
+                }
+                w.publishMin();
+            } finally {
+                w.lock.unlock();
+            }
+            w.thread.interrupt();
+        }
+
+        // a worker that took tasks before the heaps were drained hands
+        // them back once it sees STOP; wait for it and collect them
+        while (claiming.get() != 0) {
+            Thread.onSpinWait();
+        }
+        for (Runnable r; (r = handedBack.poll()) != null; ) {
+            pending.add(r);
+        }
+
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state.get() != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * <p>Return the number of tasks run so far.</p>
+     *
+     * @return the number of tasks run
+     */
+    public long getTasksRun() {
+        return tasksRun.sum();
+    }
+
+    /**
+     * <p>Return the number of successful steals.</p>
+     *
+     * @return the number of times a worker took tasks from another
+     */
+    public long getSteals() {
+        return steals.sum();
+    }
+
+    /**
+     * <p>Return the mean drift of the tasks run so far.</p>
+     *
+     * @return the mean drift
+     */
+    public double getMeanDrift() {
+        long n = tasksRun.sum();
+        return (n == 0) ? 0 : (double) totalDrift.sum() / n;
+    }
+
+    /**
+     * <p>Return the largest drift of any task run so far.</p>
+     *
+     * @return the maximum drift
+     */
+    public long getMaxDrift() {
+        return maxObservedDrift.get();
+    }
+
+    private Worker currentWorker() {
+        Thread t = Thread.currentThread();
+
+        for (Worker w : workers) {
+            if (w.thread == t) {
+                return w;
+            }
+        }
+
+        return null;
+    }
+
+    private void wakeAll() {
+        for (Worker w : workers) {
+            w.wake();
+        }
+    }
+
+    /**
+     * Return the worker other than self advertising the smallest
+     * priority, or null if all other workers are empty.
+     */
+    private Worker bestOther(Worker self) {
+        Worker best = null;
+        long bestMin = Long.MAX_VALUE;
+
+        for (Worker w : workers) {
+            if (w != self && w.advertisedMin < bestMin && w.hasWork()) {
+                best = w;
+                bestMin = w.advertisedMin;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Return a - b for a &gt;= b, or Long.MAX_VALUE if the difference
+     * overflows.
+     */
+    private static long gap(long a, long b) {
+        if (a < b) {
+            throw new IllegalArgumentException("gap(" + a + ", " + b + ") is negative");
+        }
+
+        long d = a - b;
+        return (d < 0) ? Long.MAX_VALUE : d;
+    }
+
+    /**
+     * A task with its priority; ties are broken by submission order.
+     */
+    private static final class Task implements Comparable<Task> {
+        final Runnable command;
+        final long priority;
+        final long seq;
+
+        Task(Runnable command, long priority, long seq) {
+            this.command = command;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Task t) {
+            if (priority != t.priority) {
+                return (priority < t.priority) ? -1 : 1;
+            }
+
+            return Long.compare(seq, t.seq);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final Thread thread;
+        final ArrayBinaryHeap<Task> heap = new ArrayBinaryHeap<Task>();
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The smallest priority in heap, or Long.MAX_VALUE if heap is
+         * empty. Only written with lock held.
+         */
+        volatile long advertisedMin = Long.MAX_VALUE;
+        volatile int advertisedSize = 0;
+        volatile boolean parked = false;
+
+        Worker(int index) {
+            thread = new Thread(this, "PriorityExecutor-worker-" + index);
+            thread.setDaemon(true);
+        }
+
+        boolean hasWork() {
+            return advertisedSize > 0;
+        }
+
+        void wake() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        // must be called with lock held
+        void publishMin() {
+            Task t = heap.min();
+            advertisedMin = (t == null) ? Long.MAX_VALUE : t.priority;
+            advertisedSize = heap.size();
+        }
+
+        void push(Task task) {
+            lock.lock();
+            try {
+                heap.insert(task);
+                publishMin();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Task poll() {
+            lock.lock();
+            try {
+                Task t = heap.removeMin();
+                publishMin();
+                return t;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Remove the better half of this worker's heap (at least one
+         * task, if any), in increasing order of priority.
+         */
+        List<Task> takeBestHalf() {
+            lock.lock();
+            try {
+                int k = (heap.size() + 1) / 2;
+                List<Task> taken = new ArrayList<Task>(k);
+
+                for (int i = 0; i < k; ++i) {
+                    taken.add(heap.removeMin());
+                }
+
+                publishMin();
+                return taken;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Steal the better half of victim's heap, keeping all but the
+         * best stolen task in this worker's heap, and return the best
+         * one (or null if victim turned out to be empty, or if the
+         * executor was stopped and the tasks were handed back).
+         */
+        Task stealFrom(Worker victim) {
+            List<Task> taken = victim.takeBestHalf();
+
+            if (taken.isEmpty()) {
+                return null;
+            }
+
+            steals.increment();
+
+            lock.lock();
+            try {
+                // shutdownNow may have drained this heap already, so
+                // inserting would lose the tasks; hand them back
+                if (state.get() == STOP) {
+                    for (Task t : taken) {
+                        handedBack.add(t.command);
+                    }
+                    return null;
+                }
+
+                for (int i = 1; i < taken.size(); ++i) {
+                    heap.insert(taken.get(i));
+                }
+                publishMin();
+            } finally {
+                lock.unlock();
+            }
+
+            return taken.get(0);
+        }
+
+        /**
+         * Find the next task to run: the local minimum, unless another
+         * worker advertises a priority better by more than maxDrift,
+         * in which case steal from it.
+         */
+        Task next() {
+            Worker other = bestOther(this);
+
+            if (other != null) {
+                // read each advertised minimum once, as they may change
+                long localMin = advertisedMin;
+                long otherMin = other.advertisedMin;
+
+                if (advertisedSize == 0
+                    || (otherMin < localMin && gap(localMin, otherMin) > maxDrift)) {
+                    Task t = stealFrom(other);
+                    if (t != null) {
+                        return t;
+                    }
+                }
+            }
+
+            return (advertisedSize > 0) ? poll() : null;
+        }
+
+        void record(Task t) {
+            long drift = 0;
+
+            for (Worker w : workers) {
+                long min = w.advertisedMin;
+                if (w != this && min < t.priority) {
+                    drift = Math.max(drift, gap(t.priority, min));
+                }
+            }
+
+            tasksRun.increment();
+            totalDrift.add(drift);
+            maxObservedDrift.accumulate(drift);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (state.get() != STOP) {
+                    Task t;
+
+                    claiming.incrementAndGet();
+                    try {
+                        t = next();
+
+                        if (t != null && state.get() == STOP) {
+                            handedBack.add(t.command);
+                            break;
+                        }
+                    } finally {
+                        claiming.decrementAndGet();
+                    }
+
+                    if (t == null) {
+                        // check for submissions in progress before
+                        // the heaps, as a submission pushes before it
+                        // finishes
+                        if (state.get() == SHUTDOWN && submitting.get() == 0
+                            && bestOther(this) == null && !hasWork()) {
+                            break;
+                        }
+
+                        parked = true;
+                        // recheck after announcing, so a concurrent
+                        // push cannot be missed
+                        if (!hasWork() && bestOther(this) == null) {
+                            LockSupport.parkNanos(this, PARK_NANOS);
+                        }
+                        parked = false;
+                        continue;
+                    }
+
+                    record(t);
+
+                    try {
+                        t.command.run();
+                    } catch (RuntimeException e) {
+                        Thread.UncaughtExceptionHandler h = thread.getUncaughtExceptionHandler();
+                        h.uncaughtException(thread, e);
+                    }
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A <code>Flow.Publisher</code> that emits the elements of a
+ * priority queue in priority order, smallest first, as subscribers
+ * signal demand. Producers <code>insert</code> elements from any
+ * thread; the elements wait in a <code>HeapPriorityQueue</code>
+ * guarded by a lock until a subscriber requests them.</p>
+ *
+ * <p>Each subscription is drained by a task on an executor. The task
+ * removes as many elements as the subscriber has requested (up to
+ * <code>maxBatch</code>) with one acquisition of the lock, then
+ * delivers them outside the lock. Signals that arrive while the task
+ * runs do not start another task but make it loop, so a burst of
+ * inserts is delivered in a few large batches instead of one task per
+ * element, and a subscriber without demand costs nothing.</p>
+ *
+ * <p>The queue is shared: with several subscribers, each element goes
+ * to exactly one of them, so subscribers act as competing consumers.
+ * Each batch is in priority order, but batches taken concurrently by
+ * different subscribers may interleave.</p>
+ *
+ * <p>Following the Reactive Streams rules, a <code>request</code> of
+ * zero or fewer elements cancels the subscription and signals
+ * <code>IllegalArgumentException</code>, and a subscriber that throws
+ * from <code>onNext</code> is cancelled and sent the exception.
+ * Elements removed for a subscription that is cancelled before they
+ * are delivered go back into the queue. After <code>close</code>,
+ * inserts are rejected and each subscriber is completed once the
+ * queue is empty.</p>
+ *
+ * <p>The publisher reports the depth of the queue (current and
+ * peak), the outstanding demand of its subscribers, and the number
+ * and mean size of the batches delivered.</p>
+ *
+ * @see HeapPriorityQueue
+ */
+
+public class PriorityPublisher<E> implements Flow.Publisher<E>, AutoCloseable {
+
+    /**
+     * The default maximum number of elements removed per batch.
+     */
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private final HeapPriorityQueue<Item<E>> queue = new HeapPriorityQueue<Item<E>>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private final Executor executor;
+    private final int maxBatch;
+
+    // guarded by lock
+    private boolean closed = false;
+    private int peakDepth = 0;
+
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * Create a publisher that delivers on the common fork/join pool,
+     * up to <code>DEFAULT_MAX_BATCH</code> elements per batch.
+     */
+    public PriorityPublisher() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Create a publisher.
+     *
+     * @param executor the executor on which elements are delivered
+     * @param maxBatch the maximum number of elements removed from the
+     * queue at once for one subscriber
+     */
+    public PriorityPublisher(Executor executor, int maxBatch) {
+        if (executor == null) {
+            throw new NullPointerException();
+        }
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("batch size must be positive: " + maxBatch);
+        }
+
+        this.executor = executor;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * <p>Insert an element with the given priority and let a
+     * subscriber with outstanding demand take it.</p>
+     *
+     * @param k the priority of x
+     * @param x the element
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public void insert(long k, E x) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("publisher is closed");
+            }
+
+            queue.insert(k, new Item<E>(k, x));
+            peakDepth = Math.max(peakDepth, queue.size());
+        } finally {
+            lock.unlock();
+        }
+
+        inserted.increment();
+
+        // wake one subscriber with demand, preferring one whose drain
+        // task is idle; a running task picks the element up anyway
+        Subscription busy = null;
+
+        for (Subscription s : subscriptions) {
+            if (s.requested.get() > 0) {
+                if (s.pendingSignals.get() == 0) {
+                    s.signal();
+                    return;
+                }
+                if (busy == null) {
+                    busy = s;
+                }
+            }
+        }
+
+        if (busy != null) {
+            busy.signal();
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super E> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+
+        Subscription s = new Subscription(subscriber);
+        subscriptions.add(s);
+        s.signal();
+    }
+
+    /**
+     * <p>Reject further inserts, and complete every subscriber once
+     * the queue is empty.</p>
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+
+        for (Subscription s : subscriptions) {
+            s.signal();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of elements waiting in the queue
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the largest number of elements that have been waiting
+     * in the queue at once
+     */
+    public int getPeakQueueDepth() {
+        lock.lock();
+        try {
+            return peakDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of elements requested by the current
+     * subscribers and not yet delivered, or Long.MAX_VALUE if any
+     * subscriber has requested an unbounded number
+     */
+    public long getOutstandingDemand() {
+        long total = 0;
+
+        for (Subscription s : subscriptions) {
+            total += s.requested.get();
+            if (total < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+
+        return total;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public long getInserted() {
+        return inserted.sum();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the mean number of elements per batch delivered, or 0
+     * if there were none
+     */
+    public double getMeanBatchSize() {
+        long n = batches.sum();
+        return (n == 0) ? 0 : (double) delivered.sum() / n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("publisher: %d subscribers, depth %d (peak %d), demand %d, %d delivered in %d batches",
+                             getSubscriberCount(), getQueueDepth(), getPeakQueueDepth(),
+                             getOutstandingDemand(), getDelivered(), getBatches());
+    }
+
+    /**
+     * Remove up to n elements from the queue into batch, in priority
+     * order, and return how many were removed.
+     */
+    private int take(Item<E>[] batch, int n) {
+        lock.lock();
+        try {
+            int k = Math.min(n, queue.size());
+
+            for (int i = 0; i < k; ++i) {
+                batch[i] = queue.removeMin();
+            }
+
+            return k;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put back the elements batch[from..to) of a batch that could not
+     * be delivered.
+     */
+    private void putBack(Item<E>[] batch, int from, int to) {
+        lock.lock();
+        try {
+            for (int i = from; i < to; ++i) {
+                queue.insert(batch[i].priority, batch[i]);
+                batch[i] = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // another subscriber may be waiting for them
+        if (to > from) {
+            for (Subscription s : subscriptions) {
+                if (s.requested.get() > 0) {
+                    s.signal();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return whether the publisher is closed and has nothing left to
+     * deliver.
+     */
+    private boolean isDone() {
+        lock.lock();
+        try {
+            return closed && queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * An element with its priority, so that it can be put back.
+     */
+    private static final class Item<E> {
+        final long priority;
+        final E element;
+
+        Item(long priority, E element) {
+            this.priority = priority;
+            this.element = element;
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription, Runnable {
+        final Flow.Subscriber<? super E> subscriber;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        /**
+         * The number of signals not yet seen by the drain task; the
+         * task is scheduled by the signal that raises it from 0.
+         */
+        final AtomicInteger pendingSignals = new AtomicInteger();
+
+        // only accessed by the drain task
+        boolean started = false;
+        boolean terminated = false;
+        @SuppressWarnings("unchecked")
+        final Item<E>[] batch = (Item<E>[]) new Item<?>[maxBatch];
+
+        volatile Throwable error = null;
+
+        Subscription(Flow.Subscriber<? super E> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                requested.getAndAccumulate(n, (r, m) -> (r + m < 0) ? Long.MAX_VALUE : r + m);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                subscriptions.remove(this);
+                requested.set(0);
+            }
+        }
+
+        void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int seen = pendingSignals.get();
+
+            do {
+                if (!terminated) {
+                    try {
+                        drain();
+                    } catch (RuntimeException e) {
+                        terminate(e);
+                    }
+                }
+                seen = pendingSignals.addAndGet(-seen);
+            } while (seen != 0);
+        }
+
+        /**
+         * Deliver elements while there are both demand and elements,
+         * and complete the subscriber once the publisher is done.
+         */
+        private void drain() {
+            if (!started) {
+                started = true;
+                subscriber.onSubscribe(this);
+            }
+
+            while (!cancelled.get()) {
+                Throwable e = error;
+                if (e != null) {
+                    terminate(e);
+                    return;
+                }
+
+                long r = requested.get();
+                int k = (r == 0) ? 0 : take(batch, (int) Math.min(r, maxBatch));
+
+                if (k == 0) {
+                    if (isDone()) {
+                        terminate(null);
+                    }
+                    return;
+                }
+
+                for (int i = 0; i < k; ++i) {
+                    if (cancelled.get()) {
+                        putBack(batch, i, k);
+                        return;
+                    }
+
+                    E x = batch[i].element;
+                    batch[i] = null;
+
+                    try {
+                        subscriber.onNext(x);
+                    } catch (RuntimeException ex) {
+                        putBack(batch, i + 1, k);
+                        throw ex;
+                    }
+
+                    delivered.increment();
+                }
+
+                batches.increment();
+                if (r != Long.MAX_VALUE) {
+                    requested.addAndGet(-k);
+                }
+            }
+        }
+
+        /**
+         * Cancel the subscription and signal completion, or the given
+         * error, to the subscriber.
+         */
+        private void terminate(Throwable e) {
+            terminated = true;
+            cancel();
+
+            if (e == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(e);
+            }
+        }
+    }
+}
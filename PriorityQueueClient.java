@@ -0,0 +1,510 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * <p>A client of a <code>PriorityQueueServer</code>, which presents
+ * the server's shards as one <code>SimplePriorityQueue</code> of byte
+ * payloads. The client holds one connection per shard and must be
+ * used by one thread at a time; processes (or threads) that share the
+ * queue each open their own client.</p>
+ *
+ * <p>Each entry is inserted into one shard, chosen by hashing its
+ * priority or, if range bounds are given, by the range its priority
+ * falls in. Insertions are batched: up to <code>batchSize</code>
+ * entries for a shard are sent in one <code>INSERT</code> request,
+ * fewer if more would make the request exceed
+ * <code>PriorityQueueServer.MAX_FRAME</code> bytes, and requests are
+ * pipelined, the client reading the responses only when it next needs
+ * an answer from that shard.</p>
+ *
+ * <p>To remove entries, the client fetches up to
+ * <code>prefetch</code> of the smallest entries of each shard (one
+ * <code>REMOVE_MIN</code> request per shard, sent to all shards
+ * before any response is read) and merges the shard minima:
+ * <code>removeMin</code> returns the smallest fetched entry, and
+ * fetches again from a shard only once the entries fetched from it
+ * are used up. Fetched entries belong to this client, so no two
+ * clients ever return the same entry, and <code>close</code> gives
+ * back the ones not returned. The price is that an entry is the
+ * smallest of the queue only as of the moment it was fetched: an
+ * entry inserted later (by any client) into a shard whose fetched
+ * entries are not used up yet is only seen after them. With a
+ * prefetch of 1 the order is as exact as the concurrent use of the
+ * queue allows.</p>
+ *
+ * <p>Network errors are thrown as
+ * <code>UncheckedIOException</code>s, since
+ * <code>SimplePriorityQueue</code> methods cannot throw
+ * <code>IOException</code>; errors reported by the server (such as a
+ * priority the server's queues reject) are thrown as
+ * <code>IllegalStateException</code>s. A payload longer than
+ * <code>PriorityQueueServer.MAX_PAYLOAD</code> bytes can never be sent
+ * and is rejected with an <code>IllegalArgumentException</code>.</p>
+ *
+ * @see PriorityQueueServer
+ */
+
+public class PriorityQueueClient implements SimplePriorityQueue<byte[]>, Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_PREFETCH = 16;
+
+    /**
+     * The number of bytes of requests buffered for a shard before
+     * they are sent regardless.
+     */
+    static final int SEND_THRESHOLD = 64 << 10;
+
+    /**
+     * The number of INSERT requests sent to a shard before the client
+     * waits for their responses. This bounds the responses waiting in
+     * the server, which stops reading requests when too many are
+     * waiting.
+     */
+    static final int MAX_PIPELINED = 1024;
+
+    private final Connection[] shards;
+    private final long[] rangeBounds;
+    private final int batchSize;
+    private final int prefetch;
+
+    /**
+     * Connect to a server with hash sharding and the default batch
+     * size and prefetch.
+     *
+     * @param address the address of the server
+     * @throws IOException if the server cannot be reached
+     */
+    public PriorityQueueClient(InetSocketAddress address) throws IOException {
+        this(address, DEFAULT_BATCH_SIZE, DEFAULT_PREFETCH, null);
+    }
+
+    /**
+     * Connect to a server.
+     *
+     * @param address the address of the server
+     * @param batchSize the number of insertions sent per request
+     * @param prefetch the number of entries fetched from a shard at a
+     * time
+     * @param rangeBounds null for hash sharding; otherwise s - 1
+     * increasing bounds for a server with s shards, shard i holding
+     * the priorities from <code>rangeBounds[i - 1]</code> (inclusive)
+     * to <code>rangeBounds[i]</code> (exclusive)
+     * @throws IOException if the server cannot be reached
+     * @throws IllegalArgumentException if the bounds do not match the
+     * server's shards
+     */
+    public PriorityQueueClient(InetSocketAddress address, int batchSize, int prefetch, long[] rangeBounds)
+        throws IOException {
+        if (batchSize < 1 || prefetch < 1) {
+            throw new IllegalArgumentException("batch size and prefetch must be positive");
+        }
+
+        this.batchSize = batchSize;
+        this.prefetch = prefetch;
+
+        Connection first = new Connection(address, 0);
+        int n = first.shardCount;
+        this.shards = new Connection[n];
+        this.shards[0] = first;
+
+        try {
+            for (int i = 1; i < n; ++i) {
+                shards[i] = new Connection(address, i);
+            }
+        } catch (IOException e) {
+            closeAll();
+            throw e;
+        }
+
+        if (rangeBounds != null) {
+            boolean increasing = true;
+            for (int i = 1; i < rangeBounds.length; ++i) {
+                increasing &= rangeBounds[i - 1] < rangeBounds[i];
+            }
+            if (rangeBounds.length != n - 1 || !increasing) {
+                closeAll();
+                throw new IllegalArgumentException("need " + (n - 1) + " increasing range bounds");
+            }
+            this.rangeBounds = rangeBounds.clone();
+        } else {
+            this.rangeBounds = null;
+        }
+    }
+
+    /**
+     * @return the number of shards of the server
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Return the shard holding priority k.
+     */
+    int shardOf(long k) {
+        if (rangeBounds != null) {
+            int i = Arrays.binarySearch(rangeBounds, k);
+            return (i >= 0) ? i + 1 : -i - 1;
+        }
+
+        long h = k * 0x9E3779B97F4A7C15L;
+        return (int) (((h >>> 32) * shards.length) >>> 32);
+    }
+
+    /**
+     * Return the number of entries in all shards, including those
+     * fetched by this client but not yet returned.
+     */
+    @Override
+    public int size() {
+        try {
+            for (Connection c : shards) {
+                c.sendBatch();
+                c.request(PriorityQueueServer.SIZE);
+            }
+
+            long total = 0;
+            for (Connection c : shards) {
+                total += c.readSize() + c.fetched.size();
+            }
+            return (int) Math.min(Integer.MAX_VALUE, total);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void insert(long k, byte[] x) {
+        try {
+            shards[shardOf(k)].add(k, x);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Send all buffered insertions and wait until the server has
+     * done them.
+     */
+    public void flush() {
+        try {
+            for (Connection c : shards) {
+                c.sendBatch();
+                c.flush();
+            }
+            for (Connection c : shards) {
+                c.drain();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public byte[] min() {
+        PriorityQueueServer.Entry e = peek();
+        return (e == null) ? null : e.payload;
+    }
+
+    @Override
+    public byte[] removeMin() {
+        PriorityQueueServer.Entry e = removeMinEntry();
+        return (e == null) ? null : e.payload;
+    }
+
+    /**
+     * Remove and return the smallest entry (see above), with its
+     * priority, or return null if the queue is empty.
+     */
+    public PriorityQueueServer.Entry removeMinEntry() {
+        Connection c = best();
+        return (c == null) ? null : c.fetched.poll();
+    }
+
+    private PriorityQueueServer.Entry peek() {
+        Connection c = best();
+        return (c == null) ? null : c.fetched.peek();
+    }
+
+    /**
+     * Fetch from every shard whose fetched entries are used up, and
+     * return the shard with the smallest fetched entry, or null if
+     * nothing could be fetched.
+     */
+    private Connection best() {
+        try {
+            for (Connection c : shards) {
+                c.sendBatch();
+                if (c.fetched.isEmpty()) {
+                    c.request(PriorityQueueServer.REMOVE_MIN, prefetch);
+                    c.refilling = true;
+                }
+            }
+
+            Connection best = null;
+            for (Connection c : shards) {
+                if (c.refilling) {
+                    c.readEntries();
+                    c.refilling = false;
+                }
+
+                PriorityQueueServer.Entry e = c.fetched.peek();
+                if (e != null && (best == null || e.key < best.fetched.peek().key)) {
+                    best = c;
+                }
+            }
+
+            return best;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Send the buffered insertions, give back the fetched entries not
+     * yet returned, and close the connections.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Connection c : shards) {
+                for (PriorityQueueServer.Entry e; (e = c.fetched.poll()) != null; ) {
+                    c.add(e.key, e.payload);
+                }
+                c.sendBatch();
+                c.flush();
+            }
+            for (Connection c : shards) {
+                c.drain();
+            }
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void closeAll() {
+        for (Connection c : shards) {
+            if (c != null) {
+                try {
+                    c.channel.close();
+                } catch (IOException e) {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+    /**
+     * A blocking connection to one shard, with the requests buffered
+     * for it and the number of responses still to be read.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final int shardCount;
+
+        ByteBuffer out = ByteBuffer.allocate(SEND_THRESHOLD + 1024);
+        ByteBuffer in = ByteBuffer.allocate(64 << 10);
+
+        /**
+         * The INSERT request being built: its start in out (-1 if
+         * there is none) and its number of entries.
+         */
+        int batchStart = -1;
+        int batchCount = 0;
+
+        /**
+         * The number of INSERT responses not read yet, which are
+         * ahead of any other response.
+         */
+        int pendingInserts = 0;
+
+        final ArrayDeque<PriorityQueueServer.Entry> fetched = new ArrayDeque<PriorityQueueServer.Entry>();
+        boolean refilling = false;
+
+        Connection(InetSocketAddress address, int shard) throws IOException {
+            channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            ByteBuffer hello = ByteBuffer.allocate(4);
+            hello.putInt(shard).flip();
+            while (hello.hasRemaining()) {
+                channel.write(hello);
+            }
+
+            hello.clear();
+            readFully(hello);
+            shardCount = hello.getInt(0);
+        }
+
+        void add(long k, byte[] payload) throws IOException {
+            if (payload.length > PriorityQueueServer.MAX_PAYLOAD) {
+                throw new IllegalArgumentException("payload of " + payload.length
+                                                   + " bytes exceeds " + PriorityQueueServer.MAX_PAYLOAD);
+            }
+
+            // end the batch if this entry would make it too long
+            if (batchStart >= 0
+                && out.position() - batchStart - 4 + 12 + payload.length > PriorityQueueServer.MAX_FRAME) {
+                sendBatch();
+            }
+
+            if (batchStart < 0) {
+                reserve(9);
+                batchStart = out.position();
+                out.putInt(0).put(PriorityQueueServer.INSERT).putInt(0);
+            }
+
+            reserve(12 + payload.length);
+            out.putLong(k).putInt(payload.length).put(payload);
+
+            if (++batchCount == batchSize) {
+                sendBatch();
+            }
+        }
+
+        /**
+         * Finish the buffered INSERT request, if any, and send the
+         * buffered requests if there are enough of them.
+         */
+        void sendBatch() throws IOException {
+            if (batchStart >= 0) {
+                out.putInt(batchStart, out.position() - batchStart - 4);
+                out.putInt(batchStart + 5, batchCount);
+                batchStart = -1;
+                batchCount = 0;
+                ++pendingInserts;
+            }
+
+            if (out.position() >= SEND_THRESHOLD) {
+                flush();
+            }
+            if (pendingInserts >= MAX_PIPELINED) {
+                flush();
+                drain();
+            }
+        }
+
+        /**
+         * Buffer a request made of an operation and optional int
+         * arguments, and send all buffered requests.
+         */
+        void request(byte op, int... args) throws IOException {
+            reserve(5 + 4 * args.length);
+            out.putInt(1 + 4 * args.length).put(op);
+            for (int a : args) {
+                out.putInt(a);
+            }
+            flush();
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        private void reserve(int n) throws IOException {
+            if (out.remaining() < n) {
+                // send everything but a partially built INSERT request
+                int end = out.position();
+                int keep = (batchStart >= 0) ? batchStart : end;
+                out.flip().limit(keep);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                out.limit(end);
+                out.compact();
+                if (batchStart >= 0) {
+                    batchStart = 0;
+                }
+
+                if (out.remaining() < n) {
+                    ByteBuffer grown = ByteBuffer.allocate(out.position() + n);
+                    out.flip();
+                    grown.put(out);
+                    out = grown;
+                }
+            }
+        }
+
+        /**
+         * Read the responses to all INSERT requests sent so far.
+         */
+        void drain() throws IOException {
+            while (pendingInserts > 0) {
+                --pendingInserts;
+                readResponse();
+            }
+        }
+
+        int readSize() throws IOException {
+            drain();
+            return readResponse().getInt();
+        }
+
+        void readEntries() throws IOException {
+            drain();
+            ByteBuffer r = readResponse();
+            int count = r.getInt();
+
+            for (int i = 0; i < count; ++i) {
+                long k = r.getLong();
+                byte[] payload = new byte[r.getInt()];
+                r.get(payload);
+                fetched.add(new PriorityQueueServer.Entry(k, payload));
+            }
+        }
+
+        /**
+         * Read one response frame, returning its body after the
+         * status.
+         */
+        private ByteBuffer readResponse() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(header);
+
+            int length = header.getInt(0);
+            if (length < 1 || length > PriorityQueueServer.MAX_FRAME) {
+                throw new IOException("bad frame length " + length);
+            }
+
+            ByteBuffer body = (length <= in.capacity()) ? in : ByteBuffer.allocate(length);
+            body.clear().limit(length);
+            readFully(body);
+            body.flip();
+
+            if (body.get() != PriorityQueueServer.OK) {
+                byte[] message = new byte[body.remaining()];
+                body.get(message);
+                throw new IllegalStateException("server error: " + new String(message, StandardCharsets.UTF_8));
+            }
+
+            return body;
+        }
+
+        private void readFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                if (channel.read(b) < 0) {
+                    throw new EOFException("server closed the connection");
+                }
+            }
+        }
+    }
+}
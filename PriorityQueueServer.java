@@ -0,0 +1,588 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * <p>A server hosting a priority queue split into N independent
+ * <em>shards</em>, each a <code>SimplePriorityQueue</code> of
+ * <code>Entry</code>s (a priority with an opaque byte payload), for
+ * use by several processes on the same host.</p>
+ *
+ * <p>Each shard is owned by one thread running a non-blocking NIO
+ * event loop over the connections to that shard, so the shards share
+ * no locks and throughput grows with the number of shards and cores.
+ * A client opens one connection per shard (see
+ * <code>PriorityQueueClient</code>) and decides which shard each
+ * entry goes to. The server listens on one port: on connecting, a
+ * client sends the index of the shard it wants (a 4-byte int), and
+ * the server answers with the number of shards (a 4-byte int) and
+ * hands the connection to that shard's thread. A connection that
+ * does not finish the handshake within
+ * <code>HANDSHAKE_TIMEOUT_MILLIS</code> is closed.</p>
+ *
+ * <p>After the handshake, every message in either direction is a
+ * frame: a 4-byte length, followed by that many bytes. All numbers
+ * are big-endian. A request starts with an operation byte:</p>
+ * <ul>
+ * <li><code>INSERT</code>: an int count, then count entries, each a
+ * long priority, an int payload length and the payload;</li>
+ * <li><code>REMOVE_MIN</code>: an int maximum count;</li>
+ * <li><code>MIN</code>: nothing more;</li>
+ * <li><code>SIZE</code>: nothing more.</li>
+ * </ul>
+ * <p>Each request gets one response, in request order, so clients can
+ * pipeline requests. A response starts with a status byte. After
+ * <code>OK</code>, an <code>INSERT</code> or <code>SIZE</code> response
+ * holds the size of the shard (an int), a <code>REMOVE_MIN</code>
+ * response holds an int count and that many entries (encoded as for
+ * <code>INSERT</code>) in increasing order of priority, fewer than
+ * asked for if more would make the frame exceed
+ * <code>MAX_FRAME</code> bytes, and a
+ * <code>MIN</code> response holds a byte that is 1 if the shard is
+ * not empty, followed in that case by the smallest priority (a
+ * long). After <code>ERROR</code>, the response holds a UTF-8 error
+ * message; the connection stays usable.</p>
+ *
+ * <p>A shard thread stops reading from a connection while more than
+ * <code>MAX_PENDING_OUTPUT</code> bytes of responses wait to be sent
+ * to it, so a client that does not read its responses cannot make the
+ * server buffer without bound.</p>
+ *
+ * @see PriorityQueueClient
+ */
+
+public class PriorityQueueServer implements Closeable {
+
+    // operations
+    static final byte INSERT = 1;
+    static final byte REMOVE_MIN = 2;
+    static final byte MIN = 3;
+    static final byte SIZE = 4;
+
+    // response statuses
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /**
+     * The largest frame accepted; a connection sending a larger one
+     * is closed.
+     */
+    public static final int MAX_FRAME = 16 << 20;
+
+    /**
+     * The largest payload that fits in a frame: an INSERT request of
+     * one entry holds an operation byte, a count and the entry's
+     * priority and length besides its payload.
+     */
+    public static final int MAX_PAYLOAD = MAX_FRAME - 17;
+
+    /**
+     * How long a new connection may take to send its shard index.
+     */
+    static final long HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * The number of bytes of unsent responses above which a shard
+     * stops reading requests from a connection.
+     */
+    static final int MAX_PENDING_OUTPUT = 1 << 20;
+
+    /**
+     * An entry of a shard: a priority and its payload.
+     */
+    public static final class Entry {
+        public final long key;
+        public final byte[] payload;
+
+        public Entry(long key, byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    private final ServerSocketChannel server;
+    private final Selector handshakes;
+    private final Shard[] shards;
+    private final Thread acceptor;
+    private volatile boolean closed = false;
+
+    /**
+     * Start a server with the given number of shards, each backed by
+     * a <code>HeapPriorityQueue</code>.
+     *
+     * @param address the address to listen on (port 0 picks a free
+     * port)
+     * @param shards the number of shards
+     * @throws IOException if the server cannot listen on address
+     */
+    public PriorityQueueServer(InetSocketAddress address, int shards) throws IOException {
+        this(address, shards, HeapPriorityQueue::new);
+    }
+
+    /**
+     * Start a server with the given number of shards, each backed by
+     * a queue made by factory.
+     *
+     * @param address the address to listen on (port 0 picks a free
+     * port)
+     * @param shards the number of shards
+     * @param factory makes the queue of each shard
+     * @throws IOException if the server cannot listen on address
+     */
+    public PriorityQueueServer(InetSocketAddress address, int shards,
+                               Supplier<? extends SimplePriorityQueue<Entry>> factory) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("need at least one shard: " + shards);
+        }
+
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        this.handshakes = Selector.open();
+        this.server.register(handshakes, SelectionKey.OP_ACCEPT);
+        this.shards = new Shard[shards];
+
+        for (int i = 0; i < shards; ++i) {
+            this.shards[i] = new Shard(i, factory.get());
+        }
+        for (Shard s : this.shards) {
+            s.thread.start();
+        }
+
+        acceptor = new Thread(this::accept, "PriorityQueueServer-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Return the number of requests served by the given shard so far.
+     */
+    public long getRequestCount(int shard) {
+        return shards[shard].requests;
+    }
+
+    /**
+     * Stop accepting connections, close all connections and stop the
+     * shard threads. The entries in the shards are discarded.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        handshakes.wakeup();
+        server.close();
+
+        for (Shard s : shards) {
+            s.selector.wakeup();
+        }
+        for (Shard s : shards) {
+            try {
+                s.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Accept connections, do the handshake and hand each connection to
+     * the shard it asked for. All of this is non-blocking, so a client
+     * that connects and sends nothing only holds its own connection
+     * until it times out.
+     */
+    private void accept() {
+        try {
+            while (!closed) {
+                handshakes.select(HANDSHAKE_TIMEOUT_MILLIS);
+
+                Iterator<SelectionKey> it = handshakes.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    if (key.isAcceptable()) {
+                        acceptOne();
+                        continue;
+                    }
+
+                    try {
+                        handshake(key);
+                    } catch (IOException e) {
+                        key.cancel();
+                        closeQuietly(key.channel());
+                    }
+                }
+
+                long now = System.nanoTime();
+                for (SelectionKey key : handshakes.keys()) {
+                    Handshake h = (Handshake) key.attachment();
+                    if (h != null && key.isValid() && now - h.deadline > 0) {
+                        key.cancel();
+                        closeQuietly(key.channel());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the selector failed; stop accepting
+        } finally {
+            for (SelectionKey key : handshakes.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(handshakes);
+        }
+    }
+
+    private void acceptOne() {
+        SocketChannel ch = null;
+
+        try {
+            ch = server.accept();
+            if (ch == null) {
+                return;
+            }
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.configureBlocking(false);
+            ch.register(handshakes, SelectionKey.OP_READ, new Handshake());
+        } catch (IOException e) {
+            if (ch != null) {
+                closeQuietly(ch);
+            }
+        }
+    }
+
+    /**
+     * Read the shard index, write the number of shards, and once that
+     * is sent hand the connection to the shard.
+     */
+    private void handshake(SelectionKey key) throws IOException {
+        SocketChannel ch = (SocketChannel) key.channel();
+        Handshake h = (Handshake) key.attachment();
+
+        if (h.shard < 0) {
+            if (ch.read(h.buffer) < 0) {
+                throw new IOException("connection closed during handshake");
+            }
+            if (h.buffer.hasRemaining()) {
+                return;
+            }
+
+            int shard = h.buffer.getInt(0);
+            if (shard < 0 || shard >= shards.length) {
+                throw new IOException("no shard " + shard);
+            }
+
+            h.shard = shard;
+            h.buffer.clear();
+            h.buffer.putInt(shards.length).flip();
+        }
+
+        ch.write(h.buffer);
+        if (h.buffer.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+
+        key.cancel();
+        shards[h.shard].adopt(ch);
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+    }
+
+    /**
+     * The state of a connection during the handshake.
+     */
+    private static final class Handshake {
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+        final long deadline = System.nanoTime() + HANDSHAKE_TIMEOUT_MILLIS * 1_000_000L;
+
+        /**
+         * The shard asked for, or -1 until it is read.
+         */
+        int shard = -1;
+    }
+
+    /**
+     * The buffers of one connection.
+     */
+    private static final class Connection {
+        ByteBuffer in = ByteBuffer.allocate(64 << 10);
+        ByteBuffer out = ByteBuffer.allocate(64 << 10);
+
+        /**
+         * Make room for n more bytes in out (which is in write mode).
+         */
+        void reserve(int n) {
+            if (out.remaining() < n) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * out.capacity(), out.position() + n));
+                out.flip();
+                grown.put(out);
+                out = grown;
+            }
+        }
+    }
+
+    /**
+     * A shard: a queue and the thread serving all connections to it.
+     */
+    private final class Shard implements Runnable {
+        final SimplePriorityQueue<Entry> queue;
+        final Selector selector;
+        final Thread thread;
+        final ConcurrentLinkedQueue<SocketChannel> adopted = new ConcurrentLinkedQueue<SocketChannel>();
+
+        /**
+         * Written only by the shard thread.
+         */
+        volatile long requests = 0;
+
+        Shard(int index, SimplePriorityQueue<Entry> queue) throws IOException {
+            this.queue = queue;
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "PriorityQueueServer-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void adopt(SocketChannel ch) {
+            adopted.add(ch);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+
+                    for (SocketChannel ch; (ch = adopted.poll()) != null; ) {
+                        try {
+                            ch.register(selector, SelectionKey.OP_READ, new Connection());
+                        } catch (ClosedChannelException e) {
+                            // the client is gone already
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+
+                        // a failure serving one connection closes that
+                        // connection only, never the shard
+                        try {
+                            serve(key);
+                        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                            key.cancel();
+                            closeQuietly(key.channel());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // the selector failed; fall through and shut the shard down
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                for (SocketChannel ch; (ch = adopted.poll()) != null; ) {
+                    closeQuietly(ch);
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        /**
+         * Read and answer whatever requests have arrived on a
+         * connection, and send whatever responses fit.
+         */
+        private void serve(SelectionKey key) throws IOException {
+            SocketChannel ch = (SocketChannel) key.channel();
+            Connection c = (Connection) key.attachment();
+
+            if (key.isReadable() && ch.read(c.in) < 0) {
+                throw new IOException("connection closed");
+            }
+
+            // answer the complete requests, send the responses, and
+            // repeat if requests were held back because too many
+            // responses were waiting and sending has made room
+            boolean more;
+            do {
+                more = answerAll(c);
+
+                if (c.out.position() > 0) {
+                    c.out.flip();
+                    ch.write(c.out);
+                    c.out.compact();
+                }
+            } while (more && c.out.position() <= MAX_PENDING_OUTPUT);
+
+            int ops = (c.out.position() > MAX_PENDING_OUTPUT) ? 0 : SelectionKey.OP_READ;
+            if (c.out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * Answer the complete requests in c.in, stopping early if more
+         * than <code>MAX_PENDING_OUTPUT</code> bytes of responses are
+         * waiting. Return true if it stopped early.
+         */
+        private boolean answerAll(Connection c) throws IOException {
+            boolean stopped = false;
+            int pending = 0;
+
+            c.in.flip();
+            while (c.in.remaining() >= 4) {
+                int length = c.in.getInt(c.in.position());
+                if (length < 1 || length > MAX_FRAME) {
+                    throw new IOException("bad frame length " + length);
+                }
+                if (c.in.remaining() < 4 + length) {
+                    pending = 4 + length;
+                    break;
+                }
+                if (c.out.position() > MAX_PENDING_OUTPUT) {
+                    stopped = true;
+                    break;
+                }
+
+                ByteBuffer frame = c.in.slice(c.in.position() + 4, length);
+                c.in.position(c.in.position() + 4 + length);
+                answer(frame, c);
+            }
+            c.in.compact();
+
+            // make room for a frame larger than the buffer
+            if (pending > c.in.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(pending);
+                c.in.flip();
+                grown.put(c.in);
+                c.in = grown;
+            }
+
+            return stopped;
+        }
+
+        /**
+         * Carry out one request and append its response to c.out.
+         */
+        private void answer(ByteBuffer req, Connection c) {
+            requests = requests + 1;
+            int start = c.out.position();
+
+            c.reserve(5);
+            c.out.position(start + 4);
+
+            try {
+                byte op = req.get();
+
+                switch (op) {
+                case INSERT: {
+                    int count = req.getInt();
+                    if (count < 0) {
+                        throw new IllegalArgumentException("bad entry count " + count);
+                    }
+                    for (int i = 0; i < count; ++i) {
+                        long k = req.getLong();
+                        // check the length against the frame before
+                        // allocating, so a bad one cannot exhaust memory
+                        int length = req.getInt();
+                        if (length < 0 || length > req.remaining()) {
+                            throw new IllegalArgumentException("bad payload length " + length);
+                        }
+                        byte[] payload = new byte[length];
+                        req.get(payload);
+                        queue.insert(k, new Entry(k, payload));
+                    }
+                    c.reserve(5);
+                    c.out.put(OK).putInt(queue.size());
+                    break;
+                }
+                case REMOVE_MIN: {
+                    int max = req.getInt();
+                    c.reserve(5);
+                    c.out.put(OK);
+                    int countAt = c.out.position();
+                    c.out.putInt(0);
+
+                    // stop before the frame would exceed MAX_FRAME,
+                    // but always send one entry, which fits since
+                    // its payload came in an INSERT frame
+                    int count = 0;
+                    while (count < max && !queue.isEmpty()) {
+                        Entry e = queue.min();
+                        int length = c.out.position() - start - 4 + 12 + e.payload.length;
+                        if (count > 0 && length > MAX_FRAME) {
+                            break;
+                        }
+
+                        queue.removeMin();
+                        c.reserve(12 + e.payload.length);
+                        c.out.putLong(e.key).putInt(e.payload.length).put(e.payload);
+                        ++count;
+                    }
+                    c.out.putInt(countAt, count);
+                    break;
+                }
+                case MIN: {
+                    Entry e = queue.min();
+                    c.reserve(10);
+                    c.out.put(OK);
+                    if (e == null) {
+                        c.out.put((byte) 0);
+                    } else {
+                        c.out.put((byte) 1).putLong(e.key);
+                    }
+                    break;
+                }
+                case SIZE:
+                    c.reserve(5);
+                    c.out.put(OK).putInt(queue.size());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown operation " + op);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // a malformed request, or a priority the queue rejects
+                byte[] message = String.valueOf(e.getMessage() != null ? e.getMessage() : e).getBytes(StandardCharsets.UTF_8);
+                c.out.position(start + 4);
+                c.reserve(1 + message.length);
+                c.out.put(ERROR).put(message);
+            }
+
+            c.out.putInt(start, c.out.position() - start - 4);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * <p>Benchmark suite for the <code>SimplePriorityQueue</code>
+ * implementations, replacing the single timed loop of the former
+ * <code>performChecker</code>. Every combination of implementation,
+ * operation, size and key distribution is measured separately, after
+ * warmup iterations that let the JIT compiler reach a steady state.
+ * By default each combination runs in a freshly forked JVM (with the
+ * same JVM options as this one), so that profile pollution from one
+ * implementation cannot slow down the next.</p>
+ *
+ * <p>Operations:</p>
+ * <ul>
+ * <li><code>insert</code>: insert n entries into an empty queue;</li>
+ * <li><code>removeMin</code>: remove all entries from a queue of size
+ * n;</li>
+ * <li><code>hold</code>: the classic hold model; n times, remove the
+ * minimum and re-insert it with its priority increased by a random
+ * amount, keeping the size at n;</li>
+ * <li><code>bulk</code>: insert n entries, then remove them all.</li>
+ * </ul>
+ *
+ * <p>Key distributions: <code>ascending</code>,
+ * <code>descending</code>, <code>random</code> and
+ * <code>duplicates</code> (random keys from n / 100 distinct values).
+ * Note that an <code>AVLPriorityQueue</code> and a
+ * <code>VebPriorityQueue</code> keep only one entry per priority, so
+ * with duplicate keys they end up holding fewer entries.</p>
+ *
+ * <p>For each combination the mean and standard deviation of the time
+ * per operation is reported, together with the number of bytes
+ * allocated per operation and the allocation rate, as measured by the
+ * JVM's per-thread allocation counter.</p>
+ *
+ * <p>With <code>-histograms dir</code>, one further iteration times
+ * every queue operation individually with a <code>RunTimer</code>,
+ * prints the p50, p99, p99.9 and maximum operation latency (which
+ * shows spikes such as the array copy when a heap grows), and writes
+ * the <code>LatencyHistogram</code> to a file in dir named after the
+ * combination.</p>
+ *
+ * <p>Usage: <code>java QueueBenchmark [options]</code>, with options
+ * <code>-impl a,b</code>, <code>-op a,b</code>, <code>-size
+ * 1000,1000000</code>, <code>-dist a,b</code>, <code>-warmup
+ * k</code>, <code>-iterations k</code>, <code>-histograms dir</code>
+ * and <code>-nofork</code>.
+ * Sizes up to 10^8 are supported given a large enough heap
+ * (<code>-Xmx</code>).</p>
+ */
+
+public class QueueBenchmark {
+
+    /**
+     * The implementations under test, by name.
+     */
+    static final Map<String, Supplier<SimplePriorityQueue<Entry>>> IMPLEMENTATIONS =
+        new LinkedHashMap<String, Supplier<SimplePriorityQueue<Entry>>>();
+
+    static {
+        IMPLEMENTATIONS.put("heap", HeapPriorityQueue::new);
+        IMPLEMENTATIONS.put("segmented", SegmentedHeapPriorityQueue::new);
+        IMPLEMENTATIONS.put("buffered", () -> new HeapPriorityQueue<Entry>(ArrayBinaryHeap.DEFAULT_SIZE,
+                                                                           ArrayBinaryHeap.DEFAULT_GROWTH_FACTOR, true));
+        IMPLEMENTATIONS.put("avl", AVLPriorityQueue::new);
+        IMPLEMENTATIONS.put("bplus", () -> new AVLPriorityQueue<Entry>(new BPlusTree<>()));
+        IMPLEMENTATIONS.put("radix", RadixHeap::new);
+        IMPLEMENTATIONS.put("veb", VebPriorityQueue::new);
+        IMPLEMENTATIONS.put("bucket", BucketPriorityQueue::new);
+        IMPLEMENTATIONS.put("adaptive", AdaptivePriorityQueue::new);
+    }
+
+    static final List<String> OPERATIONS = Arrays.asList("insert", "removeMin", "hold", "bulk");
+    static final List<String> DISTRIBUTIONS = Arrays.asList("ascending", "descending", "random", "duplicates");
+
+    public static void main(String[] args) throws Exception {
+        List<String> impls = new ArrayList<String>(IMPLEMENTATIONS.keySet());
+        List<String> ops = OPERATIONS;
+        List<String> dists = DISTRIBUTIONS;
+        List<String> sizes = Arrays.asList("1000", "100000", "1000000");
+        int warmup = 5;
+        int iterations = 10;
+        boolean fork = true;
+        String histograms = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "-impl": impls = Arrays.asList(args[++i].split(",")); break;
+            case "-op": ops = Arrays.asList(args[++i].split(",")); break;
+            case "-dist": dists = Arrays.asList(args[++i].split(",")); break;
+            case "-size": sizes = Arrays.asList(args[++i].split(",")); break;
+            case "-warmup": warmup = Integer.parseInt(args[++i]); break;
+            case "-iterations": iterations = Integer.parseInt(args[++i]); break;
+            case "-nofork": fork = false; break;
+            case "-histograms": histograms = args[++i]; break;
+            case "-single":
+                // run one combination in this JVM (used by forked runs)
+                System.out.println(run(args[i + 1], args[i + 2], Integer.parseInt(args[i + 3]),
+                                       args[i + 4], warmup, iterations, histograms));
+                return;
+            default:
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        System.out.printf("%-8s %-10s %10s %-11s %12s %10s %10s %10s%n",
+                          "impl", "op", "size", "keys", "ns/op", "+-", "B/op", "MB/s");
+
+        for (String impl : impls) {
+            for (String op : ops) {
+                for (String size : sizes) {
+                    for (String dist : dists) {
+                        String line = fork
+                            ? runForked(impl, op, size, dist, warmup, iterations, histograms)
+                            : run(impl, op, Integer.parseInt(size), dist, warmup, iterations, histograms);
+                        System.out.println(line);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The element type used in the benchmark: a mutable holder of its
+     * own priority, so that the hold model can re-insert a removed
+     * entry without allocating.
+     */
+    static final class Entry {
+        long key;
+
+        Entry(long key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Generate n keys with the given distribution.
+     */
+    static long[] keys(int n, String dist, Random rand) {
+        long[] keys = new long[n];
+
+        for (int i = 0; i < n; ++i) {
+            switch (dist) {
+            case "ascending": keys[i] = i; break;
+            case "descending": keys[i] = n - i; break;
+            case "random": keys[i] = rand.nextLong() >>> 2; break;
+            case "duplicates": keys[i] = rand.nextInt(Math.max(1, n / 100)); break;
+            default: throw new IllegalArgumentException("unknown key distribution " + dist);
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Measure one combination in this JVM, returning a formatted
+     * result line, followed by a latency summary if histograms (a
+     * directory) is not null.
+     */
+    static String run(String impl, String op, int n, String dist, int warmup, int iterations,
+                      String histograms) throws IOException {
+        Supplier<SimplePriorityQueue<Entry>> factory = IMPLEMENTATIONS.get(impl);
+        if (factory == null) {
+            throw new IllegalArgumentException("unknown implementation " + impl);
+        }
+        if (!OPERATIONS.contains(op)) {
+            throw new IllegalArgumentException("unknown operation " + op);
+        }
+
+        Random rand = new Random(211);
+        long[] keys = keys(n, dist, rand);
+        long[] increments = new long[n];
+        Entry[] entries = new Entry[n];
+
+        for (int i = 0; i < n; ++i) {
+            increments[i] = 1 + rand.nextInt(Math.max(1, n));
+            entries[i] = new Entry(keys[i]);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        double[] nanosPerOp = new double[iterations];
+        double bytesPerOp = 0;
+        double mbPerSec = 0;
+
+        for (int it = 0; it < warmup + iterations; ++it) {
+            for (int i = 0; i < n; ++i) {
+                entries[i].key = keys[i];
+            }
+
+            SimplePriorityQueue<Entry> q = factory.get();
+            if (!op.equals("insert") && !op.equals("bulk")) {
+                for (int i = 0; i < n; ++i) {
+                    q.insert(keys[i], entries[i]);
+                }
+            }
+
+            long bytesBefore = allocatedBytes(threads);
+            long start = System.nanoTime();
+            long ops = iteration(q, op, keys, increments, entries);
+            long elapsed = System.nanoTime() - start;
+            long bytes = allocatedBytes(threads) - bytesBefore;
+
+            if (it >= warmup) {
+                nanosPerOp[it - warmup] = (double) elapsed / ops;
+                bytesPerOp += (double) bytes / ops / iterations;
+                mbPerSec += bytes / 1e6 / (elapsed / 1e9) / iterations;
+            }
+        }
+
+        double mean = 0;
+        for (double x : nanosPerOp) {
+            mean += x / iterations;
+        }
+
+        double var = 0;
+        for (double x : nanosPerOp) {
+            var += (x - mean) * (x - mean) / Math.max(1, iterations - 1);
+        }
+
+        String line = String.format("%-8s %-10s %10d %-11s %12.1f %10.1f %10.1f %10.1f",
+                                    impl, op, n, dist, mean, Math.sqrt(var), bytesPerOp, mbPerSec);
+
+        if (histograms != null) {
+            for (int i = 0; i < n; ++i) {
+                entries[i].key = keys[i];
+            }
+
+            SimplePriorityQueue<Entry> q = factory.get();
+            if (!op.equals("insert") && !op.equals("bulk")) {
+                for (int i = 0; i < n; ++i) {
+                    q.insert(keys[i], entries[i]);
+                }
+            }
+
+            LatencyHistogram h = latencies(q, op, keys, increments, entries);
+            Path file = Paths.get(histograms, impl + "-" + op + "-" + n + "-" + dist + ".hist");
+            h.writeTo(file);
+            line += String.format("%n    latency (ns): p50=%d p99=%d p99.9=%d max=%d -> %s",
+                                  h.getValueAtPercentile(50), h.getValueAtPercentile(99),
+                                  h.getValueAtPercentile(99.9), h.getMax(), file);
+        }
+
+        return line;
+    }
+
+    /**
+     * Perform op on q as in <code>iteration</code>, timing every queue
+     * operation individually, and return the histogram of operation
+     * times.
+     */
+    static LatencyHistogram latencies(SimplePriorityQueue<Entry> q, String op, long[] keys,
+                                      long[] increments, Entry[] entries) {
+        RunTimer timer = new RunTimer();
+        int n = keys.length;
+
+        if (op.equals("insert") || op.equals("bulk")) {
+            for (int i = 0; i < n; ++i) {
+                timer.start();
+                q.insert(keys[i], entries[i]);
+                timer.stop();
+            }
+        }
+
+        if (op.equals("hold")) {
+            for (int i = 0; i < n; ++i) {
+                timer.start();
+                Entry e = q.removeMin();
+                timer.stop();
+                e.key += increments[i];
+                timer.start();
+                q.insert(e.key, e);
+                timer.stop();
+            }
+        }
+
+        if (op.equals("removeMin") || op.equals("bulk")) {
+            while (!q.isEmpty()) {
+                timer.start();
+                q.removeMin();
+                timer.stop();
+            }
+        }
+
+        return timer.getHistogram();
+    }
+
+    /**
+     * Perform one timed iteration of op on q, returning the number of
+     * queue operations performed.
+     */
+    static long iteration(SimplePriorityQueue<Entry> q, String op, long[] keys, long[] increments,
+                          Entry[] entries) {
+        int n = keys.length;
+        long ops = 0;
+
+        switch (op) {
+        case "insert":
+            for (int i = 0; i < n; ++i) {
+                q.insert(keys[i], entries[i]);
+            }
+            ops = n;
+            break;
+        case "removeMin":
+            while (q.removeMin() != null) {
+                ++ops;
+            }
+            break;
+        case "hold":
+            for (int i = 0; i < n; ++i) {
+                Entry e = q.removeMin();
+                e.key += increments[i];
+                q.insert(e.key, e);
+            }
+            ops = 2L * n;
+            break;
+        case "bulk":
+            for (int i = 0; i < n; ++i) {
+                q.insert(keys[i], entries[i]);
+            }
+            ops = n;
+            while (q.removeMin() != null) {
+                ++ops;
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown operation " + op);
+        }
+
+        return Math.max(1, ops);
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Measure one combination in a new JVM, returning its result line.
+     */
+    static String runForked(String impl, String op, String size, String dist, int warmup, int iterations,
+                            String histograms) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(QueueBenchmark.class.getName());
+        cmd.add("-warmup");
+        cmd.add(Integer.toString(warmup));
+        cmd.add("-iterations");
+        cmd.add(Integer.toString(iterations));
+        if (histograms != null) {
+            cmd.add("-histograms");
+            cmd.add(histograms);
+        }
+        cmd.add("-single");
+        cmd.add(impl);
+        cmd.add(op);
+        cmd.add(size);
+        cmd.add(dist);
+
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        StringBuilder out = new StringBuilder();
+
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (out.length() > 0) {
+                    out.append(System.lineSeparator());
+                }
+                out.append(line);
+            }
+        }
+
+        if (p.waitFor() != 0) {
+            throw new IllegalStateException("forked benchmark failed: " + out);
+        }
+
+        return out.toString();
+    }
+}
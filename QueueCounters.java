@@ -0,0 +1,38 @@
+/**
+ * <p>Internal operation counters of a priority queue: the number of
+ * priority comparisons, tree rotations and array growths performed
+ * since the queue was created.</p>
+ *
+ * <p>The counters are only maintained when the JVM is started with
+ * <code>-Dpq.counters=true</code>. Since <code>ENABLED</code> is a
+ * constant, the JIT compiler removes the counting code entirely when
+ * the property is not set, and every counter then stays
+ * <code>0</code>.</p>
+ *
+ * @see InstrumentedPriorityQueue
+ */
+
+interface QueueCounters {
+
+    /**
+     * Whether internal counters are maintained, as given by the
+     * system property <code>pq.counters</code>.
+     */
+    boolean ENABLED = Boolean.getBoolean("pq.counters");
+
+    /**
+     * @return the number of comparisons of priorities
+     */
+    long getComparisons();
+
+    /**
+     * @return the number of single rotations performed to rebalance
+     * a tree (a double rotation counts as two)
+     */
+    long getRotations();
+
+    /**
+     * @return the number of times an array was grown
+     */
+    long getGrowths();
+}
@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Save and restore priority queues using a compact binary snapshot
+ * format, so that a large queue can be restored without replaying
+ * every insertion.</p>
+ *
+ * <p>A snapshot file consists of three sections:</p>
+ * <ul>
+ * <li>a 32 byte header: the magic number <code>MAGIC</code>, a format
+ * version (2 bytes), the order of the entries (1 byte;
+ * <code>HEAP_ORDER</code> or <code>SORTED_ORDER</code>), one unused
+ * byte, the number of entries <code>n</code> (8 bytes), the length of
+ * the payload column in bytes (8 bytes) and 8 reserved bytes;</li>
+ * <li>the key column: the <code>n</code> priorities as 8 byte
+ * values;</li>
+ * <li>the payload column: the <code>n</code> elements, in the same
+ * order, as written by a <code>PayloadCodec</code>.</li>
+ * </ul>
+ * <p>All numbers are little-endian. A <code>HeapPriorityQueue</code>
+ * is saved in the array order of its heap, so that it is restored
+ * without re-heapifying. An <code>AVLPriorityQueue</code> is saved in
+ * increasing order of priority, so that its tree can be bulk-loaded
+ * in O(n) time.</p>
+ *
+ * <p>Files are written through a <code>FileChannel</code> and read by
+ * memory-mapping them.</p>
+ *
+ * @see PayloadCodec
+ */
+
+public final class QueueSnapshot {
+
+    /**
+     * The first four bytes of every snapshot file ("PQS1").
+     */
+    public static final int MAGIC = 0x50515331;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Entry order of a snapshot of a <code>HeapPriorityQueue</code>.
+     */
+    public static final byte HEAP_ORDER = 0;
+
+    /**
+     * Entry order of a snapshot of an <code>AVLPriorityQueue</code>.
+     */
+    public static final byte SORTED_ORDER = 1;
+
+    static final int HEADER_BYTES = 32;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private QueueSnapshot() {
+    }
+
+    /**
+     * <p>Save the contents of a <code>HeapPriorityQueue</code> to a
+     * file, in the array order of its heap.</p>
+     *
+     * @param q the queue to be saved
+     * @param file the file to be (over)written
+     * @param codec the codec used to encode the elements
+     * @throws IOException if the file cannot be written
+     */
+    public static <E> void write(HeapPriorityQueue<E> q, Path file, PayloadCodec<E> codec)
+        throws IOException {
+        int n = q.size();
+        long[] keys = new long[n];
+        List<E> vals = new ArrayList<E>(n);
+
+        for (int i = 0; i < n; ++i) {
+            keys[i] = q.keyAt(i);
+            vals.add(q.valueAt(i));
+        }
+
+        write(file, HEAP_ORDER, keys, vals, codec);
+    }
+
+    /**
+     * <p>Save the contents of an <code>AVLPriorityQueue</code> to a
+     * file, in increasing order of priority.</p>
+     *
+     * @param q the queue to be saved
+     * @param file the file to be (over)written
+     * @param codec the codec used to encode the elements
+     * @throws IOException if the file cannot be written
+     */
+    public static <E> void write(AVLPriorityQueue<E> q, Path file, PayloadCodec<E> codec)
+        throws IOException {
+        int n = q.size();
+        long[] keys = new long[n];
+        List<E> vals = new ArrayList<E>(n);
+
+        q.exportSorted(keys, vals);
+
+        write(file, SORTED_ORDER, keys, vals, codec);
+    }
+
+    /**
+     * <p>Restore a <code>HeapPriorityQueue</code> from a snapshot
+     * written by <code>write(HeapPriorityQueue, ...)</code>.</p>
+     *
+     * @param file the snapshot file
+     * @param codec the codec used to decode the elements
+     * @return the restored queue
+     * @throws IOException if the file cannot be read or is not a heap
+     * snapshot
+     */
+    public static <E> HeapPriorityQueue<E> readHeap(Path file, PayloadCodec<E> codec)
+        throws IOException {
+        Columns<E> c = read(file, HEAP_ORDER, codec);
+        HeapPriorityQueue<E> q = new HeapPriorityQueue<E>();
+
+        q.loadHeapOrder(c.keys, c.vals);
+
+        return q;
+    }
+
+    /**
+     * <p>Restore an <code>AVLPriorityQueue</code> from a snapshot
+     * written by <code>write(AVLPriorityQueue, ...)</code>.</p>
+     *
+     * @param file the snapshot file
+     * @param codec the codec used to decode the elements
+     * @return the restored queue
+     * @throws IOException if the file cannot be read or is not a tree
+     * snapshot
+     */
+    public static <E> AVLPriorityQueue<E> readTree(Path file, PayloadCodec<E> codec)
+        throws IOException {
+        Columns<E> c = read(file, SORTED_ORDER, codec);
+        AVLPriorityQueue<E> q = new AVLPriorityQueue<E>();
+
+        q.loadSorted(c.keys, c.vals);
+
+        return q;
+    }
+
+    /**
+     * The decoded key and payload columns of a snapshot.
+     */
+    static final class Columns<E> {
+        final long[] keys;
+        final List<E> vals;
+
+        Columns(long[] keys, List<E> vals) {
+            this.keys = keys;
+            this.vals = vals;
+        }
+    }
+
+    static <E> void write(Path file, byte order, long[] keys, List<E> vals, PayloadCodec<E> codec)
+        throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            // the payload length is filled in once it is known
+            ch.position(HEADER_BYTES);
+
+            for (long k : keys) {
+                if (buf.remaining() < Long.BYTES) {
+                    drain(ch, buf);
+                }
+                buf.putLong(k);
+            }
+
+            long payloadStart = ch.position() + buf.position();
+
+            for (E x : vals) {
+                buf = encode(ch, buf, codec, x);
+            }
+
+            drain(ch, buf);
+            long payloadBytes = ch.position() - payloadStart;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.put(order);
+            header.put((byte) 0);
+            header.putLong(keys.length);
+            header.putLong(payloadBytes);
+            header.putLong(0);
+            header.flip();
+
+            while (header.hasRemaining()) {
+                ch.write(header, HEADER_BYTES - header.remaining());
+            }
+
+            ch.force(true);
+        }
+    }
+
+    static <E> Columns<E> read(Path file, byte order, PayloadCodec<E> codec) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) {
+                throw new IOException(file + " is too short to be a snapshot");
+            }
+
+            ByteBuffer header = map(ch, 0, HEADER_BYTES);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a snapshot file");
+            }
+            if (header.getShort() != VERSION) {
+                throw new IOException(file + " has an unsupported snapshot version");
+            }
+            if (header.get() != order) {
+                throw new IOException(file + " does not store entries in the expected order");
+            }
+            header.get();
+
+            long n = header.getLong();
+            long payloadBytes = header.getLong();
+            long keyBytes = n * Long.BYTES;
+
+            if (n < 0 || n > Integer.MAX_VALUE || HEADER_BYTES + keyBytes + payloadBytes != ch.size()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            long[] keys = new long[(int) n];
+            map(ch, HEADER_BYTES, keyBytes).asLongBuffer().get(keys);
+
+            List<E> vals = new ArrayList<E>((int) n);
+            ByteBuffer payload = map(ch, HEADER_BYTES + keyBytes, payloadBytes);
+
+            for (int i = 0; i < n; ++i) {
+                vals.add(codec.decode(payload));
+            }
+
+            return new Columns<E>(keys, vals);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel ch, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("snapshot section of " + length + " bytes is too large to map");
+        }
+
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buf;
+    }
+
+    /**
+     * Write the contents of buf to the channel and clear it.
+     */
+    static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Encode x into buf, draining buf to the channel first if x does
+     * not fit, and replacing buf with a larger buffer if x does not
+     * fit into an empty one. Return the buffer to be used from now on.
+     */
+    static <E> ByteBuffer encode(FileChannel ch, ByteBuffer buf, PayloadCodec<E> codec, E x)
+        throws IOException {
+        while (true) {
+            int mark = buf.position();
+
+            try {
+                codec.encode(x, buf);
+                return buf;
+            } catch (BufferOverflowException e) {
+                buf.position(mark);
+            }
+
+            if (mark > 0) {
+                drain(ch, buf);
+            } else {
+                buf = ByteBuffer.allocateDirect(2 * buf.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A radix heap: a priority queue for <em>monotone</em> workloads,
+ * in which no priority smaller than the most recently removed minimum
+ * is ever inserted (as in Dijkstra's algorithm or an event
+ * simulation). Note that <code>min()</code> also counts as removing
+ * the minimum here: after it returns, no smaller priority may be
+ * inserted. Entries are kept in 65 unsorted buckets according to
+ * the highest bit in which their priority differs from
+ * <code>last</code>, the most recently removed minimum: bucket 0 holds
+ * the priorities equal to last, and bucket i &gt; 0 those whose
+ * highest differing bit is bit i-1.</p>
+ *
+ * <p>An insertion takes O(1) time. When bucket 0 is empty,
+ * <code>removeMin</code> finds the first non-empty bucket, makes its
+ * minimum the new <code>last</code> and redistributes the bucket into
+ * lower buckets; since an entry only ever moves to lower buckets, this
+ * costs O(1) amortized per entry per bit of the priority range,
+ * without comparing entries with one another. Keys and elements are
+ * stored in primitive and object arrays, so an insertion allocates
+ * only when a bucket grows.</p>
+ *
+ * <p>Entries with equal priorities may be removed in any order.</p>
+ *
+ * @see AdaptivePriorityQueue
+ */
+
+public class RadixHeap<E> implements SimplePriorityQueue<E> {
+    private static final int BUCKETS = 65;
+    private static final int INITIAL_BUCKET_SIZE = 8;
+
+    private final long[][] keys = new long[BUCKETS][];
+    private final Object[][] vals = new Object[BUCKETS][];
+    private final int[] sizes = new int[BUCKETS];
+    private int size = 0;
+
+    /**
+     * The most recently removed minimum; every entry has a priority
+     * of at least last.
+     */
+    private long last = Long.MIN_VALUE;
+
+    public RadixHeap() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            keys[i] = new long[INITIAL_BUCKET_SIZE];
+            vals[i] = new Object[INITIAL_BUCKET_SIZE];
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return the smallest priority that may currently be inserted:
+     * the most recently removed (or, by <code>min()</code>, returned)
+     * minimum, or <code>Long.MIN_VALUE</code> if there is none.
+     *
+     * @return the lower bound on inserted priorities
+     */
+    public long lastRemoved() {
+        return last;
+    }
+
+    /**
+     * Insert x with priority k.
+     *
+     * @param k the priority, which must be at least
+     * <code>lastRemoved()</code>
+     * @param x the element
+     * @throws IllegalArgumentException if k is smaller than
+     * <code>lastRemoved()</code>
+     */
+    @Override
+    public void insert(long k, E x) {
+        if (k < last) {
+            throw new IllegalArgumentException("priority " + k + " is smaller than the last minimum " + last);
+        }
+
+        add(bucket(k), k, x);
+        ++size;
+    }
+
+    @Override
+    public E min() {
+        if (size == 0) {
+            return null;
+        }
+
+        refill();
+        return element(0, sizes[0] - 1);
+    }
+
+    @Override
+    public E removeMin() {
+        if (size == 0) {
+            return null;
+        }
+
+        refill();
+
+        int j = --sizes[0];
+        E x = element(0, j);
+        vals[0][j] = null;
+        --size;
+
+        return x;
+    }
+
+    /**
+     * Return the smallest priority in the heap.
+     *
+     * @return the smallest priority
+     * @throws NoSuchElementException if the heap is empty
+     */
+    long minKey() {
+        if (size == 0) {
+            throw new NoSuchElementException("heap is empty");
+        }
+
+        refill();
+        return last;
+    }
+
+    /**
+     * Copy every entry, in no particular order, to outKeys (which
+     * must have length at least <code>size()</code>) and outVals.
+     */
+    @SuppressWarnings("unchecked")
+    void export(long[] outKeys, List<E> outVals) {
+        int n = 0;
+
+        for (int i = 0; i < BUCKETS; ++i) {
+            for (int j = 0; j < sizes[i]; ++j) {
+                outKeys[n++] = keys[i][j];
+                outVals.add((E) vals[i][j]);
+            }
+        }
+    }
+
+    /**
+     * Make sure bucket 0 is not empty, by moving last up to the
+     * smallest priority in the first non-empty bucket and
+     * redistributing that bucket. The heap must not be empty.
+     */
+    private void refill() {
+        if (sizes[0] > 0) {
+            return;
+        }
+
+        int i = 1;
+        while (sizes[i] == 0) {
+            ++i;
+        }
+
+        long[] k = keys[i];
+        Object[] v = vals[i];
+        int n = sizes[i];
+        long min = k[0];
+
+        for (int j = 1; j < n; ++j) {
+            if (k[j] < min) {
+                min = k[j];
+            }
+        }
+
+        last = min;
+        sizes[i] = 0;
+
+        // every entry of bucket i now differs from last in a lower bit
+        for (int j = 0; j < n; ++j) {
+            add(bucket(k[j]), k[j], v[j]);
+            v[j] = null;
+        }
+    }
+
+    /**
+     * Return the bucket of priority k relative to last: 0 if k equals
+     * last, and otherwise one more than the index of the highest bit
+     * in which they differ.
+     */
+    private int bucket(long k) {
+        return 64 - Long.numberOfLeadingZeros(k ^ last);
+    }
+
+    private void add(int i, long k, Object x) {
+        int n = sizes[i];
+
+        if (n == keys[i].length) {
+            keys[i] = Arrays.copyOf(keys[i], 2 * n);
+            vals[i] = Arrays.copyOf(vals[i], 2 * n);
+        }
+
+        keys[i][n] = k;
+        vals[i][n] = x;
+        sizes[i] = n + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E element(int i, int j) {
+        return (E) vals[i][j];
+    }
+}
@@ -1,4 +1,15 @@
+/**
+ * <p>A stopwatch that accumulates the total time of its start-stop
+ * intervals. Each interval is also recorded in a
+ * <code>LatencyHistogram</code>, so that when a RunTimer is started and
+ * stopped around every operation of a loop, the distribution of
+ * individual operation times (and not only their total) is available
+ * from <code>getHistogram()</code>.</p>
+ *
+ * @see LatencyHistogram
+ */
 public class RunTimer {
+    private final LatencyHistogram histogram = new LatencyHistogram();
     private long start = 0;
     private long end = 0;
     private long elapsed = 0;
@@ -26,23 +37,26 @@ public class RunTimer {
     /**
      * <p>Stop the RunTimer if it is not already stopped. The elapsed
      *time since the previous call to <code>this.start()</code> will
-     *be added to the total elapsed time stored by the RunTimer.  </p>
+     *be added to the total elapsed time stored by the RunTimer, and
+     *recorded in its histogram.  </p>
      */
     public void stop() {
         if (!stopped) {
             end = System.nanoTime();
             elapsed += (end - start);
+            histogram.record(end - start);
             stopped = true;
         }
     }
 
     /**
      * <p>Stop and reset the RunTimer so that the elapsed time is
-     * <code>0</code>.</p>
+     * <code>0</code> and its histogram is empty.</p>
      */
     public void reset() {
         stop();
         elapsed = 0;
+        histogram.reset();
     }
 
     /**
@@ -85,4 +99,39 @@ public class RunTimer {
     public double getElapsedSecs() {
         return (double) getElapsedNanos() / 1_000_000_000;
     }
+
+    /**
+     * <p>Return the histogram of the durations, in nanoseconds, of the
+     * start-stop intervals since the previous <code>reset()</code> (if
+     * any). The histogram is live: it changes as the RunTimer is
+     * used, and can be merged into the histogram of another thread's
+     * RunTimer.</p>
+     *
+     * @return the histogram of interval durations
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * <p>Return the duration of the start-stop interval at the given
+     * percentile, e.g. <code>getPercentileNanos(99.9)</code>.</p>
+     *
+     * @see //getHistogram
+     * @param percentile a percentile between 0 and 100
+     * @return the interval duration at that percentile in nanoseconds
+     */
+    public long getPercentileNanos(double percentile) {
+        return histogram.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * <p>Return the duration of the longest start-stop interval in
+     * nanoseconds.</p>
+     *
+     * @return the longest interval duration in nanoseconds
+     */
+    public long getMaxIntervalNanos() {
+        return histogram.getMax();
+    }
 }
@@ -0,0 +1,243 @@
+/**
+ * <p>A binary min-heap stored in fixed-size segments instead of one
+ * array. Position i of the heap is slot <code>i &amp; mask</code> of
+ * segment <code>i &gt;&gt;&gt; segmentBits</code>, where every segment
+ * has <code>2^segmentBits</code> slots.</p>
+ *
+ * <p>When an <code>ArrayBinaryHeap</code> fills up, its whole array is
+ * copied into a larger one. At 10^7 elements that insert stalls for
+ * milliseconds, and while both arrays are alive the heap takes up to
+ * three times the memory it needs. When a SegmentedBinaryHeap fills
+ * up, it allocates one more segment and copies no elements. The only
+ * copying is of the segment directory when it fills up, and the
+ * directory holds just one reference per segment. So the worst-case
+ * insert time stays flat as the heap grows, and the memory overhead
+ * stays at one segment.</p>
+ *
+ * <p>Removing elements clears the slots they leave. Once the last two
+ * segments are both unused, the last one is released, so the heap
+ * keeps at most one empty segment. A heap whose size moves back and
+ * forth across a segment boundary therefore does not keep allocating
+ * and releasing segments.</p>
+ *
+ * <p>The price is an extra indirection on every access to the heap,
+ * so for heaps that stay small an <code>ArrayBinaryHeap</code> is
+ * slightly faster.</p>
+ *
+ * @see SegmentedHeapPriorityQueue
+ */
+
+public class SegmentedBinaryHeap<E extends Comparable<E>> {
+
+    /**
+     * The default number of slots in a segment is 2^DEFAULT_SEGMENT_BITS
+     * (4096).
+     */
+    public static final int DEFAULT_SEGMENT_BITS = 12;
+
+    private final int segmentBits;
+    private final int mask;
+
+    /**
+     * The segment directory. The segments from 0 to
+     * <code>segmentCount - 1</code> are allocated; the rest of the
+     * directory is null.
+     */
+    private Object[][] segments = new Object[16][];
+    private int segmentCount = 0;
+
+    private int size = 0;
+
+    /**
+     * The number of segments allocated so far (only counted if
+     * <code>QueueCounters.ENABLED</code>).
+     */
+    private long growths = 0;
+
+    /**
+     * Create an empty heap with segments of 2^DEFAULT_SEGMENT_BITS
+     * slots.
+     */
+    public SegmentedBinaryHeap() {
+        this(DEFAULT_SEGMENT_BITS);
+    }
+
+    /**
+     * Create an empty heap with segments of 2^segmentBits slots.
+     *
+     * @param segmentBits the base 2 logarithm of the segment size,
+     * from 1 to 30
+     * @throws IllegalArgumentException if segmentBits is out of range
+     */
+    public SegmentedBinaryHeap(int segmentBits) {
+        if (segmentBits < 1 || segmentBits > 30) {
+            throw new IllegalArgumentException("segment bits must be between 1 and 30: " + segmentBits);
+        }
+
+        this.segmentBits = segmentBits;
+        this.mask = (1 << segmentBits) - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E min() {
+        return (size == 0) ? null : (E) segments[0][0];
+    }
+
+    public void insert(E x) {
+        if (size == Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("heap cannot hold more than " + Integer.MAX_VALUE + " elements");
+        }
+        if ((size >>> segmentBits) == segmentCount) {
+            addSegment();
+        }
+
+        // sift up: move larger parents down until x's position is found
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            E p = get(parent);
+            if (x.compareTo(p) >= 0) {
+                break;
+            }
+            set(i, p);
+            i = parent;
+        }
+        set(i, x);
+    }
+
+    public E removeMin() {
+        if (size == 0) {
+            return null;
+        }
+
+        E min = get(0);
+        E last = get(--size);
+        set(size, null);
+
+        if (size > 0) {
+            siftDown(last);
+        }
+        releaseUnusedSegment();
+
+        return min;
+    }
+
+    /**
+     * Place x, which replaces the root, at its position on the path of
+     * smaller children.
+     */
+    private void siftDown(E x) {
+        int i = 0;
+        int half = size >>> 1;
+
+        while (i < half) {
+            int child = 2 * i + 1;
+            E c = get(child);
+
+            if (child + 1 < size) {
+                E right = get(child + 1);
+                if (right.compareTo(c) < 0) {
+                    ++child;
+                    c = right;
+                }
+            }
+
+            if (x.compareTo(c) <= 0) {
+                break;
+            }
+            set(i, c);
+            i = child;
+        }
+        set(i, x);
+    }
+
+    /**
+     * Return the element at the given position of the heap (not in
+     * priority order).
+     */
+    @SuppressWarnings("unchecked")
+    E get(int position) {
+        return (E) segments[position >>> segmentBits][position & mask];
+    }
+
+    private void set(int position, E x) {
+        segments[position >>> segmentBits][position & mask] = x;
+    }
+
+    /**
+     * Allocate one more segment, first doubling the directory if it is
+     * full.
+     */
+    private void addSegment() {
+        if (segmentCount == segments.length) {
+            Object[][] grown = new Object[2 * segments.length][];
+            System.arraycopy(segments, 0, grown, 0, segmentCount);
+            segments = grown;
+        }
+
+        segments[segmentCount++] = new Object[1 << segmentBits];
+
+        if (QueueCounters.ENABLED) {
+            ++growths;
+        }
+    }
+
+    /**
+     * Release the last segment if it and the one before it are both
+     * unused.
+     */
+    private void releaseUnusedSegment() {
+        if (segmentCount >= 2 && size <= (segmentCount - 2) << segmentBits) {
+            segments[--segmentCount] = null;
+        }
+    }
+
+    /**
+     * Release all unused segments, keeping just enough for the
+     * elements in the heap. The directory is also shrunk to fit.
+     */
+    public void trimToSize() {
+        int needed = (size + mask) >>> segmentBits;
+
+        while (segmentCount > needed) {
+            segments[--segmentCount] = null;
+        }
+
+        Object[][] trimmed = new Object[Math.max(1, segmentCount)][];
+        System.arraycopy(segments, 0, trimmed, 0, segmentCount);
+        segments = trimmed;
+    }
+
+    /**
+     * Return the number of slots in the allocated segments.
+     */
+    public long capacity() {
+        return (long) segmentCount << segmentBits;
+    }
+
+    /**
+     * Return an estimate of the number of bytes retained by the
+     * segments and their directory, not counting the elements
+     * themselves.
+     */
+    public long retainedBytes() {
+        return Footprint.referenceArray(segments.length)
+            + segmentCount * Footprint.referenceArray(1 << segmentBits);
+    }
+
+    /**
+     * Return the number of segments allocated (always 0 unless
+     * <code>QueueCounters.ENABLED</code>).
+     */
+    long growths() {
+        return growths;
+    }
+}
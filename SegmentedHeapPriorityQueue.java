@@ -0,0 +1,119 @@
+/**
+ * <p>A priority queue on a <code>SegmentedBinaryHeap</code>. Unlike a
+ * <code>HeapPriorityQueue</code>, it never copies its contents when
+ * it grows, so the insert latency stays flat however large the queue
+ * gets. This makes it the better choice for queues of millions of
+ * entries with latency targets; for small queues a
+ * <code>HeapPriorityQueue</code> is slightly faster.</p>
+ */
+
+public class SegmentedHeapPriorityQueue<E> implements SimplePriorityQueue<E>, QueueCounters {
+
+    private final SegmentedBinaryHeap<Pair<E>> heap;
+
+    /**
+     * The number of priority comparisons (only counted if
+     * <code>QueueCounters.ENABLED</code>).
+     */
+    private long comparisons = 0;
+
+    public SegmentedHeapPriorityQueue() {
+        heap = new SegmentedBinaryHeap<Pair<E>>();
+    }
+
+    /**
+     * Create a queue whose heap is stored in segments of 2^segmentBits
+     * entries.
+     *
+     * @param segmentBits the base 2 logarithm of the segment size,
+     * from 1 to 30
+     * @throws IllegalArgumentException if segmentBits is out of range
+     */
+    public SegmentedHeapPriorityQueue(int segmentBits) {
+        heap = new SegmentedBinaryHeap<Pair<E>>(segmentBits);
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    @Override
+    public E min() {
+        Pair<E> p = heap.min();
+        return (p == null) ? null : p.val;
+    }
+
+    @Override
+    public void insert(long k, E x) {
+        heap.insert(new Pair<E>(k, x));
+    }
+
+    @Override
+    public E removeMin() {
+        Pair<E> p = heap.removeMin();
+        return (p == null) ? null : p.val;
+    }
+
+    /**
+     * Return the number of slots in the heap's segments.
+     */
+    public long capacity() {
+        return heap.capacity();
+    }
+
+    /**
+     * Release the heap's unused segments.
+     */
+    public void trimToSize() {
+        heap.trimToSize();
+    }
+
+    /**
+     * Return an estimate of the number of bytes retained by the
+     * queue: its heap segments and one entry object per element, but
+     * not the elements themselves.
+     */
+    public long retainedBytes() {
+        return heap.retainedBytes() + (long) heap.size() * Footprint.object(2, Long.BYTES);
+    }
+
+    @Override
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    @Override
+    public long getRotations() {
+        return 0;
+    }
+
+    @Override
+    public long getGrowths() {
+        return heap.growths();
+    }
+
+    private class Pair<E> implements Comparable<Pair<E>> {
+        final E val;
+        final long key;
+
+        Pair(long key, E val) {
+            this.key = key;
+            this.val = val;
+        }
+
+        @Override
+        public int compareTo(Pair<E> p) {
+            if (QueueCounters.ENABLED) {
+                ++comparisons;
+            }
+
+            return Long.compare(key, p.key);
+        }
+    }
+}
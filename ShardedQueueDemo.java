@@ -0,0 +1,141 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Run a <code>PriorityQueueServer</code> on the loopback interface
+ * and measure its throughput with several concurrent
+ * <code>PriorityQueueClient</code>s, for an increasing number of
+ * shards. Each client thread inserts n entries with random priorities
+ * (each payload holding its own priority), and then all threads
+ * remove entries until the queue is empty. The demo checks that every
+ * entry inserted is removed exactly once, with its own payload, and
+ * that each client removes priorities in increasing order when it is
+ * the only client removing (the first run).</p>
+ *
+ * <p>Usage: <code>java ShardedQueueDemo [clients] [n] [shards,...]</code></p>
+ */
+
+public class ShardedQueueDemo {
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int n = (args.length > 1) ? Integer.parseInt(args[1]) : 200_000;
+        String[] shardCounts = (args.length > 2) ? args[2].split(",") : new String[] { "1", "2", "4" };
+
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+        checkOrder(any, n);
+
+        System.out.printf("%6s %8s %14s %14s%n", "shards", "clients", "inserts/s", "removes/s");
+
+        for (String s : shardCounts) {
+            try (PriorityQueueServer server = new PriorityQueueServer(any, Integer.parseInt(s))) {
+                double[] rates = run(server.getAddress(), clients, n);
+                System.out.printf("%6s %8d %14.0f %14.0f%n", s, clients, rates[0], rates[1]);
+            }
+        }
+    }
+
+    /**
+     * With a single client and a prefetch of 1, check that entries
+     * come out in increasing order of priority.
+     */
+    static void checkOrder(InetSocketAddress any, int n) throws Exception {
+        try (PriorityQueueServer server = new PriorityQueueServer(any, 4);
+             PriorityQueueClient q = new PriorityQueueClient(server.getAddress(), 64, 1, null)) {
+            Random rand = new Random(211);
+
+            for (int i = 0; i < n; ++i) {
+                long k = rand.nextLong() >>> 1;
+                q.insert(k, payload(k));
+            }
+
+            long last = -1;
+            for (int i = 0; i < n; ++i) {
+                PriorityQueueServer.Entry e = q.removeMinEntry();
+                if (e == null || e.key < last || ByteBuffer.wrap(e.payload).getLong() != e.key) {
+                    throw new IllegalStateException("wrong entry at removal " + i);
+                }
+                last = e.key;
+            }
+            if (!q.isEmpty()) {
+                throw new IllegalStateException("queue not empty");
+            }
+        }
+
+        System.out.println("single client: " + n + " entries removed in order");
+    }
+
+    /**
+     * Run the clients against the server, returning the insertion and
+     * removal rates.
+     */
+    static double[] run(InetSocketAddress address, int clients, int n) throws Exception {
+        AtomicLong insertedSum = new AtomicLong();
+        AtomicLong removedSum = new AtomicLong();
+        AtomicLong removed = new AtomicLong();
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Throwable> failures = new ArrayList<Throwable>();
+        long[] phaseNanos = new long[1];
+
+        // the removals start when every client has inserted
+        CyclicBarrier barrier = new CyclicBarrier(clients, () -> phaseNanos[0] = System.nanoTime());
+
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; ++c) {
+            final int seed = c;
+            Thread t = new Thread(() -> {
+                try (PriorityQueueClient q = new PriorityQueueClient(address)) {
+                    Random rand = new Random(seed);
+
+                    for (int i = 0; i < n; ++i) {
+                        long k = rand.nextLong() >>> 1;
+                        q.insert(k, payload(k));
+                        insertedSum.addAndGet(k);
+                    }
+                    q.flush();
+                    barrier.await();
+
+                    for (PriorityQueueServer.Entry e; (e = q.removeMinEntry()) != null; ) {
+                        if (ByteBuffer.wrap(e.payload).getLong() != e.key) {
+                            throw new IllegalStateException("payload does not match priority " + e.key);
+                        }
+                        removedSum.addAndGet(e.key);
+                        removed.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+        long end = System.nanoTime();
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("client failed", failures.get(0));
+        }
+        if (removed.get() != (long) clients * n || removedSum.get() != insertedSum.get()) {
+            throw new IllegalStateException("removed " + removed.get() + " of " + (long) clients * n + " entries");
+        }
+
+        long total = (long) clients * n;
+        return new double[] { total / ((phaseNanos[0] - start) / 1e9), total / ((end - phaseNanos[0]) / 1e9) };
+    }
+
+    static byte[] payload(long k) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(k).array();
+    }
+}
@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>A Java Flight Recorder event emitted by an
+ * <code>InstrumentedPriorityQueue</code> for an operation that took at
+ * least the event's threshold (1 ms unless changed in the recording
+ * settings, e.g. <code>SimplePriorityQueue.SlowOperation#threshold=100
+ * us</code>). When no recording has the event enabled,
+ * <code>begin</code>, <code>end</code> and <code>shouldCommit</code>
+ * do nothing and the event object is not allocated once the code is
+ * compiled.</p>
+ */
+
+@Name("SimplePriorityQueue.SlowOperation")
+@Label("Slow Priority Queue Operation")
+@Category("Priority Queues")
+@Description("A priority queue operation that took longer than the threshold")
+@Threshold("1 ms")
+class SlowQueueOperationEvent extends Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Priority")
+    @Description("The priority inserted, or 0 for other operations")
+    long priority;
+
+    @Label("Size")
+    @Description("The size of the queue after the operation")
+    int size;
+}
@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * <p>Replay a trace written by a <code>TracingPriorityQueue</code>
+ * against several priority queue implementations, as fast as possible
+ * and in the recorded order (operations recorded from several threads
+ * are replayed by one thread). For each implementation, the replayer
+ * reports the throughput (the best of several rounds, after a warmup
+ * round), the distribution of operation latencies from a further
+ * round in which every operation is timed, and whether the results of
+ * <code>removeMin</code> and <code>min</code> agree with those of the
+ * first implementation and with the trace.</p>
+ *
+ * <p>Each inserted element is the priority itself, so results can be
+ * compared by value. Note that an <code>AVLPriorityQueue</code> keeps
+ * one element per priority, so it disagrees with the other
+ * implementations on traces that insert a priority that is already in
+ * the queue, and that a <code>RadixHeap</code> only accepts monotone
+ * traces; it is skipped on any other trace.</p>
+ *
+ * <p>Usage: <code>java TraceReplayer trace [impl,...] [rounds]</code>
+ * replays a trace; <code>java TraceReplayer -record trace [n]</code>
+ * records a synthetic trace of n hold-model operations on a
+ * <code>HeapPriorityQueue</code>, for trying the replayer out.</p>
+ *
+ * @see TracingPriorityQueue
+ */
+
+public class TraceReplayer {
+
+    /**
+     * The implementations that can be replayed against, by name.
+     */
+    static final Map<String, Supplier<SimplePriorityQueue<Long>>> IMPLEMENTATIONS =
+        new LinkedHashMap<String, Supplier<SimplePriorityQueue<Long>>>();
+
+    static {
+        IMPLEMENTATIONS.put("heap", HeapPriorityQueue::new);
+        IMPLEMENTATIONS.put("segmented", SegmentedHeapPriorityQueue::new);
+        IMPLEMENTATIONS.put("avl", AVLPriorityQueue::new);
+        IMPLEMENTATIONS.put("bplus", () -> new AVLPriorityQueue<Long>(new BPlusTree<>()));
+        IMPLEMENTATIONS.put("radix", RadixHeap::new);
+        IMPLEMENTATIONS.put("bucket", BucketPriorityQueue::new);
+        IMPLEMENTATIONS.put("adaptive", AdaptivePriorityQueue::new);
+    }
+
+    /**
+     * The result recorded for a <code>removeMin</code> or
+     * <code>min</code> that returned null.
+     */
+    static final long NULL = Long.MIN_VALUE;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: java TraceReplayer trace [impl,...] [rounds]");
+            System.err.println("       java TraceReplayer -record trace [n]");
+            System.exit(1);
+        }
+
+        if (args[0].equals("-record")) {
+            record(Paths.get(args[1]), (args.length > 2) ? Integer.parseInt(args[2]) : 1_000_000);
+            return;
+        }
+
+        List<String> impls = (args.length > 1) ? Arrays.asList(args[1].split(","))
+            : new ArrayList<String>(IMPLEMENTATIONS.keySet());
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        TracingPriorityQueue.Trace trace = TracingPriorityQueue.read(Paths.get(args[0]));
+        int n = trace.size();
+        Long[] boxed = new Long[n];
+        int threads = (int) Arrays.stream(trace.threads).distinct().count();
+
+        for (int i = 0; i < n; ++i) {
+            if (trace.ops[i] == TracingPriorityQueue.INSERT) {
+                boxed[i] = trace.keys[i];
+            }
+        }
+
+        System.out.printf("%s: %d operations from %d thread(s)%n", args[0], n, threads);
+        System.out.printf("%-8s %10s %8s %8s %8s %10s  %s%n",
+                          "impl", "Mops/s", "p50", "p99", "p99.9", "max (ns)", "results");
+
+        long[] expected = null;
+        String first = null;
+
+        for (String impl : impls) {
+            Supplier<SimplePriorityQueue<Long>> factory = IMPLEMENTATIONS.get(impl);
+            if (factory == null) {
+                throw new IllegalArgumentException("unknown implementation " + impl);
+            }
+
+            long[] results = new long[n];
+            long best = Long.MAX_VALUE;
+
+            // round 0 is warmup; it also finds out whether the
+            // implementation accepts the trace at all (a RadixHeap
+            // rejects a priority below the last minimum)
+            try {
+                replay(factory.get(), trace, boxed, results, null);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-8s skipped: %s%n", impl, e.getMessage());
+                continue;
+            }
+
+            for (int r = 1; r <= rounds; ++r) {
+                long start = System.nanoTime();
+                replay(factory.get(), trace, boxed, results, null);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            RunTimer timer = new RunTimer();
+            replay(factory.get(), trace, boxed, results, timer);
+            LatencyHistogram h = timer.getHistogram();
+
+            String agreement = check(trace, results, "trace");
+            if (expected == null) {
+                expected = results;
+                first = impl;
+            } else if (agreement.isEmpty()) {
+                agreement = compare(expected, results, first);
+            }
+
+            System.out.printf("%-8s %10.2f %8d %8d %8d %10d  %s%n",
+                              impl, n / (best / 1e3), h.getValueAtPercentile(50),
+                              h.getValueAtPercentile(99), h.getValueAtPercentile(99.9),
+                              h.getMax(), agreement.isEmpty() ? "match" : agreement);
+        }
+    }
+
+    /**
+     * Replay the trace on q, storing the result of each
+     * <code>removeMin</code> or <code>min</code> in results. If timer
+     * is not null, every operation is timed with it.
+     */
+    static void replay(SimplePriorityQueue<Long> q, TracingPriorityQueue.Trace trace, Long[] boxed,
+                       long[] results, RunTimer timer) {
+        int n = trace.size();
+
+        for (int i = 0; i < n; ++i) {
+            int op = trace.ops[i] & ~TracingPriorityQueue.NULL_RESULT;
+            Long x = null;
+
+            if (timer != null) {
+                timer.start();
+            }
+
+            if (op == TracingPriorityQueue.INSERT) {
+                q.insert(trace.keys[i], boxed[i]);
+            } else if (op == TracingPriorityQueue.REMOVE_MIN) {
+                x = q.removeMin();
+            } else {
+                x = q.min();
+            }
+
+            if (timer != null) {
+                timer.stop();
+            }
+
+            if (op != TracingPriorityQueue.INSERT) {
+                results[i] = (x == null) ? NULL : x;
+            }
+        }
+    }
+
+    /**
+     * Check that exactly the operations recorded as returning null
+     * returned null. Return a description of the first difference, or
+     * the empty string if there is none.
+     */
+    static String check(TracingPriorityQueue.Trace trace, long[] results, String name) {
+        for (int i = 0; i < trace.size(); ++i) {
+            if (trace.ops[i] == TracingPriorityQueue.INSERT) {
+                continue;
+            }
+
+            boolean recordedNull = (trace.ops[i] & TracingPriorityQueue.NULL_RESULT) != 0;
+            if (recordedNull != (results[i] == NULL)) {
+                return "differs from " + name + " at operation " + i;
+            }
+        }
+
+        return "";
+    }
+
+    /**
+     * Compare the results of two replays. Return a description of the
+     * first difference, or the empty string if there is none.
+     */
+    static String compare(long[] expected, long[] results, String name) {
+        int i = Arrays.mismatch(expected, results);
+        return (i < 0) ? "" : "differs from " + name + " at operation " + i;
+    }
+
+    /**
+     * Record a trace of n operations of the hold model on a
+     * <code>HeapPriorityQueue</code>: after n / 10 insertions, each
+     * step removes the minimum and inserts a larger priority.
+     */
+    static void record(Path file, int n) throws IOException {
+        Random rand = new Random(211);
+
+        try (TracingPriorityQueue<Long> q = new TracingPriorityQueue<Long>(new HeapPriorityQueue<Long>(), file)) {
+            int fill = Math.max(1, n / 10);
+
+            for (int i = 0; i < fill; ++i) {
+                long k = rand.nextLong() >>> 20;
+                q.insert(k, k);
+            }
+
+            while (q.getRecordCount() + 2 <= n) {
+                long k = q.removeMin() + 1 + rand.nextInt(1 << 20);
+                q.insert(k, k);
+            }
+
+            System.out.printf("recorded %d operations to %s%n", q.getRecordCount(), file);
+        }
+    }
+}
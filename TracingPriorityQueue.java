@@ -0,0 +1,255 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>A <code>SimplePriorityQueue</code> decorator that records every
+ * <code>insert</code>, <code>removeMin</code> and <code>min</code>
+ * call to a binary trace file, so that a production workload can be
+ * replayed later against other implementations with
+ * <code>TraceReplayer</code>.</p>
+ *
+ * <p>A trace file consists of a 16 byte header (the magic number
+ * <code>MAGIC</code>, a format version (2 bytes), 2 unused bytes and
+ * the wall-clock time at which tracing started, in milliseconds since
+ * the epoch) followed by one 21 byte record per operation:</p>
+ * <ul>
+ * <li>the operation (1 byte): <code>INSERT</code>,
+ * <code>REMOVE_MIN</code> or <code>MIN</code>, with the bit
+ * <code>NULL_RESULT</code> set if a <code>removeMin</code> or
+ * <code>min</code> returned null;</li>
+ * <li>the id of the calling thread (4 bytes);</li>
+ * <li>the time of the call in nanoseconds since tracing started (8
+ * bytes);</li>
+ * <li>the priority inserted, or 0 for other operations (8
+ * bytes).</li>
+ * </ul>
+ * <p>All numbers are little-endian. Records are collected in a 64 KB
+ * direct buffer and written through a <code>FileChannel</code> when
+ * it fills up and on <code>close()</code>; if the process dies, the
+ * trace up to the last full buffer can still be read.</p>
+ *
+ * <p>The operations of the queue are serialized on the queue itself,
+ * so that the order of the records is the order in which the wrapped
+ * queue saw the operations.</p>
+ *
+ * @see TraceReplayer
+ */
+
+public class TracingPriorityQueue<E> implements SimplePriorityQueue<E>, Closeable {
+
+    /**
+     * The first four bytes of every trace file ("PQT1").
+     */
+    public static final int MAGIC = 0x50515431;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final short VERSION = 1;
+
+    public static final byte INSERT = 1;
+    public static final byte REMOVE_MIN = 2;
+    public static final byte MIN = 3;
+
+    /**
+     * Set in the operation byte of a <code>removeMin</code> or
+     * <code>min</code> that returned null.
+     */
+    public static final byte NULL_RESULT = (byte) 0x80;
+
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 21;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final SimplePriorityQueue<E> queue;
+    private final FileChannel channel;
+    private final ByteBuffer buf;
+    private final long startNanos;
+    private long records = 0;
+    private boolean closed = false;
+
+    /**
+     * Wrap a queue, writing its trace to file.
+     *
+     * @param queue the queue to wrap
+     * @param file the trace file to be (over)written
+     * @throws IOException if the file cannot be written
+     */
+    public TracingPriorityQueue(SimplePriorityQueue<E> queue, Path file) throws IOException {
+        this.queue = queue;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                        StandardOpenOption.WRITE);
+        this.buf = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.startNanos = System.nanoTime();
+
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+        buf.putShort((short) 0);
+        buf.putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the number of operations recorded so far
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public synchronized E min() {
+        E x = queue.min();
+        record((x == null) ? (byte) (MIN | NULL_RESULT) : MIN, 0);
+        return x;
+    }
+
+    @Override
+    public synchronized void insert(long k, E x) {
+        queue.insert(k, x);
+        record(INSERT, k);
+    }
+
+    @Override
+    public synchronized E removeMin() {
+        E x = queue.removeMin();
+        record((x == null) ? (byte) (REMOVE_MIN | NULL_RESULT) : REMOVE_MIN, 0);
+        return x;
+    }
+
+    /**
+     * Append a record to the buffer, writing the buffer out first if
+     * it is full.
+     *
+     * @throws UncheckedIOException if the trace cannot be written
+     * @throws IllegalStateException if the trace has been closed
+     */
+    private void record(byte op, long key) {
+        if (closed) {
+            throw new IllegalStateException("trace is closed");
+        }
+
+        if (buf.remaining() < RECORD_BYTES) {
+            try {
+                QueueSnapshot.drain(channel, buf);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        buf.put(op);
+        buf.putInt((int) Thread.currentThread().getId());
+        buf.putLong(System.nanoTime() - startNanos);
+        buf.putLong(key);
+        ++records;
+    }
+
+    /**
+     * <p>Write out the remaining records and close the trace file. The
+     * wrapped queue is not affected, but no further operations can be
+     * made through this queue.</p>
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            QueueSnapshot.drain(channel, buf);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * The records of a trace file, as parallel arrays.
+     */
+    static final class Trace {
+        final long startMillis;
+        final byte[] ops;
+        final int[] threads;
+        final long[] nanos;
+        final long[] keys;
+
+        Trace(long startMillis, int n) {
+            this.startMillis = startMillis;
+            this.ops = new byte[n];
+            this.threads = new int[n];
+            this.nanos = new long[n];
+            this.keys = new long[n];
+        }
+
+        int size() {
+            return ops.length;
+        }
+    }
+
+    /**
+     * Read a trace file by memory-mapping it. A partial record at the
+     * end of the file (left if the traced process died while writing)
+     * is ignored.
+     */
+    static Trace read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+
+            if (size < HEADER_BYTES) {
+                throw new IOException(file + " is too short to be a trace");
+            }
+
+            long n = (size - HEADER_BYTES) / RECORD_BYTES;
+            if (HEADER_BYTES + n * RECORD_BYTES > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES + n * RECORD_BYTES);
+            in.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a trace file");
+            }
+            if (in.getShort() != VERSION) {
+                throw new IOException(file + " has an unsupported trace version");
+            }
+            in.getShort();
+
+            Trace t = new Trace(in.getLong(), (int) n);
+
+            for (int i = 0; i < n; ++i) {
+                t.ops[i] = in.get();
+                t.threads[i] = in.getInt();
+                t.nanos[i] = in.getLong();
+                t.keys[i] = in.getLong();
+
+                int op = t.ops[i] & ~NULL_RESULT;
+                if (op != INSERT && op != REMOVE_MIN && op != MIN) {
+                    throw new IOException(file + " has an invalid operation in record " + i);
+                }
+            }
+
+            return t;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * <p>A priority queue for non-negative priorities below 2^w, in the
+ * style of <code>AVLPriorityQueue</code> but with its priorities in a
+ * <code>VebTree</code>, so that <code>insert</code> and
+ * <code>removeMin</code> take O(log w) time regardless of the size of
+ * the queue, and <code>min</code> takes O(1) time. The elements are
+ * kept in a <code>LongObjectMap</code> by priority.</p>
+ *
+ * <p>Like <code>AVLPriorityQueue</code>, the queue keeps one element
+ * per priority: inserting a priority that is already in the queue
+ * leaves the queue unchanged. Inserting a priority outside the
+ * universe throws <code>IllegalArgumentException</code>.</p>
+ *
+ * @see VebTree
+ */
+
+public class VebPriorityQueue<E> implements SimplePriorityQueue<E> {
+
+    /**
+     * The number of key bits used by the default constructor, which
+     * admits every non-negative <code>long</code>.
+     */
+    public static final int DEFAULT_BITS = 63;
+
+    /**
+     * Stands for a null element in the map, which cannot store null.
+     */
+    private static final Object NULL = new Object();
+
+    private final VebTree priorities;
+    private final LongObjectMap<Object> elements = new LongObjectMap<Object>();
+
+    public VebPriorityQueue() {
+        this(DEFAULT_BITS);
+    }
+
+    /**
+     * Create an empty queue for priorities from 0 to 2^bits - 1.
+     *
+     * @param bits the number of bits in a priority, from 1 to 63
+     * @throws IllegalArgumentException if bits is out of range
+     */
+    public VebPriorityQueue(int bits) {
+        priorities = new VebTree(bits);
+    }
+
+    @Override
+    public int size() {
+        return priorities.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return priorities.isEmpty();
+    }
+
+    @Override
+    public E min() {
+        long k = priorities.min();
+        return (k == VebTree.NONE) ? null : unmask(elements.get(k));
+    }
+
+    @Override
+    public void insert(long k, E x) {
+        if (priorities.add(k)) {
+            elements.put(k, (x == null) ? NULL : x);
+        }
+    }
+
+    @Override
+    public E removeMin() {
+        long k = priorities.min();
+        if (k == VebTree.NONE) {
+            return null;
+        }
+
+        priorities.remove(k);
+        return unmask(elements.remove(k));
+    }
+
+    /**
+     * Return the smallest priority in the queue, or
+     * <code>VebTree.NONE</code> if the queue is empty.
+     */
+    long minKey() {
+        return priorities.min();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E unmask(Object x) {
+        return (x == NULL) ? null : (E) x;
+    }
+}
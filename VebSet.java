@@ -0,0 +1,111 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A <code>SimpleSSet</code> of non-negative <code>Long</code>s
+ * below 2^w, backed by a <code>VebTree</code>, so that
+ * <code>add</code>, <code>remove</code> and <code>find</code> (the
+ * successor query) take O(log w) time and <code>findMin</code> and
+ * <code>findMax</code> take O(1) time.</p>
+ *
+ * <p><code>add</code> throws <code>IllegalArgumentException</code> for
+ * a key outside the universe; <code>find</code> and
+ * <code>remove</code> simply do not find it.</p>
+ *
+ * @see VebTree
+ */
+
+public class VebSet implements SimpleSSet<Long>, Iterable<Long> {
+    private final VebTree tree;
+
+    /**
+     * Create an empty set of keys from 0 to 2^bits - 1.
+     *
+     * @param bits the number of bits in a key, from 1 to 63
+     * @throws IllegalArgumentException if bits is out of range
+     */
+    public VebSet(int bits) {
+        tree = new VebTree(bits);
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    @Override
+    public boolean add(Long x) {
+        return tree.add(x);
+    }
+
+    @Override
+    public Long remove(Long x) {
+        return tree.remove(x) ? x : null;
+    }
+
+    @Override
+    public Long find(Long x) {
+        return box(tree.ceiling(x));
+    }
+
+    @Override
+    public Long findMin() {
+        return box(tree.min());
+    }
+
+    @Override
+    public Long findMax() {
+        return box(tree.max());
+    }
+
+    private static Long box(long k) {
+        return (k == VebTree.NONE) ? null : k;
+    }
+
+    /**
+     * Return an iterator over the keys in increasing order, found by
+     * successive successor queries. The set must not be modified
+     * while the iterator is in use.
+     */
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private long next = tree.min();
+
+            @Override
+            public boolean hasNext() {
+                return next != VebTree.NONE;
+            }
+
+            @Override
+            public Long next() {
+                if (next == VebTree.NONE) {
+                    throw new NoSuchElementException();
+                }
+
+                long k = next;
+                next = (k == tree.max()) ? VebTree.NONE : tree.ceiling(k + 1);
+                return k;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+
+        for (long k : this) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(k);
+        }
+
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * <p>A set of non-negative <code>long</code> keys below a fixed bound
+ * 2^w (the <em>universe</em>), stored in a van Emde Boas tree. The
+ * tree answers successor queries (<code>ceiling</code>) and does
+ * insertions and deletions in O(log w) = O(log log U) time, however
+ * many keys it holds. An <code>AVLTree</code> or
+ * <code>LongAVLTree</code> needs O(log n) comparisons instead, so the
+ * van Emde Boas tree is faster for large sets of keys from a bounded
+ * range. <code>min</code> and <code>max</code> take O(1) time.</p>
+ *
+ * <p>A node of the tree covering w bits splits a key into its high
+ * and low halves. The high half selects a <em>cluster</em>, a subtree
+ * covering the low w/2 bits. A <em>summary</em> subtree holds the
+ * high halves of the non-empty clusters. As usual, a node's minimum
+ * is kept only in the node itself and not in a cluster, so an
+ * insertion into an empty cluster takes O(1) time and every
+ * operation recurses into one subtree of half the width only.</p>
+ *
+ * <p>A plain van Emde Boas tree allocates an array of 2^(w/2)
+ * clusters in every node, which takes O(U) memory. Here the clusters
+ * of a node are kept in a <code>LongObjectMap</code> that holds only
+ * the non-empty ones. Every node's minimum is a distinct key, so the
+ * tree has at most one node per key and takes O(n) memory. Nodes
+ * covering at most 6 bits are a single 64-bit word, which ends the
+ * recursion early.</p>
+ *
+ * @see VebSet
+ * @see VebPriorityQueue
+ */
+
+public class VebTree {
+
+    /**
+     * The number of bits a leaf, stored as a bitmap in one
+     * <code>long</code>, can cover.
+     */
+    static final int LEAF_BITS = 6;
+
+    /**
+     * The value returned by queries that have no answer. It cannot be
+     * a key, since keys are non-negative.
+     */
+    public static final long NONE = -1;
+
+    private final int bits;
+    private final Node root;
+    private int size = 0;
+
+    /**
+     * Create an empty set of keys from 0 to 2^bits - 1.
+     *
+     * @param bits the number of bits in a key, from 1 to 63
+     * @throws IllegalArgumentException if bits is out of range
+     */
+    public VebTree(int bits) {
+        if (bits < 1 || bits > 63) {
+            throw new IllegalArgumentException("key bits must be between 1 and 63: " + bits);
+        }
+
+        this.bits = bits;
+        this.root = new Node(bits);
+    }
+
+    /**
+     * @return the number of bits in a key
+     */
+    public int bits() {
+        return bits;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Add key x to the set if it is not already present.
+     *
+     * @param x the key
+     * @return true if and only if x was added
+     * @throws IllegalArgumentException if x is outside the universe
+     */
+    public boolean add(long x) {
+        check(x);
+
+        if (root.add(x)) {
+            ++size;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Remove key x from the set, if present.
+     *
+     * @param x the key
+     * @return true if and only if x was in the set
+     */
+    public boolean remove(long x) {
+        if (!inUniverse(x)) {
+            return false;
+        }
+
+        if (root.remove(x)) {
+            --size;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Determine if key x is in the set.
+     */
+    public boolean contains(long x) {
+        return inUniverse(x) && root.contains(x);
+    }
+
+    /**
+     * Return the smallest key in the set that is greater than or
+     * equal to x, or <code>NONE</code> if there is none.
+     */
+    public long ceiling(long x) {
+        if (x < 0) {
+            x = 0;
+        }
+        if (!inUniverse(x)) {
+            return NONE;
+        }
+
+        return root.ceiling(x);
+    }
+
+    /**
+     * Return the smallest key in the set, or <code>NONE</code> if the
+     * set is empty.
+     */
+    public long min() {
+        return root.min;
+    }
+
+    /**
+     * Return the largest key in the set, or <code>NONE</code> if the
+     * set is empty.
+     */
+    public long max() {
+        return root.max;
+    }
+
+    /**
+     * Return an estimate of the number of bytes retained by the tree.
+     */
+    public long retainedBytes() {
+        return Footprint.object(1, 2 * Integer.BYTES) + root.retainedBytes();
+    }
+
+    private boolean inUniverse(long x) {
+        return x >= 0 && (x >>> bits) == 0;
+    }
+
+    private void check(long x) {
+        if (!inUniverse(x)) {
+            throw new IllegalArgumentException("key " + x + " is outside the universe [0, 2^" + bits + ")");
+        }
+    }
+
+    /**
+     * A node covering keys of the given number of bits. Leaves (of at
+     * most <code>LEAF_BITS</code> bits) store their keys, including
+     * the minimum, in <code>word</code>; inner nodes store all keys
+     * but the minimum in their clusters.
+     */
+    private static final class Node {
+        final int bits;
+        final int lowBits;
+
+        long min = NONE;
+        long max = NONE;
+
+        /**
+         * The keys of a leaf, as a bitmap.
+         */
+        long word;
+
+        /**
+         * The non-empty clusters of an inner node by high half, and
+         * the set of those high halves (both null while the node has
+         * at most one key).
+         */
+        LongObjectMap<Node> clusters;
+        Node summary;
+
+        Node(int bits) {
+            this.bits = bits;
+            this.lowBits = bits >>> 1;
+        }
+
+        boolean isLeaf() {
+            return bits <= LEAF_BITS;
+        }
+
+        boolean add(long x) {
+            if (isLeaf()) {
+                long bit = 1L << x;
+                if ((word & bit) != 0) {
+                    return false;
+                }
+                word |= bit;
+                min = Long.numberOfTrailingZeros(word);
+                max = 63 - Long.numberOfLeadingZeros(word);
+                return true;
+            }
+
+            if (min == NONE) {
+                min = x;
+                max = x;
+                return true;
+            }
+            if (x == min) {
+                return false;
+            }
+
+            // the minimum stays in this node; the larger key goes down
+            long y = x;
+            if (y < min) {
+                y = min;
+                min = x;
+            }
+
+            long high = y >>> lowBits;
+            long low = y & ((1L << lowBits) - 1);
+
+            if (clusters == null) {
+                clusters = new LongObjectMap<Node>();
+                summary = new Node(bits - lowBits);
+            }
+
+            Node c = clusters.get(high);
+            if (c == null) {
+                c = new Node(lowBits);
+                clusters.put(high, c);
+                summary.add(high);
+            }
+
+            if (!c.add(low)) {
+                return false;
+            }
+
+            if (y > max) {
+                max = y;
+            }
+            return true;
+        }
+
+        boolean remove(long x) {
+            if (isLeaf()) {
+                long bit = 1L << x;
+                if ((word & bit) == 0) {
+                    return false;
+                }
+                word &= ~bit;
+                min = (word == 0) ? NONE : Long.numberOfTrailingZeros(word);
+                max = (word == 0) ? NONE : 63 - Long.numberOfLeadingZeros(word);
+                return true;
+            }
+
+            if (min == NONE || x < min || x > max) {
+                return false;
+            }
+
+            if (min == max) {
+                min = NONE;
+                max = NONE;
+                clusters = null;
+                summary = null;
+                return true;
+            }
+
+            if (x == min) {
+                // the smallest key in the clusters becomes the minimum,
+                // and is then removed from its cluster
+                long high = summary.min;
+                x = (high << lowBits) | clusters.get(high).min;
+                min = x;
+            }
+
+            long high = x >>> lowBits;
+            Node c = clusters.get(high);
+
+            if (c == null || !c.remove(x & ((1L << lowBits) - 1))) {
+                return false;
+            }
+
+            if (c.min == NONE) {
+                clusters.remove(high);
+                summary.remove(high);
+            }
+
+            if (x == max) {
+                if (summary.min == NONE) {
+                    max = min;
+                } else {
+                    long last = summary.max;
+                    max = (last << lowBits) | clusters.get(last).max;
+                }
+            }
+
+            return true;
+        }
+
+        boolean contains(long x) {
+            Node nd = this;
+
+            while (!nd.isLeaf()) {
+                if (x == nd.min) {
+                    return true;
+                }
+                if (nd.min == NONE || x < nd.min || x > nd.max) {
+                    return false;
+                }
+
+                Node c = nd.clusters.get(x >>> nd.lowBits);
+                if (c == null) {
+                    return false;
+                }
+                x &= (1L << nd.lowBits) - 1;
+                nd = c;
+            }
+
+            return (nd.word & (1L << x)) != 0;
+        }
+
+        long ceiling(long x) {
+            if (min == NONE || x > max) {
+                return NONE;
+            }
+            if (x <= min) {
+                return min;
+            }
+
+            if (isLeaf()) {
+                // x is at most 63 here, since x <= max
+                return Long.numberOfTrailingZeros(word & (-1L << x));
+            }
+
+            long high = x >>> lowBits;
+            long low = x & ((1L << lowBits) - 1);
+            Node c = clusters.get(high);
+
+            if (c != null && low <= c.max) {
+                return (high << lowBits) | c.ceiling(low);
+            }
+
+            // x <= max and max is in a cluster, so a later cluster exists
+            long next = summary.ceiling(high + 1);
+            return (next << lowBits) | clusters.get(next).min;
+        }
+
+        long retainedBytes() {
+            long bytes = Footprint.object(2, 2 * Integer.BYTES + 3 * Long.BYTES);
+
+            if (clusters != null) {
+                bytes += clusters.retainedBytes() + summary.retainedBytes();
+
+                // the clusters are reached only through the map's
+                // values, which LongObjectMap does not count
+                for (long h = summary.min; h != NONE; h = summary.ceiling(h + 1)) {
+                    bytes += clusters.get(h).retainedBytes();
+                }
+            }
+
+            return bytes;
+        }
+    }
+}
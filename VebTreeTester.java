@@ -0,0 +1,147 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Differential test of <code>VebTree</code> against
+ * <code>TreeSet</code>, and of <code>VebPriorityQueue</code> against
+ * <code>TreeMap</code>, for every key width from 1 to 63 bits. Keys
+ * are drawn from the whole universe and from its two ends, so that
+ * the top of the universe is covered, and the operations mix
+ * additions, removals and queries.
+ *
+ * <p>Usage: <code>java VebTreeTester [operations per width] [seed]</code></p>
+ */
+
+public class VebTreeTester {
+
+    public static void main(String[] args) {
+        int ops = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 10;
+        Random rand = new Random(seed);
+
+        for (int bits = 1; bits <= 63; ++bits) {
+            String failure = testTree(bits, ops, rand);
+            if (failure == null) {
+                failure = testQueue(bits, ops, rand);
+            }
+
+            if (failure != null) {
+                System.out.println("w = " + bits + ": " + failure);
+                System.out.println("...test failed.");
+                System.exit(1);
+            }
+        }
+
+        System.out.println("...test passed!");
+    }
+
+    /**
+     * Return a random key of the universe [0, 2^bits): a third of the
+     * keys come from anywhere, and a third each from the 16 smallest
+     * and the 16 largest keys.
+     */
+    static long key(int bits, Random rand) {
+        long top = (bits == 63) ? Long.MAX_VALUE : (1L << bits) - 1;
+
+        switch (rand.nextInt(3)) {
+        case 0:
+            return rand.nextLong() >>> (64 - bits);
+        case 1:
+            return Math.min(top, rand.nextInt(16));
+        default:
+            return Math.max(0, top - rand.nextInt(16));
+        }
+    }
+
+    /**
+     * Return a description of the first difference between a VebTree
+     * and a TreeSet, or null if there is none.
+     */
+    static String testTree(int bits, int ops, Random rand) {
+        VebTree t = new VebTree(bits);
+        TreeSet<Long> s = new TreeSet<Long>();
+
+        for (int i = 0; i < ops; ++i) {
+            long x = key(bits, rand);
+            int op = rand.nextInt(10);
+
+            if (op < 4) {
+                if (t.add(x) != s.add(x)) {
+                    return "add(" + x + ") differs at operation " + i;
+                }
+            } else if (op < 7) {
+                if (t.remove(x) != s.remove(x)) {
+                    return "remove(" + x + ") differs at operation " + i;
+                }
+            } else if (op < 8) {
+                if (t.contains(x) != s.contains(x)) {
+                    return "contains(" + x + ") differs at operation " + i;
+                }
+            } else {
+                Long c = s.ceiling(x);
+                if (t.ceiling(x) != ((c == null) ? VebTree.NONE : c)) {
+                    return "ceiling(" + x + ") differs at operation " + i;
+                }
+            }
+
+            long min = s.isEmpty() ? VebTree.NONE : s.first();
+            long max = s.isEmpty() ? VebTree.NONE : s.last();
+            if (t.size() != s.size() || t.min() != min || t.max() != max) {
+                return "size, min or max differs at operation " + i;
+            }
+        }
+
+        // keys outside the universe are rejected or absent
+        if (bits < 63) {
+            long outside = 1L << bits;
+
+            if (t.contains(outside) || t.remove(outside) || t.ceiling(outside) != VebTree.NONE) {
+                return "key " + outside + " outside the universe is found";
+            }
+            try {
+                t.add(outside);
+                return "add(" + outside + ") outside the universe is accepted";
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Return a description of the first difference between a
+     * VebPriorityQueue and a TreeMap that, like the queue, keeps the
+     * first element inserted with each priority, or null if there is
+     * none.
+     */
+    static String testQueue(int bits, int ops, Random rand) {
+        VebPriorityQueue<Long> q = new VebPriorityQueue<Long>(bits);
+        TreeMap<Long, Long> m = new TreeMap<Long, Long>();
+
+        for (int i = 0; i < ops; ++i) {
+            if (rand.nextInt(3) < 2) {
+                long k = key(bits, rand);
+                Long x = (long) i;
+                q.insert(k, x);
+                m.putIfAbsent(k, x);
+            } else {
+                Map.Entry<Long, Long> e = m.pollFirstEntry();
+                Long x = q.removeMin();
+                if ((e == null) ? x != null : !e.getValue().equals(x)) {
+                    return "removeMin differs at operation " + i;
+                }
+            }
+
+            Map.Entry<Long, Long> first = m.firstEntry();
+            Long min = q.min();
+            if (q.size() != m.size() || ((first == null) ? min != null : !first.getValue().equals(min))) {
+                return "size or min differs at operation " + i;
+            }
+        }
+
+        return null;
+    }
+}